@@ -0,0 +1,165 @@
+/*
+ * Copyright © 2013-2020, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.mqtt.internal;
+
+import com.google.inject.Guice;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.eclipse.paho.client.mqttv3.IMqttClient;
+import org.eclipse.paho.client.mqttv3.IMqttDeliveryToken;
+import org.eclipse.paho.client.mqttv3.MqttCallback;
+import org.eclipse.paho.client.mqttv3.MqttClient;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.seedstack.mqtt.MqttConfig;
+import org.seedstack.mqtt.MqttConfig.ClientConfig.PoolConfig.RejectedExecutionPolicy;
+import org.seedstack.seed.SeedException;
+
+/**
+ * Measures the inbound path of {@link MqttCallbackAdapter}, from the arrival of a message to its routing and dispatch
+ * to a listener, without any broker. The adapter is wired by {@link MqttModule} exactly like in an application, with
+ * an unconnected client.
+ * <p>
+ * The {@code pool} parameter is either {@code NONE}, where the listener runs on the receiving thread, or the
+ * {@link RejectedExecutionPolicy} of a thread pool of {@code workers} threads. The {@code workers} parameter is
+ * irrelevant without pool. Rejections of the {@code ABORT} policy are counted as operations, since the receiving
+ * thread pays for them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MqttDispatchBenchmark {
+    private static final String CLIENT_NAME = "benchmark";
+    private static final String TOPIC = "sensors/42/temperature";
+
+    @Param({"16", "1024", "65536"})
+    int payloadSize;
+    @Param({"NONE", "ABORT", "DISCARD", "CALLER_RUNS", "DISCARD_OLDEST"})
+    String pool;
+    @Param({"1", "8"})
+    int workers;
+
+    private IMqttClient mqttClient;
+    private MqttCallbackAdapter callbackAdapter;
+    private ExecutorService executorService;
+    private MqttMessage message;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        MqttConfig.ClientConfig clientConfig = new MqttConfig.ClientConfig()
+                .setServerUri("tcp://localhost:1883")
+                .setClientId(CLIENT_NAME)
+                .setReconnectionMode(MqttConfig.ClientConfig.ReconnectionMode.NONE);
+        if (!"NONE".equals(pool)) {
+            clientConfig.getPoolConfig()
+                    .setEnabled(true)
+                    .setCoreSize(workers)
+                    .setMaxSize(workers)
+                    .setRejectedExecutionPolicy(RejectedExecutionPolicy.valueOf(pool));
+        }
+        MqttClientDefinition clientDefinition = new MqttClientDefinition(clientConfig);
+        clientDefinition.addListenerDefinition(new MqttListenerDefinition(BenchmarkListener.class,
+                BenchmarkListener.class.getName(), new String[]{"sensors/+/temperature"}, new int[]{1}));
+        executorService = clientDefinition.getPoolDefinition().getExecutorService();
+
+        mqttClient = new MqttClient(clientConfig.getServerUri(), clientConfig.getClientId(), new MemoryPersistence());
+        callbackAdapter = new MqttCallbackAdapter(mqttClient, clientDefinition);
+        ConcurrentHashMap<String, IMqttClient> mqttClients = new ConcurrentHashMap<>();
+        mqttClients.put(CLIENT_NAME, mqttClient);
+        ConcurrentHashMap<String, MqttClientDefinition> clientDefinitions = new ConcurrentHashMap<>();
+        clientDefinitions.put(CLIENT_NAME, clientDefinition);
+        ConcurrentHashMap<String, MqttCallbackAdapter> callbackAdapters = new ConcurrentHashMap<>();
+        callbackAdapters.put(CLIENT_NAME, callbackAdapter);
+        Guice.createInjector(new MqttModule(mqttClients, clientDefinitions, callbackAdapters));
+        callbackAdapter.resolveProviders();
+
+        byte[] payload = new byte[payloadSize];
+        new Random(payloadSize).nextBytes(payload);
+        message = new MqttMessage(payload);
+        message.setQos(1);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        if (executorService != null) {
+            executorService.shutdownNow();
+            executorService.awaitTermination(10, TimeUnit.SECONDS);
+        }
+        mqttClient.close();
+    }
+
+    /**
+     * One receiving thread, like the Paho client.
+     */
+    @Benchmark
+    @Threads(1)
+    public void messageArrived(Blackhole blackhole) throws Exception {
+        dispatch(blackhole);
+    }
+
+    /**
+     * Several receiving threads, like multiple clients sharing listeners and pool, to expose contention.
+     */
+    @Benchmark
+    @Threads(4)
+    public void messageArrivedContended(Blackhole blackhole) throws Exception {
+        dispatch(blackhole);
+    }
+
+    private void dispatch(Blackhole blackhole) throws Exception {
+        try {
+            callbackAdapter.messageArrived(TOPIC, message);
+        } catch (SeedException e) {
+            blackhole.consume(e);
+        }
+    }
+
+    /**
+     * Listener reading the whole payload, so the cost of the dispatch is measured against a minimal amount of work.
+     */
+    public static class BenchmarkListener implements MqttCallback {
+        private static volatile long sink;
+
+        @Override
+        public void messageArrived(String topic, MqttMessage message) {
+            long checksum = 0;
+            for (byte b : message.getPayload()) {
+                checksum += b;
+            }
+            sink = checksum;
+        }
+
+        @Override
+        public void connectionLost(Throwable cause) {
+        }
+
+        @Override
+        public void deliveryComplete(IMqttDeliveryToken token) {
+        }
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright © 2013-2020, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.mqtt.internal;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import org.eclipse.paho.client.mqttv3.MqttClientPersistence;
+import org.eclipse.paho.client.mqttv3.internal.MqttPersistentData;
+import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
+import org.eclipse.paho.client.mqttv3.persist.MqttDefaultFilePersistence;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the client persistence on the path of a QoS 1 publication: the message is persisted before being sent and
+ * removed when it is acknowledged. Each operation is such a put and remove cycle, on a key of its own.
+ * <p>
+ * The {@code persistence} parameter is a persistence mode of the client, {@code MAPPED_ASYNC} being the memory-mapped
+ * persistence without waiting for the forces to disk. The persistence files are written to a temporary directory,
+ * which should be on the disk the application would use.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MqttPersistenceBenchmark {
+    private static final byte[] HEADER = new byte[]{0x32, 0, 0, 0, 0};
+
+    @Param({"256", "4096"})
+    int payloadSize;
+    @Param({"NONE", "MEMORY", "FILE", "MAPPED", "MAPPED_ASYNC"})
+    String persistence;
+
+    private final AtomicLong nextKey = new AtomicLong();
+    private Path directory;
+    private MqttClientPersistence clientPersistence;
+    private byte[] payload;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        directory = Files.createTempDirectory("mqtt-persistence-benchmark");
+        switch (persistence) {
+            case "NONE":
+                clientPersistence = new MqttNoPersistence();
+                break;
+            case "MEMORY":
+                clientPersistence = new MemoryPersistence();
+                break;
+            case "FILE":
+                clientPersistence = new MqttDefaultFilePersistence(directory.toString());
+                break;
+            case "MAPPED":
+                clientPersistence = new MqttMappedPersistence(directory, 4 * 1024 * 1024, true);
+                break;
+            case "MAPPED_ASYNC":
+                clientPersistence = new MqttMappedPersistence(directory, 4 * 1024 * 1024, false);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown persistence " + persistence);
+        }
+        clientPersistence.open("benchmark", "tcp://localhost:1883");
+        payload = new byte[payloadSize];
+        new Random(payloadSize).nextBytes(payload);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        clientPersistence.close();
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(MqttPersistenceBenchmark::delete);
+        }
+    }
+
+    /**
+     * One publishing thread.
+     */
+    @Benchmark
+    @Threads(1)
+    public void putAndRemove() throws Exception {
+        cycle();
+    }
+
+    /**
+     * Several publishing threads, sharing the forces to disk of the memory-mapped persistence.
+     */
+    @Benchmark
+    @Threads(8)
+    public void putAndRemoveContended() throws Exception {
+        cycle();
+    }
+
+    private void cycle() throws Exception {
+        String key = "s-" + nextKey.incrementAndGet();
+        clientPersistence.put(key, new MqttPersistentData(key, HEADER, 0, HEADER.length, payload, 0, payload.length));
+        clientPersistence.remove(key);
+    }
+
+    private static void delete(Path path) {
+        try {
+            Files.delete(path);
+        } catch (IOException e) {
+            // left to the temporary directory cleanup
+        }
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright © 2013-2020, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.mqtt;
+
+import java.util.concurrent.CompletionStage;
+import org.eclipse.paho.client.mqttv3.IMqttDeliveryToken;
+import org.eclipse.paho.client.mqttv3.MqttCallback;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+
+/**
+ * Asynchronous contract of a {@link MqttListener}. {@link #onMessage(String, MqttMessage)} is called on the MQTT client
+ * receiving thread and must not block: it starts the processing of the message and returns a stage completed when the
+ * processing is done. No thread is held while the processing is in flight, the number of messages in flight being
+ * limited per client by the {@code maxAsyncInFlight} option. Messages received beyond this limit are spooled or
+ * handed to the {@link MqttRejectedExecutionHandler} of the client. Failures are reported as listener errors.
+ */
+public interface AsyncMqttListener extends MqttCallback {
+
+    /**
+     * Starts the processing of a received message.
+     *
+     * @param topic   the topic of the message.
+     * @param message the received message.
+     * @return a stage completed when the message has been processed.
+     */
+    CompletionStage<Void> onMessage(String topic, MqttMessage message);
+
+    /**
+     * Processes a message synchronously, waiting for the completion of {@link #onMessage(String, MqttMessage)}.
+     */
+    @Override
+    default void messageArrived(String topic, MqttMessage message) throws Exception {
+        onMessage(topic, message).toCompletableFuture().get();
+    }
+
+    @Override
+    default void connectionLost(Throwable cause) {
+        // nothing to do by default
+    }
+
+    @Override
+    default void deliveryComplete(IMqttDeliveryToken token) {
+        // nothing to do by default
+    }
+}
@@ -0,0 +1,24 @@
+/*
+ * Copyright © 2013-2020, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.mqtt;
+
+import java.util.List;
+
+/**
+ * Callback of a {@link MqttBatchListener}, called with the messages accumulated since the previous batch.
+ */
+public interface MqttBatchCallback {
+
+    /**
+     * Called when a batch of messages is ready.
+     *
+     * @param messages the received messages in arrival order.
+     * @throws Exception if the batch cannot be processed.
+     */
+    void messagesArrived(List<MqttReceivedMessage> messages) throws Exception;
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright © 2013-2020, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.mqtt;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Defines a new topic listener for a clients name which receives messages in batches. The annotated class must
+ * implement {@link MqttBatchCallback}. A batch is delivered as soon as it reaches {@link #maxBatchSize()} messages or
+ * when {@link #maxLatencyMs()} milliseconds have elapsed since its first message, whichever comes first.
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.TYPE})
+@Inherited
+public @interface MqttBatchListener {
+
+    String[] clients();
+
+    String[] topics();
+
+    String[] qos();
+
+    int maxBatchSize() default 100;
+
+    long maxLatencyMs() default 1000;
+
+    /**
+     * Group of the shared subscriptions of the listener, see {@link MqttListener#group()}.
+     *
+     * @return the share group.
+     */
+    String group() default "";
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright © 2013-2020, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.mqtt;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Publisher buffering messages and publishing them as a group, obtained from {@link MqttPublisher#buffered(int, long)}.
+ * The buffer is flushed when it holds the maximum number of messages, when the linger time has elapsed since its first
+ * message, or explicitly with {@link #flush()}. Closing the publisher flushes the buffer; later messages are rejected.
+ */
+public interface MqttBufferedPublisher extends AutoCloseable {
+    /**
+     * Adds a message to the buffer.
+     *
+     * @param message the message to publish.
+     * @return a future completed when the message is delivered, or completed exceptionally if it cannot be delivered
+     * or if the publisher is closed.
+     */
+    CompletableFuture<Void> publish(MqttOutboundMessage message);
+
+    /**
+     * Publishes the buffered messages without waiting for their delivery.
+     */
+    void flush();
+
+    /**
+     * Flushes the buffer and rejects further messages.
+     */
+    @Override
+    void close();
+}
@@ -19,6 +19,9 @@ import org.seedstack.seed.validation.NotBlank;
 @Config("mqtt")
 public class MqttConfig {
     private boolean enabled = true;
+    private int maxConcurrentConnections = 4;
+    private int startupTimeout = 30;
+    private StartupPolicy startupPolicy = StartupPolicy.BACKGROUND;
     private Map<String, ClientConfig> clients = new HashMap<>();
 
     public boolean isEnabled() {
@@ -30,6 +33,43 @@ public class MqttConfig {
         return this;
     }
 
+    public int getMaxConcurrentConnections() {
+        return maxConcurrentConnections;
+    }
+
+    /**
+     * @param maxConcurrentConnections maximum number of connection attempts, at startup or after a connection loss,
+     *                                 running at the same time across all clients. Other attempts wait for their
+     *                                 turn.
+     * @return the MQTT configuration.
+     */
+    public MqttConfig setMaxConcurrentConnections(int maxConcurrentConnections) {
+        this.maxConcurrentConnections = maxConcurrentConnections;
+        return this;
+    }
+
+    public int getStartupTimeout() {
+        return startupTimeout;
+    }
+
+    /**
+     * @param startupTimeout maximum time in seconds the application startup waits for the clients to connect.
+     * @return the MQTT configuration.
+     */
+    public MqttConfig setStartupTimeout(int startupTimeout) {
+        this.startupTimeout = startupTimeout;
+        return this;
+    }
+
+    public StartupPolicy getStartupPolicy() {
+        return startupPolicy;
+    }
+
+    public MqttConfig setStartupPolicy(StartupPolicy startupPolicy) {
+        this.startupPolicy = startupPolicy;
+        return this;
+    }
+
     public Map<String, ClientConfig> getClients() {
         return Collections.unmodifiableMap(clients);
     }
@@ -47,10 +87,22 @@ public class MqttConfig {
         private String clientId = MqttClient.generateClientId();
         private ReconnectionMode reconnectionMode = ReconnectionMode.ALWAYS;
         private int reconnectionInterval = 2;
+        private int maxReconnectionInterval = 60;
+        private int maxAsyncInFlight = 1000;
+        private int maxPublishInFlight;
+        private int connections = 1;
+        private PublishDistribution publishDistribution = PublishDistribution.TOPIC_HASH;
+        private boolean sharedSubscriptions = false;
+        private String shareGroup;
+        private int maxTopicFiltersPerSubscribe = 100;
         @Config("connection")
         private MqttConnectOptions connectOptions;
         @Config("pool")
         private PoolConfig poolConfig = new PoolConfig();
+        @Config("offlineBuffer")
+        private OfflineBufferConfig offlineBufferConfig = new OfflineBufferConfig();
+        @Config("persistence")
+        private PersistenceConfig persistenceConfig = new PersistenceConfig();
 
         public String getServerUri() {
             return serverUri;
@@ -83,11 +135,133 @@ public class MqttConfig {
             return reconnectionInterval;
         }
 
+        /**
+         * @param reconnectionInterval maximum delay in seconds before the first reconnection attempt. The maximum
+         *                             delay doubles after each failed attempt, the actual delay being drawn randomly
+         *                             below it.
+         * @return the client configuration.
+         */
         public ClientConfig setReconnectionInterval(int reconnectionInterval) {
             this.reconnectionInterval = reconnectionInterval;
             return this;
         }
 
+        public int getMaxReconnectionInterval() {
+            return maxReconnectionInterval;
+        }
+
+        /**
+         * @param maxReconnectionInterval cap in seconds of the maximum delay between two reconnection attempts.
+         * @return the client configuration.
+         */
+        public ClientConfig setMaxReconnectionInterval(int maxReconnectionInterval) {
+            this.maxReconnectionInterval = maxReconnectionInterval;
+            return this;
+        }
+
+        public int getMaxAsyncInFlight() {
+            return maxAsyncInFlight;
+        }
+
+        /**
+         * @param maxAsyncInFlight maximum number of messages in flight in {@link AsyncMqttListener}s of the client.
+         *                         Beyond this limit, messages are spooled, handed to the reject handler or
+         *                         reported as listener errors, without blocking the receiving thread.
+         * @return the client configuration.
+         */
+        public ClientConfig setMaxAsyncInFlight(int maxAsyncInFlight) {
+            this.maxAsyncInFlight = maxAsyncInFlight;
+            return this;
+        }
+
+        public int getMaxPublishInFlight() {
+            return maxPublishInFlight;
+        }
+
+        /**
+         * @param maxPublishInFlight maximum number of messages published through the {@link MqttPublisher} of the
+         *                           client and not delivered yet. Publishing waits when this limit is reached. Defaults
+         *                           to the {@code maxInflight} connection option, which it should not exceed.
+         * @return the client configuration.
+         */
+        public ClientConfig setMaxPublishInFlight(int maxPublishInFlight) {
+            this.maxPublishInFlight = maxPublishInFlight;
+            return this;
+        }
+
+        public int getMaxTopicFiltersPerSubscribe() {
+            return maxTopicFiltersPerSubscribe;
+        }
+
+        /**
+         * @param maxTopicFiltersPerSubscribe maximum number of topic filters sent in a single SUBSCRIBE packet. The
+         *                                    topic filters of a listener exceeding it are subscribed in several
+         *                                    packets.
+         * @return the client configuration.
+         */
+        public ClientConfig setMaxTopicFiltersPerSubscribe(int maxTopicFiltersPerSubscribe) {
+            this.maxTopicFiltersPerSubscribe = maxTopicFiltersPerSubscribe;
+            return this;
+        }
+
+        public int getConnections() {
+            return connections;
+        }
+
+        /**
+         * @param connections number of physical connections opened by the client. Additional connections use the
+         *                    client id followed by {@code -1}, {@code -2}... Messages published with the client or its
+         *                    {@link MqttPublisher} are spread across the connections according to the publish
+         *                    distribution. Each connection has its own in-flight window.
+         * @return the client configuration.
+         */
+        public ClientConfig setConnections(int connections) {
+            this.connections = connections;
+            return this;
+        }
+
+        public PublishDistribution getPublishDistribution() {
+            return publishDistribution;
+        }
+
+        public ClientConfig setPublishDistribution(PublishDistribution publishDistribution) {
+            this.publishDistribution = publishDistribution;
+            return this;
+        }
+
+        public boolean isSharedSubscriptions() {
+            return sharedSubscriptions;
+        }
+
+        /**
+         * @param sharedSubscriptions true to subscribe the listeners on every connection with a shared subscription
+         *                            ({@code $share/<client id>/<topic filter>}), so the broker spreads incoming
+         *                            messages across the connections. Otherwise only the first connection subscribes.
+         *                            Backpressure only applies to the first connection.
+         * @return the client configuration.
+         */
+        public ClientConfig setSharedSubscriptions(boolean sharedSubscriptions) {
+            this.sharedSubscriptions = sharedSubscriptions;
+            return this;
+        }
+
+        public String getShareGroup() {
+            return shareGroup;
+        }
+
+        /**
+         * @param shareGroup group of the shared subscriptions ({@code $share/<group>/<topic filter>}) of the listeners
+         *                   and runtime subscriptions of the client which do not declare their own group. The broker
+         *                   delivers each message to a single member of the group, so the instances of an application
+         *                   using the same group share the load. Also used instead of the client id when
+         *                   {@code sharedSubscriptions} is enabled.
+         * @return the client configuration.
+         */
+        public ClientConfig setShareGroup(String shareGroup) {
+            this.shareGroup = shareGroup;
+            return this;
+        }
+
         public MqttConnectOptions getConnectOptions() {
             return connectOptions;
         }
@@ -101,6 +275,196 @@ public class MqttConfig {
             return poolConfig;
         }
 
+        public OfflineBufferConfig getOfflineBufferConfig() {
+            return offlineBufferConfig;
+        }
+
+        public ClientConfig setOfflineBufferConfig(OfflineBufferConfig offlineBufferConfig) {
+            this.offlineBufferConfig = offlineBufferConfig;
+            return this;
+        }
+
+        public PersistenceConfig getPersistenceConfig() {
+            return persistenceConfig;
+        }
+
+        public ClientConfig setPersistenceConfig(PersistenceConfig persistenceConfig) {
+            this.persistenceConfig = persistenceConfig;
+            return this;
+        }
+
+        /**
+         * Persistence of the QoS 1 and 2 messages in flight of the client, sent again after a reconnection.
+         */
+        public static class PersistenceConfig {
+            @SingleValue
+            private PersistenceMode mode = PersistenceMode.FILE;
+            private String directory;
+            private int segmentSize = 4 * 1024 * 1024;
+            private boolean sync = true;
+
+            public PersistenceMode getMode() {
+                return mode;
+            }
+
+            public PersistenceConfig setMode(PersistenceMode mode) {
+                this.mode = mode;
+                return this;
+            }
+
+            public String getDirectory() {
+                return directory;
+            }
+
+            /**
+             * @param directory base directory of the FILE and MAPPED modes (defaults to the working directory for
+             *                  FILE and to a directory in the temporary directory for MAPPED).
+             * @return the persistence configuration.
+             */
+            public PersistenceConfig setDirectory(String directory) {
+                this.directory = directory;
+                return this;
+            }
+
+            public int getSegmentSize() {
+                return segmentSize;
+            }
+
+            /**
+             * @param segmentSize size of the log segment files of the MAPPED mode.
+             * @return the persistence configuration.
+             */
+            public PersistenceConfig setSegmentSize(int segmentSize) {
+                this.segmentSize = segmentSize;
+                return this;
+            }
+
+            public boolean isSync() {
+                return sync;
+            }
+
+            /**
+             * @param sync true to wait, in MAPPED mode, for a persisted message to be forced to disk before sending
+             *             it. Forces are shared by the messages persisted meanwhile. When false, messages survive a
+             *             crash of the JVM but not of the host.
+             * @return the persistence configuration.
+             */
+            public PersistenceConfig setSync(boolean sync) {
+                this.sync = sync;
+                return this;
+            }
+
+            /**
+             * Supported persistence modes:
+             * <ul>
+             * <li>NONE: nothing is persisted, messages in flight are not sent again after a reconnection.</li>
+             * <li>MEMORY: messages in flight are kept in memory, surviving reconnections but not restarts.</li>
+             * <li>FILE: each message in flight is written to its own file (default persistence of Paho).</li>
+             * <li>MAPPED: messages in flight are appended to memory-mapped log segments, with group-commit
+             * synchronization.</li>
+             * </ul>
+             */
+            public enum PersistenceMode {
+                NONE,
+                MEMORY,
+                FILE,
+                MAPPED
+            }
+        }
+
+        /**
+         * Offline publish buffer of the client. When enabled, messages published with the client while it is
+         * disconnected are kept in memory, up to maxMessages and maxBytes of payload, then appended to memory-mapped
+         * journal segments on disk if the overflow is enabled. They are published in order once the client is
+         * reconnected. Publishing still fails when the buffer is full.
+         */
+        public static class OfflineBufferConfig {
+            @SingleValue
+            private boolean enabled = false;
+            private int maxMessages = 10000;
+            private long maxBytes = 16 * 1024 * 1024;
+            private boolean overflow = false;
+            private String directory;
+            private int segmentSize = 16 * 1024 * 1024;
+            private long maxDiskUsage = 1024L * 1024 * 1024;
+
+            public boolean isEnabled() {
+                return enabled;
+            }
+
+            public OfflineBufferConfig setEnabled(boolean enabled) {
+                this.enabled = enabled;
+                return this;
+            }
+
+            public int getMaxMessages() {
+                return maxMessages;
+            }
+
+            public OfflineBufferConfig setMaxMessages(int maxMessages) {
+                this.maxMessages = maxMessages;
+                return this;
+            }
+
+            public long getMaxBytes() {
+                return maxBytes;
+            }
+
+            /**
+             * @param maxBytes maximum size of the payloads buffered in memory.
+             * @return the offline buffer configuration.
+             */
+            public OfflineBufferConfig setMaxBytes(long maxBytes) {
+                this.maxBytes = maxBytes;
+                return this;
+            }
+
+            public boolean isOverflow() {
+                return overflow;
+            }
+
+            /**
+             * @param overflow true to append the messages to disk when the memory buffer is full.
+             * @return the offline buffer configuration.
+             */
+            public OfflineBufferConfig setOverflow(boolean overflow) {
+                this.overflow = overflow;
+                return this;
+            }
+
+            public String getDirectory() {
+                return directory;
+            }
+
+            /**
+             * @param directory directory of the overflow segments (defaults to a directory named after the client in
+             *                  the temporary directory).
+             * @return the offline buffer configuration.
+             */
+            public OfflineBufferConfig setDirectory(String directory) {
+                this.directory = directory;
+                return this;
+            }
+
+            public int getSegmentSize() {
+                return segmentSize;
+            }
+
+            public OfflineBufferConfig setSegmentSize(int segmentSize) {
+                this.segmentSize = segmentSize;
+                return this;
+            }
+
+            public long getMaxDiskUsage() {
+                return maxDiskUsage;
+            }
+
+            public OfflineBufferConfig setMaxDiskUsage(long maxDiskUsage) {
+                this.maxDiskUsage = maxDiskUsage;
+                return this;
+            }
+        }
+
         public static class PoolConfig {
             @SingleValue
             private boolean enabled = false;
@@ -108,7 +472,18 @@ public class MqttConfig {
             private int maxSize = 2;
             private int queueSize = 500;
             private int keepAlive = 60;
-            private RejectedExecutionPolicy rejectedExecutionPolicy = RejectedExecutionPolicy.CALLER_RUNS;
+            private RejectedExecutionPolicy rejectedExecutionPolicy;
+            private PoolMode mode = PoolMode.STANDARD;
+            private QueueMode queueMode = QueueMode.FIFO;
+            private int lanes = Runtime.getRuntime().availableProcessors();
+            private Class<? extends MqttDispatchKeyExtractor> keyExtractor;
+            private WaitStrategy waitStrategy = WaitStrategy.PARK;
+            private boolean backpressure = false;
+            private int highWatermark;
+            private int lowWatermark;
+            private int drainTimeout = 30;
+            @Config("spool")
+            private SpoolConfig spoolConfig = new SpoolConfig();
 
             public boolean isEnabled() {
                 return enabled;
@@ -155,8 +530,15 @@ public class MqttConfig {
                 return this;
             }
 
+            /**
+             * @return the configured rejected execution policy, defaulting to ABORT for the ORDERED pool mode and to
+             * CALLER_RUNS for the other modes.
+             */
             public RejectedExecutionPolicy getRejectedExecutionPolicy() {
-                return rejectedExecutionPolicy;
+                if (rejectedExecutionPolicy != null) {
+                    return rejectedExecutionPolicy;
+                }
+                return mode == PoolMode.ORDERED ? RejectedExecutionPolicy.ABORT : RejectedExecutionPolicy.CALLER_RUNS;
             }
 
             public PoolConfig setRejectedExecutionPolicy(RejectedExecutionPolicy rejectedExecutionPolicy) {
@@ -164,6 +546,227 @@ public class MqttConfig {
                 return this;
             }
 
+            public PoolMode getMode() {
+                return mode;
+            }
+
+            public PoolConfig setMode(PoolMode mode) {
+                this.mode = mode;
+                return this;
+            }
+
+            public QueueMode getQueueMode() {
+                return queueMode;
+            }
+
+            public PoolConfig setQueueMode(QueueMode queueMode) {
+                this.queueMode = queueMode;
+                return this;
+            }
+
+            public int getLanes() {
+                return lanes;
+            }
+
+            public PoolConfig setLanes(int lanes) {
+                this.lanes = lanes;
+                return this;
+            }
+
+            public Class<? extends MqttDispatchKeyExtractor> getKeyExtractor() {
+                return keyExtractor;
+            }
+
+            public PoolConfig setKeyExtractor(Class<? extends MqttDispatchKeyExtractor> keyExtractor) {
+                this.keyExtractor = keyExtractor;
+                return this;
+            }
+
+            public WaitStrategy getWaitStrategy() {
+                return waitStrategy;
+            }
+
+            public PoolConfig setWaitStrategy(WaitStrategy waitStrategy) {
+                this.waitStrategy = waitStrategy;
+                return this;
+            }
+
+            public boolean isBackpressure() {
+                return backpressure;
+            }
+
+            /**
+             * Enables broker-side backpressure: QoS 1/2 messages are acknowledged manually and acknowledgements are
+             * withheld while the queue depth of the pool is above the high watermark, until it drops to the low
+             * watermark. The in-flight window of the broker then throttles the sender.
+             *
+             * @param backpressure true to enable backpressure.
+             * @return the pool configuration.
+             */
+            public PoolConfig setBackpressure(boolean backpressure) {
+                this.backpressure = backpressure;
+                return this;
+            }
+
+            public int getHighWatermark() {
+                return highWatermark;
+            }
+
+            /**
+             * @param highWatermark queue depth above which acknowledgements are withheld (defaults to 3/4 of the
+             *                      queue size when not set).
+             * @return the pool configuration.
+             */
+            public PoolConfig setHighWatermark(int highWatermark) {
+                this.highWatermark = highWatermark;
+                return this;
+            }
+
+            public int getLowWatermark() {
+                return lowWatermark;
+            }
+
+            /**
+             * @param lowWatermark queue depth at which withheld acknowledgements are released (defaults to 1/4 of the
+             *                     queue size when not set).
+             * @return the pool configuration.
+             */
+            public PoolConfig setLowWatermark(int lowWatermark) {
+                this.lowWatermark = lowWatermark;
+                return this;
+            }
+
+            public int getDrainTimeout() {
+                return drainTimeout;
+            }
+
+            /**
+             * @param drainTimeout maximum time in seconds given to the pool to process the messages it holds when the
+             *                     application stops. Messages still queued after this delay are spooled or handed to
+             *                     the reject handler.
+             * @return the pool configuration.
+             */
+            public PoolConfig setDrainTimeout(int drainTimeout) {
+                this.drainTimeout = drainTimeout;
+                return this;
+            }
+
+            public SpoolConfig getSpoolConfig() {
+                return spoolConfig;
+            }
+
+            public PoolConfig setSpoolConfig(SpoolConfig spoolConfig) {
+                this.spoolConfig = spoolConfig;
+                return this;
+            }
+
+            /**
+             * Overflow spool of the pool. When enabled, messages rejected by a saturated pool are appended to
+             * memory-mapped journal segments on disk instead of being dropped or run on the receiving thread, and are
+             * replayed into the pool once its queue depth drops to the low watermark.
+             */
+            public static class SpoolConfig {
+                @SingleValue
+                private boolean enabled = false;
+                private String directory;
+                private int segmentSize = 16 * 1024 * 1024;
+                private long maxDiskUsage = 1024L * 1024 * 1024;
+
+                public boolean isEnabled() {
+                    return enabled;
+                }
+
+                public SpoolConfig setEnabled(boolean enabled) {
+                    this.enabled = enabled;
+                    return this;
+                }
+
+                public String getDirectory() {
+                    return directory;
+                }
+
+                /**
+                 * @param directory directory of the journal segments (defaults to a directory named after the client
+                 *                  in the temporary directory).
+                 * @return the spool configuration.
+                 */
+                public SpoolConfig setDirectory(String directory) {
+                    this.directory = directory;
+                    return this;
+                }
+
+                public int getSegmentSize() {
+                    return segmentSize;
+                }
+
+                public SpoolConfig setSegmentSize(int segmentSize) {
+                    this.segmentSize = segmentSize;
+                    return this;
+                }
+
+                public long getMaxDiskUsage() {
+                    return maxDiskUsage;
+                }
+
+                public SpoolConfig setMaxDiskUsage(long maxDiskUsage) {
+                    this.maxDiskUsage = maxDiskUsage;
+                    return this;
+                }
+            }
+
+            /**
+             * Supported dispatch modes:
+             * <ul>
+             * <li>STANDARD: messages are submitted to a single {@link java.util.concurrent.ThreadPoolExecutor}
+             * (coreSize/maxSize/queueSize), without any ordering guarantee when more than one thread is used.</li>
+             * <li>ORDERED: messages are striped across {@code lanes} single-threaded executors by topic hash (or by
+             * the key computed by the configured {@link MqttDispatchKeyExtractor}), each lane having its own queue of
+             * queueSize. Messages with the same key are processed in order. The rejected execution policy defaults to
+             * ABORT and must be ABORT or DISCARD, as CALLER_RUNS and DISCARD_OLDEST would reorder the messages of a
+             * full lane.</li>
+             * <li>VIRTUAL: each message is processed on its own virtual thread, at most maxSize at the same time.
+             * The rejected execution policy applies when this limit is reached. There is no queue, so the queue mode
+             * is ignored. Falls back to STANDARD when the JVM does not support virtual threads.</li>
+             * <li>RING_BUFFER: messages are written in a pre-allocated lock-free ring buffer of queueSize slots
+             * (rounded up to a power of two) consumed by maxSize threads waiting according to the wait strategy.</li>
+             * </ul>
+             */
+            public enum PoolMode {
+                STANDARD,
+                ORDERED,
+                VIRTUAL,
+                RING_BUFFER
+            }
+
+            /**
+             * Queue modes of the STANDARD pool, also used by the VIRTUAL pool when it falls back to STANDARD. The other
+             * pool modes ignore the queue mode and log a warning when CONFLATING is configured:
+             * <ul>
+             * <li>FIFO: every message is queued, up to queueSize messages.</li>
+             * <li>CONFLATING: a message received on a topic already waiting in the queue for the same listener
+             * replaces the waiting one, so only the latest value of each topic is processed. Up to queueSize distinct
+             * topics can wait.</li>
+             * </ul>
+             */
+            public enum QueueMode {
+                FIFO,
+                CONFLATING
+            }
+
+            /**
+             * Wait strategies of the RING_BUFFER consumers when no message is available:
+             * <ul>
+             * <li>BUSY_SPIN: spin on the ring buffer, lowest latency but a full core per consumer.</li>
+             * <li>YIELD: yield the CPU between attempts.</li>
+             * <li>PARK: spin, then yield, then park for a few microseconds between attempts.</li>
+             * </ul>
+             */
+            public enum WaitStrategy {
+                BUSY_SPIN,
+                YIELD,
+                PARK
+            }
+
             /**
              * Supported RejectedExecutionHandler policies :
              * <ul>
@@ -193,5 +796,34 @@ public class MqttConfig {
         public enum ReconnectionMode {
             NONE, ALWAYS, CUSTOM
         }
+
+        /**
+         * Distribution of published messages across the connections of a client:
+         * <ul>
+         * <li>TOPIC_HASH: messages are published on a connection chosen by the hash of their topic, keeping the order
+         * of the messages of a topic.</li>
+         * <li>ROUND_ROBIN: messages are published on each connection in turn, without any ordering guarantee.</li>
+         * </ul>
+         * A message is published on the first connection when its connection is down.
+         */
+        public enum PublishDistribution {
+            TOPIC_HASH, ROUND_ROBIN
+        }
+    }
+
+    /**
+     * Handling of the clients whose first connection attempt failed or which are not connected when the startup
+     * timeout expires:
+     * <ul>
+     * <li>FAIL: the application startup fails.</li>
+     * <li>BACKGROUND: the application starts and the clients keep trying to connect according to their reconnection
+     * mode.</li>
+     * <li>DEGRADE: the application starts without these clients, which make no further connection attempt.</li>
+     * </ul>
+     */
+    public enum StartupPolicy {
+        FAIL,
+        BACKGROUND,
+        DEGRADE
     }
 }
@@ -0,0 +1,27 @@
+/*
+ * Copyright © 2013-2020, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.mqtt;
+
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+
+/**
+ * Extracts the ordering key of a received message when the pool runs in
+ * {@link MqttConfig.ClientConfig.PoolConfig.PoolMode#ORDERED} mode. Messages with equal keys are processed in arrival
+ * order, messages with different keys may be processed in parallel.
+ */
+public interface MqttDispatchKeyExtractor {
+
+    /**
+     * Computes the ordering key of a message.
+     *
+     * @param topic   topic the message was received on.
+     * @param message the received {@link MqttMessage}.
+     * @return the ordering key, must not be null.
+     */
+    Object extractKey(String topic, MqttMessage message);
+}
@@ -32,4 +32,69 @@ public @interface MqttListener {
 
     String[] qos();
 
+    /**
+     * Declares the listener as thread-safe. A single instance of a thread-safe listener is created and reused for all
+     * messages, instead of a new instance per message.
+     *
+     * @return true if the listener is thread-safe.
+     */
+    boolean threadSafe() default false;
+
+    /**
+     * Declares the codec decoding the payloads of a {@link MqttTypedListener}, instead of the codec chosen from its
+     * payload type. The codec is instantiated once by the injector.
+     *
+     * @return the codec class.
+     */
+    @SuppressWarnings("rawtypes")
+    Class<? extends MqttPayloadCodec> codec() default MqttPayloadCodec.class;
+
+    /**
+     * Maximum number of attempts to process a message, including the first one. When the listener throws, the message
+     * is retried later through the client pool, or through a dedicated thread of the client when it has no pool,
+     * without holding a thread while waiting. The messages received in the meantime are not held back, so a retried
+     * message can be processed after messages received later. Retries are not applied to {@link AsyncMqttListener}s.
+     *
+     * @return the maximum number of attempts, 1 to disable retries.
+     */
+    int maxAttempts() default 1;
+
+    /**
+     * @return the delay in milliseconds before the first retry.
+     */
+    long retryDelayMs() default 100;
+
+    /**
+     * @return the maximum delay in milliseconds between two retries.
+     */
+    long maxRetryDelayMs() default 10000;
+
+    /**
+     * @return the factor applied to the delay after each retry.
+     */
+    double retryMultiplier() default 2.0;
+
+    /**
+     * @return the ratio of the delay randomly added or removed to spread the retries, between 0 and 1.
+     */
+    double retryJitter() default 0.2;
+
+    /**
+     * Topic to which messages are published when their last attempt fails. When empty, these messages are handed to
+     * the {@link MqttRejectedExecutionHandler} of the client if any. The value can reference the configuration.
+     *
+     * @return the dead-letter topic.
+     */
+    String deadLetterTopic() default "";
+
+    /**
+     * Group of the shared subscriptions of the listener: its topics are subscribed as
+     * {@code $share/<group>/<topic filter>}, so the broker delivers each message to a single member of the group. The
+     * instances of an application using the same group share the load. When empty, the {@code shareGroup} of the
+     * client applies. The value can reference the configuration.
+     *
+     * @return the share group.
+     */
+    String group() default "";
+
 }
@@ -0,0 +1,35 @@
+/*
+ * Copyright © 2013-2020, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.mqtt;
+
+/**
+ * Converts MQTT payloads from and to a typed representation. A custom codec can be declared on a
+ * {@link MqttTypedListener} with {@link MqttListener#codec()}. Codec instances are shared and must be thread-safe.
+ *
+ * @param <T> the payload type.
+ */
+public interface MqttPayloadCodec<T> {
+
+    /**
+     * Decodes a payload.
+     *
+     * @param payload the raw payload.
+     * @return the decoded value.
+     * @throws Exception if the payload cannot be decoded.
+     */
+    T decode(byte[] payload) throws Exception;
+
+    /**
+     * Encodes a value into a payload.
+     *
+     * @param value the value to encode.
+     * @return the raw payload.
+     * @throws Exception if the value cannot be encoded.
+     */
+    byte[] encode(T value) throws Exception;
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright © 2013-2020, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.mqtt;
+
+/**
+ * The outcome of the publication of a {@link MqttOutboundMessage}.
+ */
+public class MqttPublishResult {
+    private final MqttOutboundMessage message;
+    private final Throwable failure;
+
+    public MqttPublishResult(MqttOutboundMessage message, Throwable failure) {
+        this.message = message;
+        this.failure = failure;
+    }
+
+    public MqttOutboundMessage getMessage() {
+        return message;
+    }
+
+    /**
+     * @return true if the message has been delivered.
+     */
+    public boolean isSuccess() {
+        return failure == null;
+    }
+
+    /**
+     * @return the cause of the failure or null if the message has been delivered.
+     */
+    public Throwable getFailure() {
+        return failure;
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright © 2013-2020, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.mqtt;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+
+/**
+ * Non-blocking publisher of a client, injected with the name of the client:
+ * <pre>
+ * &#64;Inject
+ * &#64;Named("client1")
+ * private MqttPublisher publisher;
+ * </pre>
+ * It shares the connection of the client. The number of messages in flight is limited by the {@code maxPublishInFlight}
+ * option of the client: when it is reached, publishing waits until an earlier message is delivered.
+ */
+public interface MqttPublisher {
+    /**
+     * Publishes a message.
+     *
+     * @param topic   the topic to publish to.
+     * @param payload the payload of the message.
+     * @param qos     the quality of service of the message.
+     * @return a future completed when the message is delivered (sent for QoS 0, acknowledged by the broker for QoS 1
+     * and 2), or completed exceptionally if it cannot be delivered.
+     */
+    CompletableFuture<Void> publishAsync(String topic, byte[] payload, int qos);
+
+    /**
+     * Publishes a message.
+     *
+     * @param topic   the topic to publish to.
+     * @param message the message.
+     * @return a future completed when the message is delivered (sent for QoS 0, acknowledged by the broker for QoS 1
+     * and 2), or completed exceptionally if it cannot be delivered.
+     */
+    CompletableFuture<Void> publishAsync(String topic, MqttMessage message);
+
+    /**
+     * Publishes a group of messages. All messages are sent to the broker without waiting for the acknowledgement of the
+     * previous ones (within the limit of messages in flight), then their acknowledgements are awaited together.
+     *
+     * @param messages the messages to publish.
+     * @return a future completed when every message is delivered or has failed, with the result of each message in
+     * the order of the collection.
+     */
+    CompletableFuture<List<MqttPublishResult>> publishAll(Collection<MqttOutboundMessage> messages);
+
+    /**
+     * Creates a publisher buffering messages and publishing them with {@link #publishAll(Collection)}. The linger
+     * flush runs on the shared scheduler of the MQTT add-on, so keep the linger time above a few milliseconds.
+     *
+     * @param maxBatchSize the number of buffered messages triggering a flush.
+     * @param lingerMs     the maximum time a message waits in the buffer, in milliseconds.
+     * @return the buffered publisher, to be closed when no longer used.
+     */
+    MqttBufferedPublisher buffered(int maxBatchSize, long lingerMs);
+
+    /**
+     * @return the number of published messages not delivered yet.
+     */
+    int getInFlight();
+}
@@ -0,0 +1,31 @@
+/*
+ * Copyright © 2013-2020, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.mqtt;
+
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+
+/**
+ * A {@link MqttMessage} with the topic it has been received on.
+ */
+public class MqttReceivedMessage {
+    private final String topic;
+    private final MqttMessage message;
+
+    public MqttReceivedMessage(String topic, MqttMessage message) {
+        this.topic = topic;
+        this.message = message;
+    }
+
+    public String getTopic() {
+        return topic;
+    }
+
+    public MqttMessage getMessage() {
+        return message;
+    }
+}
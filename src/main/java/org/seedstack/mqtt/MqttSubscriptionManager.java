@@ -0,0 +1,50 @@
+/*
+ * Copyright © 2013-2020, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.mqtt;
+
+import java.util.Map;
+import org.eclipse.paho.client.mqttv3.IMqttMessageListener;
+import org.eclipse.paho.client.mqttv3.MqttException;
+
+/**
+ * Manager of the subscriptions made at runtime on a client, injected with the name of the client:
+ * <pre>
+ * &#64;Inject
+ * &#64;Named("client1")
+ * private MqttSubscriptionManager subscriptionManager;
+ * </pre>
+ * These subscriptions come in addition to the topics of the {@link MqttListener}s of the client. Messages are
+ * dispatched to their listener like to a {@link MqttListener}, on the thread pool of the client if it has one. The
+ * active subscriptions are subscribed again when the client reconnects.
+ */
+public interface MqttSubscriptionManager {
+    /**
+     * Subscribes to a topic filter, replacing the listener and quality of service of an existing subscription to the
+     * same topic filter. When the client is disconnected, the subscription is made when it reconnects.
+     *
+     * @param topicFilter the topic filter, possibly containing wildcards.
+     * @param qos         the maximum quality of service of the messages received.
+     * @param listener    the listener of the messages received on topics matching the filter.
+     * @throws MqttException if the broker refuses the subscription.
+     */
+    void subscribe(String topicFilter, int qos, IMqttMessageListener listener) throws MqttException;
+
+    /**
+     * Unsubscribes from a topic filter subscribed with {@link #subscribe(String, int, IMqttMessageListener)}. Messages
+     * matching it are no longer dispatched to its listener, even if the broker still delivers some of them.
+     *
+     * @param topicFilter the topic filter.
+     * @throws MqttException if the client can not unsubscribe.
+     */
+    void unsubscribe(String topicFilter) throws MqttException;
+
+    /**
+     * @return the quality of service of each topic filter subscribed at runtime.
+     */
+    Map<String, Integer> getSubscriptions();
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright © 2013-2020, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.mqtt;
+
+import org.eclipse.paho.client.mqttv3.IMqttDeliveryToken;
+import org.eclipse.paho.client.mqttv3.MqttCallback;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+
+/**
+ * {@link MqttListener} receiving decoded payloads. The codec is chosen once at startup from the payload type:
+ * <ul>
+ * <li>{@code byte[]}: the raw payload,</li>
+ * <li>{@link java.nio.ByteBuffer}: a read-only view wrapping the payload without copy,</li>
+ * <li>{@link String}: the payload decoded as UTF-8,</li>
+ * <li>any other type: the payload deserialized from JSON,</li>
+ * </ul>
+ * unless a custom {@link MqttPayloadCodec} is declared with {@link MqttListener#codec()}. Payloads are decoded on the
+ * pool thread running the listener when the pool of the client is enabled.
+ *
+ * @param <T> the payload type.
+ */
+public interface MqttTypedListener<T> extends MqttCallback {
+
+    /**
+     * Called when a message is received.
+     *
+     * @param topic   the topic of the message.
+     * @param payload the decoded payload.
+     * @param message the received message.
+     * @throws Exception if the message cannot be processed.
+     */
+    void onMessage(String topic, T payload, MqttMessage message) throws Exception;
+
+    /**
+     * Typed listeners are called through {@link #onMessage(String, Object, MqttMessage)} once their payload is decoded.
+     */
+    @Override
+    default void messageArrived(String topic, MqttMessage message) throws Exception {
+        throw new UnsupportedOperationException("Typed MQTT listeners receive decoded payloads through onMessage()");
+    }
+
+    @Override
+    default void connectionLost(Throwable cause) {
+        // nothing to do by default
+    }
+
+    @Override
+    default void deliveryComplete(IMqttDeliveryToken token) {
+        // nothing to do by default
+    }
+}
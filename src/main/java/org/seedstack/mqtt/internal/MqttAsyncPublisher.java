@@ -0,0 +1,145 @@
+/*
+ * Copyright © 2013-2020, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.mqtt.internal;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.function.Function;
+import org.eclipse.paho.client.mqttv3.IMqttActionListener;
+import org.eclipse.paho.client.mqttv3.IMqttAsyncClient;
+import org.eclipse.paho.client.mqttv3.IMqttDeliveryToken;
+import org.eclipse.paho.client.mqttv3.IMqttToken;
+import org.eclipse.paho.client.mqttv3.MqttException;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.seedstack.mqtt.MqttBufferedPublisher;
+import org.seedstack.mqtt.MqttOutboundMessage;
+import org.seedstack.mqtt.MqttPublishResult;
+import org.seedstack.mqtt.MqttPublisher;
+
+/**
+ * {@link MqttPublisher} backed by the asynchronous clients of the connections of a {@link MqttBlockingClient}. The future of each message
+ * is carried as the user context of its delivery token. It is completed by the {@link MqttCallbackAdapter} of the
+ * client through {@link #deliveryComplete(IMqttDeliveryToken)}, or completed exceptionally when the publication fails.
+ * A semaphore bounds the number of messages in flight.
+ */
+class MqttAsyncPublisher implements MqttPublisher {
+    private static final IMqttActionListener FAILURE_LISTENER = new IMqttActionListener() {
+        @Override
+        public void onSuccess(IMqttToken asyncActionToken) {
+            // completed by deliveryComplete()
+        }
+
+        @Override
+        public void onFailure(IMqttToken asyncActionToken, Throwable exception) {
+            Object userContext = asyncActionToken.getUserContext();
+            if (userContext instanceof PublishFuture) {
+                ((PublishFuture) userContext).completeExceptionally(exception);
+            }
+        }
+    };
+    private final Function<String, IMqttAsyncClient> asyncClients;
+    private final ScheduledExecutorService scheduler;
+    private final Executor flushExecutor;
+    private final int maxInFlight;
+    private final Semaphore permits;
+
+    /**
+     * Default constructor.
+     *
+     * @param asyncClients  the asynchronous client used to publish on each topic.
+     * @param scheduler     scheduler detecting when the linger time of the buffered publishers has elapsed.
+     * @param flushExecutor executor flushing the buffered publishers when their linger time has elapsed.
+     * @param maxInFlight   maximum number of messages in flight.
+     */
+    MqttAsyncPublisher(Function<String, IMqttAsyncClient> asyncClients, ScheduledExecutorService scheduler,
+                       Executor flushExecutor, int maxInFlight) {
+        this.asyncClients = asyncClients;
+        this.scheduler = scheduler;
+        this.flushExecutor = flushExecutor;
+        this.maxInFlight = Math.max(1, maxInFlight);
+        this.permits = new Semaphore(this.maxInFlight);
+    }
+
+    @Override
+    public CompletableFuture<Void> publishAsync(String topic, byte[] payload, int qos) {
+        MqttMessage message = new MqttMessage(payload);
+        message.setQos(qos);
+        return publishAsync(topic, message);
+    }
+
+    @Override
+    public CompletableFuture<Void> publishAsync(String topic, MqttMessage message) {
+        PublishFuture future = new PublishFuture();
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.completeExceptionally(e);
+            return future;
+        }
+        future.whenComplete((result, failure) -> permits.release());
+        try {
+            asyncClients.apply(topic).publish(topic, message, future, FAILURE_LISTENER);
+        } catch (MqttException | RuntimeException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    @Override
+    public CompletableFuture<List<MqttPublishResult>> publishAll(Collection<MqttOutboundMessage> messages) {
+        List<CompletableFuture<MqttPublishResult>> results = new ArrayList<>(messages.size());
+        for (MqttOutboundMessage message : messages) {
+            results.add(publishAsync(message.getTopic(), message.getMessage())
+                    .handle((result, failure) -> new MqttPublishResult(message, failure)));
+        }
+        return CompletableFuture.allOf(results.toArray(new CompletableFuture<?>[0])).thenApply(done -> {
+            List<MqttPublishResult> list = new ArrayList<>(results.size());
+            for (CompletableFuture<MqttPublishResult> result : results) {
+                list.add(result.join());
+            }
+            return list;
+        });
+    }
+
+    @Override
+    public MqttBufferedPublisher buffered(int maxBatchSize, long lingerMs) {
+        return new MqttBatchingPublisher(this, scheduler, flushExecutor, maxBatchSize, lingerMs);
+    }
+
+    @Override
+    public int getInFlight() {
+        return maxInFlight - permits.availablePermits();
+    }
+
+    /**
+     * Completes the future of a message published by this publisher.
+     *
+     * @param token the delivery token of the message.
+     * @return false if the message was not published by this publisher.
+     */
+    boolean deliveryComplete(IMqttDeliveryToken token) {
+        Object userContext = token != null ? token.getUserContext() : null;
+        if (userContext instanceof PublishFuture) {
+            ((PublishFuture) userContext).complete(null);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Future of a message published by this publisher, distinguishing its tokens from the tokens of other messages.
+     */
+    private static class PublishFuture extends CompletableFuture<Void> {
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright © 2013-2020, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.mqtt.internal;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Accumulates messages (received messages of batch listeners or messages to publish) and hands them over as a batch
+ * when the maximum batch size is reached or when the maximum latency has elapsed since the first message of the batch.
+ *
+ * @param <E> the type of the accumulated messages.
+ */
+class MqttBatchAccumulator<E> {
+    private final int maxBatchSize;
+    private final long maxLatencyMs;
+    private final ScheduledExecutorService scheduler;
+    private final Executor expirationExecutor;
+    private final Consumer<List<E>> sink;
+    private List<E> buffer;
+    private ScheduledFuture<?> expiration;
+    private long generation;
+
+    /**
+     * Default constructor.
+     *
+     * @param maxBatchSize maximum number of messages in a batch.
+     * @param maxLatencyMs maximum time a message can wait in a batch.
+     * @param scheduler    scheduler used to flush expired batches.
+     * @param sink         consumer of the ready batches.
+     */
+    MqttBatchAccumulator(int maxBatchSize, long maxLatencyMs, ScheduledExecutorService scheduler,
+                         Consumer<List<E>> sink) {
+        this(maxBatchSize, maxLatencyMs, scheduler, Runnable::run, sink);
+    }
+
+    /**
+     * Constructor handing the expired batches to the sink on another executor than the scheduler, for sinks which
+     * can block.
+     *
+     * @param maxBatchSize       maximum number of messages in a batch.
+     * @param maxLatencyMs       maximum time a message can wait in a batch.
+     * @param scheduler          scheduler used to detect expired batches.
+     * @param expirationExecutor executor flushing expired batches.
+     * @param sink               consumer of the ready batches.
+     */
+    MqttBatchAccumulator(int maxBatchSize, long maxLatencyMs, ScheduledExecutorService scheduler,
+                         Executor expirationExecutor, Consumer<List<E>> sink) {
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+        this.maxLatencyMs = maxLatencyMs;
+        this.scheduler = scheduler;
+        this.expirationExecutor = expirationExecutor;
+        this.sink = sink;
+        this.buffer = new ArrayList<>(this.maxBatchSize);
+    }
+
+    void add(E element) {
+        List<E> ready = null;
+        synchronized (this) {
+            if (buffer.isEmpty() && maxBatchSize > 1) {
+                final long current = generation;
+                expiration = scheduler.schedule(() -> expirationExecutor.execute(() -> flush(current)), maxLatencyMs,
+                        TimeUnit.MILLISECONDS);
+            }
+            buffer.add(element);
+            if (buffer.size() >= maxBatchSize) {
+                ready = drain();
+            }
+        }
+        if (ready != null) {
+            sink.accept(ready);
+        }
+    }
+
+    void flush() {
+        List<E> ready = null;
+        synchronized (this) {
+            if (!buffer.isEmpty()) {
+                ready = drain();
+            }
+        }
+        if (ready != null) {
+            sink.accept(ready);
+        }
+    }
+
+    private void flush(long expectedGeneration) {
+        List<E> ready = null;
+        synchronized (this) {
+            // The batch may already have been flushed because it was full
+            if (generation == expectedGeneration && !buffer.isEmpty()) {
+                ready = drain();
+            }
+        }
+        if (ready != null) {
+            sink.accept(ready);
+        }
+    }
+
+    private List<E> drain() {
+        List<E> ready = buffer;
+        buffer = new ArrayList<>(maxBatchSize);
+        generation++;
+        if (expiration != null) {
+            expiration.cancel(false);
+            expiration = null;
+        }
+        return ready;
+    }
+}
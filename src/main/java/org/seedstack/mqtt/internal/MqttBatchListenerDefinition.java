@@ -0,0 +1,68 @@
+/*
+ * Copyright © 2013-2020, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.mqtt.internal;
+
+import org.seedstack.mqtt.MqttBatchCallback;
+
+/**
+ * Defined all topics/qos to listen and the batching thresholds of a batch listener.
+ */
+class MqttBatchListenerDefinition {
+    private final String[] topicFilter;
+    private final String className;
+    private final int[] qos;
+    private final Class<? extends MqttBatchCallback> listenerClass;
+    private final int maxBatchSize;
+    private final long maxLatencyMs;
+    private String shareGroup;
+
+    MqttBatchListenerDefinition(Class<? extends MqttBatchCallback> listenerClass, String className,
+                                String[] topicFilter, int[] qos, int maxBatchSize, long maxLatencyMs) {
+        this.topicFilter = topicFilter;
+        this.className = className;
+        this.qos = qos;
+        this.listenerClass = listenerClass;
+        this.maxBatchSize = maxBatchSize;
+        this.maxLatencyMs = maxLatencyMs;
+    }
+
+    String[] getTopicFilter() {
+        return topicFilter;
+    }
+
+    String getClassName() {
+        return className;
+    }
+
+    int[] getQos() {
+        return qos;
+    }
+
+    Class<? extends MqttBatchCallback> getListenerClass() {
+        return listenerClass;
+    }
+
+    int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    long getMaxLatencyMs() {
+        return maxLatencyMs;
+    }
+
+    /**
+     * @return the group of the shared subscriptions of the listener, null if it does not declare one.
+     */
+    String getShareGroup() {
+        return shareGroup;
+    }
+
+    void setShareGroup(String shareGroup) {
+        this.shareGroup = shareGroup;
+    }
+}
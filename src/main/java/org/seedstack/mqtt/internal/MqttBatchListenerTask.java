@@ -0,0 +1,76 @@
+/*
+ * Copyright © 2013-2020, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.mqtt.internal;
+
+import java.util.List;
+import org.seedstack.mqtt.MqttBatchCallback;
+import org.seedstack.mqtt.MqttReceivedMessage;
+import org.seedstack.seed.SeedException;
+
+/**
+ * Task delivering a batch of received messages to a {@link MqttBatchCallback}.
+ */
+class MqttBatchListenerTask implements Runnable {
+    private final MqttBatchCallback listener;
+    private final List<MqttReceivedMessage> messages;
+    private final MqttListenerMetrics metrics;
+    private final long enqueuedAt;
+
+    /**
+     * Default constructor
+     *
+     * @param listener real batch listener to call
+     * @param messages batch of received messages
+     */
+    MqttBatchListenerTask(MqttBatchCallback listener, List<MqttReceivedMessage> messages) {
+        this(listener, messages, null);
+    }
+
+    /**
+     * Constructor recording the queue-wait and execution times of the batch.
+     *
+     * @param listener real batch listener to call
+     * @param messages batch of received messages
+     * @param metrics  metrics of the batch listener, null to record nothing
+     */
+    MqttBatchListenerTask(MqttBatchCallback listener, List<MqttReceivedMessage> messages,
+                          MqttListenerMetrics metrics) {
+        this.listener = listener;
+        this.messages = messages;
+        this.metrics = metrics;
+        this.enqueuedAt = metrics != null ? System.nanoTime() : 0;
+    }
+
+    @Override
+    public void run() {
+        long start = metrics != null ? System.nanoTime() : 0;
+        try {
+            listener.messagesArrived(messages);
+        } catch (Exception e) {
+            throw SeedException.wrap(e, MqttErrorCode.LISTENER_ERROR)
+                    .put("listenerClass", listener.getClass().getName());
+        } finally {
+            if (metrics != null) {
+                metrics.recordQueueWait(start - enqueuedAt);
+                metrics.recordExecution(System.nanoTime() - start);
+            }
+        }
+    }
+
+    /**
+     * @return the name of the batch listener definition if the task records metrics, the class name of the listener
+     * otherwise.
+     */
+    String getListenerName() {
+        return metrics != null ? metrics.getListenerName() : listener.getClass().getName();
+    }
+
+    List<MqttReceivedMessage> getMessages() {
+        return messages;
+    }
+}
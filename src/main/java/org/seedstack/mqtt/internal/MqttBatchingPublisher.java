@@ -0,0 +1,105 @@
+/*
+ * Copyright © 2013-2020, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.mqtt.internal;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import org.seedstack.mqtt.MqttBufferedPublisher;
+import org.seedstack.mqtt.MqttOutboundMessage;
+import org.seedstack.mqtt.MqttPublishResult;
+import org.seedstack.mqtt.MqttPublisher;
+
+/**
+ * {@link MqttBufferedPublisher} accumulating messages in a {@link MqttBatchAccumulator} and publishing each flushed
+ * group with {@link MqttPublisher#publishAll(java.util.Collection)}.
+ */
+class MqttBatchingPublisher implements MqttBufferedPublisher {
+    private final MqttPublisher publisher;
+    private final MqttBatchAccumulator<PendingMessage> accumulator;
+    private volatile boolean closed;
+
+    /**
+     * Default constructor.
+     *
+     * @param publisher     the publisher of the flushed groups.
+     * @param scheduler     scheduler detecting when the linger time has elapsed.
+     * @param flushExecutor executor flushing the buffer when the linger time has elapsed, as a flush can wait for the
+     *                      in-flight window of the publisher.
+     * @param maxBatchSize  number of buffered messages triggering a flush.
+     * @param lingerMs      maximum time a message waits in the buffer.
+     */
+    MqttBatchingPublisher(MqttPublisher publisher, ScheduledExecutorService scheduler, Executor flushExecutor,
+                          int maxBatchSize, long lingerMs) {
+        this.publisher = publisher;
+        this.accumulator = new MqttBatchAccumulator<>(maxBatchSize, lingerMs, scheduler, flushExecutor,
+                this::publish);
+    }
+
+    @Override
+    public CompletableFuture<Void> publish(MqttOutboundMessage message) {
+        PendingMessage pendingMessage = new PendingMessage(message);
+        if (closed) {
+            pendingMessage.future.completeExceptionally(new IllegalStateException("Buffered publisher is closed"));
+        } else {
+            accumulator.add(pendingMessage);
+        }
+        return pendingMessage.future;
+    }
+
+    @Override
+    public void flush() {
+        accumulator.flush();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        accumulator.flush();
+    }
+
+    private void publish(List<PendingMessage> pendingMessages) {
+        List<MqttOutboundMessage> messages = new ArrayList<>(pendingMessages.size());
+        for (PendingMessage pendingMessage : pendingMessages) {
+            messages.add(pendingMessage.message);
+        }
+        CompletableFuture<List<MqttPublishResult>> publication;
+        try {
+            publication = publisher.publishAll(messages);
+        } catch (RuntimeException e) {
+            publication = new CompletableFuture<>();
+            publication.completeExceptionally(e);
+        }
+        publication.whenComplete((results, failure) -> {
+            for (int i = 0; i < pendingMessages.size(); i++) {
+                CompletableFuture<Void> future = pendingMessages.get(i).future;
+                if (failure != null) {
+                    future.completeExceptionally(failure);
+                } else if (results.get(i).isSuccess()) {
+                    future.complete(null);
+                } else {
+                    future.completeExceptionally(results.get(i).getFailure());
+                }
+            }
+        });
+    }
+
+    /**
+     * A buffered message with the future returned to the caller.
+     */
+    private static class PendingMessage {
+        private final MqttOutboundMessage message;
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        private PendingMessage(MqttOutboundMessage message) {
+            this.message = message;
+        }
+    }
+}
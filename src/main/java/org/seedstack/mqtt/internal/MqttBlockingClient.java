@@ -0,0 +1,102 @@
+/*
+ * Copyright © 2013-2020, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.mqtt.internal;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.eclipse.paho.client.mqttv3.IMqttAsyncClient;
+import org.eclipse.paho.client.mqttv3.MqttClient;
+import org.eclipse.paho.client.mqttv3.MqttClientPersistence;
+import org.eclipse.paho.client.mqttv3.MqttException;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.seedstack.mqtt.MqttConfig;
+
+/**
+ * {@link MqttClient} exposing the asynchronous client it wraps, so non-blocking publishing shares its connection and
+ * callback. When it has an offline buffer, messages published while it is disconnected, or while earlier buffered
+ * messages are not flushed yet, are buffered instead of failing.
+ * <p>
+ * A client with additional connections stays the single handle of the application: it spreads published messages
+ * across itself and its connections, falling back to itself when the chosen connection is down.
+ */
+class MqttBlockingClient extends MqttClient {
+    private final AtomicInteger nextConnection = new AtomicInteger();
+    private volatile MqttOfflineBuffer offlineBuffer;
+    private List<MqttBlockingClient> connections = Collections.emptyList();
+    private MqttConfig.ClientConfig.PublishDistribution publishDistribution;
+
+    MqttBlockingClient(String serverURI, String clientId, MqttClientPersistence persistence) throws MqttException {
+        super(serverURI, clientId, persistence);
+    }
+
+    IMqttAsyncClient getAsyncClient() {
+        return aClient;
+    }
+
+    /**
+     * @param topic topic of a message to publish.
+     * @return the asynchronous client of the connection chosen to publish the message.
+     */
+    IMqttAsyncClient getAsyncClient(String topic) {
+        return connectionFor(topic).aClient;
+    }
+
+    void setOfflineBuffer(MqttOfflineBuffer offlineBuffer) {
+        this.offlineBuffer = offlineBuffer;
+    }
+
+    /**
+     * @param connections         the additional connections of the client.
+     * @param publishDistribution distribution of the published messages across the connections.
+     */
+    void setConnections(List<MqttBlockingClient> connections,
+                        MqttConfig.ClientConfig.PublishDistribution publishDistribution) {
+        this.connections = connections;
+        this.publishDistribution = publishDistribution;
+    }
+
+    List<MqttBlockingClient> getConnections() {
+        return connections;
+    }
+
+    private MqttBlockingClient connectionFor(String topic) {
+        if (connections.isEmpty()) {
+            return this;
+        }
+        int count = connections.size() + 1;
+        int index = publishDistribution == MqttConfig.ClientConfig.PublishDistribution.ROUND_ROBIN
+                ? Math.floorMod(nextConnection.getAndIncrement(), count)
+                : Math.floorMod(topic.hashCode(), count);
+        MqttBlockingClient connection = index == 0 ? this : connections.get(index - 1);
+        return connection.isConnected() ? connection : this;
+    }
+
+    @Override
+    public void publish(String topic, MqttMessage message) throws MqttException {
+        MqttBlockingClient connection = connectionFor(topic);
+        if (connection != this) {
+            connection.publish(topic, message);
+            return;
+        }
+        MqttOfflineBuffer buffer = offlineBuffer;
+        if (buffer == null || isConnected() && buffer.isEmpty()) {
+            try {
+                super.publish(topic, message);
+                return;
+            } catch (MqttException e) {
+                if (buffer == null || isConnected()) {
+                    throw e;
+                }
+            }
+        }
+        if (!buffer.offer(topic, message)) {
+            throw new MqttException(MqttException.REASON_CODE_CLIENT_NOT_CONNECTED);
+        }
+    }
+}
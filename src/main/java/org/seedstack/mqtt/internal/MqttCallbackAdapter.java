@@ -10,18 +10,45 @@
  */
 package org.seedstack.mqtt.internal;
 
+import com.google.common.base.Strings;
 import com.google.inject.Injector;
 import com.google.inject.Key;
-import java.util.Timer;
-import java.util.TimerTask;
-import java.util.concurrent.ThreadPoolExecutor;
+import com.google.inject.Provider;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import javax.inject.Inject;
 import org.eclipse.paho.client.mqttv3.IMqttClient;
 import org.eclipse.paho.client.mqttv3.IMqttDeliveryToken;
+import org.eclipse.paho.client.mqttv3.IMqttMessageListener;
 import org.eclipse.paho.client.mqttv3.MqttCallback;
 import org.eclipse.paho.client.mqttv3.MqttException;
 import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.eclipse.paho.client.mqttv3.MqttTopic;
+import org.seedstack.mqtt.AsyncMqttListener;
+import org.seedstack.mqtt.MqttBatchCallback;
+import org.seedstack.mqtt.MqttConfig;
+import org.seedstack.mqtt.MqttDispatchKeyExtractor;
+import org.seedstack.mqtt.MqttPayloadCodec;
+import org.seedstack.mqtt.MqttReceivedMessage;
 import org.seedstack.mqtt.MqttRejectedExecutionHandler;
+import org.seedstack.mqtt.MqttTypedListener;
 import org.seedstack.seed.SeedException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -31,14 +58,54 @@ import org.slf4j.LoggerFactory;
  */
 class MqttCallbackAdapter implements MqttCallback {
     private static final Logger LOGGER = LoggerFactory.getLogger(MqttCallbackAdapter.class);
+    private static final long SPOOL_REPLAY_INTERVAL_MS = 100;
+    private static final String SUBSCRIPTION_PREFIX = "subscription:";
     @Inject
     private static Injector injector;
     private final IMqttClient mqttClient;
     private final MqttClientDefinition clientDefinition;
-    private Key<MqttCallback> listenerKey;
+    private final Map<MqttListenerDefinition, Key<MqttCallback>> listenerKeys = new LinkedHashMap<>();
+    private final Map<MqttBatchListenerDefinition, Key<MqttBatchCallback>> batchListenerKeys = new LinkedHashMap<>();
+    private final List<Provider<MqttCallback>> listenerProviders = new ArrayList<>();
+    private final List<MqttBatchAccumulator<MqttReceivedMessage>> batchAccumulators = new ArrayList<>();
+    private final Map<String, MqttMessageHandler> replayHandlers = new ConcurrentHashMap<>();
+    private final int maxAsyncInFlight;
+    private final Semaphore asyncPermits;
+    private final AtomicLong abandonedMessages = new AtomicLong();
+    private final AtomicLong lostMessages = new AtomicLong();
+    private final AtomicLong reconnectionAttempts = new AtomicLong();
+    private final MqttReconnectionBackoff reconnectionBackoff;
+    private final CompletableFuture<Void> startup = new CompletableFuture<>();
+    private final Set<IMqttClient> subscribedClients = ConcurrentHashMap.newKeySet();
+    private final Object subscriptionLock = new Object();
+    private final Map<String, Subscription> subscriptions = new LinkedHashMap<>();
+    private final Map<IMqttClient, Set<String>> pendingUnsubscriptions = new ConcurrentHashMap<>();
+    private final MqttDynamicSubscriptionManager subscriptionManager = new MqttDynamicSubscriptionManager(this);
+    private List<Map.Entry<String, MqttMessageHandler>> listenerRoutes = Collections.emptyList();
+    private Map<String, MqttListenerMetrics> listenerRouteMetrics = Collections.emptyMap();
+    private volatile Map<String, MqttListenerMetrics> listenerMetrics = Collections.emptyMap();
     private Key<MqttCallback> publisherKey;
     private Key<MqttRejectedExecutionHandler> rejectHandlerKey;
-    private ThreadPoolExecutor pool;
+    private Key<MqttDispatchKeyExtractor> keyExtractorKey;
+    private Provider<MqttCallback> publisherProvider;
+    private Provider<MqttRejectedExecutionHandler> rejectHandlerProvider;
+    private volatile MqttTopicTrie<MqttMessageHandler> router = new MqttTopicTrie<>();
+    private ExecutorService pool;
+    private MqttRingBufferExecutor ringBuffer;
+    private ScheduledExecutorService scheduler;
+    private ScheduledExecutorService connectionScheduler;
+    private ExecutorService retryExecutor;
+    private ExecutorService batchExecutor;
+    private MqttFlowController flowController;
+    private MqttSpool spool;
+    private MqttAsyncPublisher asyncPublisher;
+    private MqttOfflineBuffer offlineBuffer;
+    private List<? extends IMqttClient> connections = Collections.emptyList();
+    private volatile boolean accepting = true;
+    private long drainDeadline;
+    private long executionCountBeforeDrain;
+    private volatile long lastReconnectionTimeMs = -1;
+    private volatile boolean connecting = true;
 
     /**
      * Default constructor.
@@ -49,24 +116,36 @@ class MqttCallbackAdapter implements MqttCallback {
     MqttCallbackAdapter(IMqttClient mqttClient, MqttClientDefinition clientDefinition) {
         this.mqttClient = mqttClient;
         this.clientDefinition = clientDefinition;
+        this.maxAsyncInFlight = Math.max(1, clientDefinition.getConfig().getMaxAsyncInFlight());
+        this.asyncPermits = new Semaphore(maxAsyncInFlight);
+        MqttConfig.ClientConfig clientConfig = clientDefinition.getConfig();
+        this.reconnectionBackoff = new MqttReconnectionBackoff(clientConfig.getReconnectionInterval() * 1000L,
+                clientConfig.getMaxReconnectionInterval() * 1000L);
     }
 
     @Override
     public void connectionLost(Throwable cause) {
         LOGGER.warn("MQTT connection lost for client: {}", mqttClient.getClientId(), cause);
+        if (flowController != null) {
+            flowController.reset();
+        }
         switch (clientDefinition.getConfig().getReconnectionMode()) {
             case NONE:
                 break;
             case CUSTOM:
-                if (publisherKey != null) {
-                    injector.getInstance(publisherKey).connectionLost(cause);
+                if (publisherProvider != null) {
+                    publisherProvider.get().connectionLost(cause);
                 }
-                if (listenerKey != null) {
-                    injector.getInstance(listenerKey).connectionLost(cause);
+                for (Provider<MqttCallback> listenerProvider : listenerProviders) {
+                    listenerProvider.get().connectionLost(cause);
                 }
                 break;
             case ALWAYS:
             default:
+                if (!accepting) {
+                    // the client is stopping
+                    break;
+                }
                 LOGGER.debug("reconnecting MQTT client {}", mqttClient.getClientId(), cause);
                 reconnect();
                 break;
@@ -74,83 +153,1065 @@ class MqttCallbackAdapter implements MqttCallback {
     }
 
     private void reconnect() {
-        final Timer timer = new Timer();
-        TimerTask task = new TimerTask() {
-            @Override
-            public void run() {
+        reconnect(mqttClient);
+    }
+
+    private void reconnect(IMqttClient client) {
+        scheduleReconnection(client, 1, System.nanoTime());
+    }
+
+    /**
+     * Schedules a reconnection attempt on the shared reconnection scheduler, after a random delay bounded by the
+     * backoff of the attempt.
+     */
+    private void scheduleReconnection(IMqttClient client, int attempt, long lostAt) {
+        long delayMs = reconnectionBackoff.delayMs(attempt);
+        LOGGER.debug("Reconnection attempt {} of MQTT client {} in {} ms", attempt, client.getClientId(), delayMs);
+        try {
+            connectionScheduler.schedule(() -> attemptReconnection(client, attempt, lostAt), delayMs,
+                    TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            LOGGER.debug("Reconnection of MQTT client {} cancelled", client.getClientId());
+        }
+    }
+
+    private void attemptReconnection(IMqttClient client, int attempt, long lostAt) {
+        if (!accepting || !connecting) {
+            // the client is stopping or has been given up at startup
+            return;
+        }
+        reconnectionAttempts.incrementAndGet();
+        try {
+            connect(client);
+            lastReconnectionTimeMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - lostAt);
+        } catch (MqttException e) {
+            LOGGER.debug("Can not connect MQTT client {}", client.getClientId(), e);
+            scheduleReconnection(client, attempt + 1, lostAt);
+        } catch (RuntimeException e) {
+            // an exception escaping the task would silently cancel the reconnection
+            LOGGER.error("Can not connect MQTT client {}", client.getClientId(), e);
+            scheduleReconnection(client, attempt + 1, lostAt);
+        }
+    }
+
+    /**
+     * Schedules a new subscription attempt of a connected client on the shared reconnection scheduler, after a random
+     * delay bounded by the backoff of the attempt.
+     */
+    private void scheduleResubscription(IMqttClient client, int attempt) {
+        long delayMs = reconnectionBackoff.delayMs(attempt);
+        LOGGER.debug("Subscription attempt {} of MQTT client {} in {} ms", attempt, client.getClientId(), delayMs);
+        try {
+            connectionScheduler.schedule(() -> attemptResubscription(client, attempt), delayMs,
+                    TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            LOGGER.debug("Subscription of MQTT client {} cancelled", client.getClientId());
+        }
+    }
+
+    private void attemptResubscription(IMqttClient client, int attempt) {
+        if (!accepting || !client.isConnected()) {
+            // the client is stopping, or the connection was lost and the reconnection subscribes again
+            return;
+        }
+        try {
+            subscribe(client, getShareGroup());
+            subscribedClients.add(client);
+            LOGGER.info("Client {} is now subscribed", client.getClientId());
+        } catch (MqttException | RuntimeException e) {
+            LOGGER.warn("Can not subscribe MQTT client {}", client.getClientId(), e);
+            scheduleResubscription(client, attempt + 1);
+        }
+    }
+
+    private void connect() throws MqttException {
+        connect(mqttClient);
+    }
+
+    /**
+     * Connects the client or one of its additional connections. Additional connections only subscribe when the
+     * subscriptions are shared.
+     * <p>
+     * A client reconnecting to a session kept by the broker (session present) does not subscribe again, since the
+     * broker still holds the subscriptions made by this client earlier. The first connection always subscribes, as
+     * the listeners may have changed since the session was created.
+     * <p>
+     * A failed subscription does not fail the connection: the connected client subscribes again later instead of
+     * reconnecting. Only a subscription rejected by the broker during the startup of the client is thrown, to be
+     * handled by the startup policy.
+     */
+    private void connect(IMqttClient client) throws MqttException {
+        LOGGER.debug("Trying to connect {}", client.getClientId());
+        long start = System.nanoTime();
+        boolean sessionPresent = MqttClientUtils.connect(client, clientDefinition);
+        long connected = System.nanoTime();
+        if (isSharingConnections() || client == mqttClient) {
+            try {
+                subscribeOnConnect(client, sessionPresent);
+            } catch (MqttException | RuntimeException e) {
+                if (e instanceof RuntimeException && client == mqttClient && !startup.isDone()) {
+                    throw (RuntimeException) e;
+                }
+                LOGGER.warn("Can not subscribe MQTT client {}", client.getClientId(), e);
+                scheduleResubscription(client, 1);
+            }
+        }
+        LOGGER.info("Client {} is now connected (connect: {} ms, subscribe: {} ms)", client.getClientId(),
+                TimeUnit.NANOSECONDS.toMillis(connected - start), TimeUnit.NANOSECONDS.toMillis(System.nanoTime()
+                        - connected));
+        if (client == mqttClient) {
+            startup.complete(null);
+            if (offlineBuffer != null) {
+                offlineBuffer.flush();
+            }
+        }
+    }
+
+    private void subscribeOnConnect(IMqttClient client, boolean sessionPresent) throws MqttException {
+        String shareGroup = getShareGroup();
+        if (sessionPresent && subscribedClients.contains(client)) {
+            LOGGER.debug("Session of MQTT client {} resumed, subscriptions kept by the broker", client.getClientId());
+        } else {
+            subscribe(client, shareGroup);
+            subscribedClients.add(client);
+        }
+        Set<String> unsubscriptions = pendingUnsubscriptions.remove(client);
+        if (unsubscriptions != null && sessionPresent) {
+            client.unsubscribe(MqttClientUtils.share(unsubscriptions.toArray(new String[0]), shareGroup));
+        }
+    }
+
+    private void subscribe(IMqttClient client, String shareGroup) throws MqttException {
+        int maxTopicFilters = clientDefinition.getConfig().getMaxTopicFiltersPerSubscribe();
+        for (MqttListenerDefinition listenerDefinition : clientDefinition.getListenerDefinitions()) {
+            String listenerShareGroup = listenerDefinition.getShareGroup();
+            MqttClientUtils.subscribe(client, MqttClientUtils.share(listenerDefinition.getTopicFilter(),
+                    listenerShareGroup != null ? listenerShareGroup : shareGroup), listenerDefinition.getQos(),
+                    maxTopicFilters);
+        }
+        for (MqttBatchListenerDefinition batchListenerDefinition : clientDefinition.getBatchListenerDefinitions()) {
+            String listenerShareGroup = batchListenerDefinition.getShareGroup();
+            MqttClientUtils.subscribe(client, MqttClientUtils.share(batchListenerDefinition.getTopicFilter(),
+                    listenerShareGroup != null ? listenerShareGroup : shareGroup), batchListenerDefinition.getQos(),
+                    maxTopicFilters);
+        }
+        List<String> topicFilters = new ArrayList<>();
+        List<Integer> qos = new ArrayList<>();
+        synchronized (subscriptionLock) {
+            for (Subscription subscription : subscriptions.values()) {
+                topicFilters.add(subscription.topicFilter);
+                qos.add(subscription.qos);
+            }
+        }
+        if (!topicFilters.isEmpty()) {
+            MqttClientUtils.subscribe(client, MqttClientUtils.share(topicFilters.toArray(new String[0]), shareGroup),
+                    qos.stream().mapToInt(Integer::intValue).toArray(), maxTopicFilters);
+        }
+    }
+
+    /**
+     * @return the clients holding the subscriptions: all connections when subscriptions are shared, the client only
+     * otherwise.
+     */
+    private List<IMqttClient> getSubscribingClients() {
+        List<IMqttClient> clients = new ArrayList<>();
+        clients.add(mqttClient);
+        if (isSharingConnections()) {
+            clients.addAll(connections);
+        }
+        return clients;
+    }
+
+    /**
+     * Adds or replaces a subscription made at runtime. The routes are replaced by a new trie, so routing never waits
+     * for a subscription change. The subscription is sent to the broker on each connected client holding
+     * subscriptions, and made by the others when they reconnect.
+     *
+     * @param topicFilter the topic filter.
+     * @param qos         the quality of service.
+     * @param listener    the listener of the received messages.
+     * @throws MqttException if the broker refuses the subscription.
+     */
+    void addSubscription(String topicFilter, int qos, IMqttMessageListener listener) throws MqttException {
+        MqttTopic.validate(topicFilter, true);
+        MqttMessage.validateQos(qos);
+        String name = SUBSCRIPTION_PREFIX + topicFilter;
+        MqttListenerDefinition listenerDefinition = new MqttListenerDefinition(MqttSubscriptionCallback.class, name,
+                new String[]{topicFilter}, new int[]{qos}, true);
+        MqttListenerMetrics metrics = new MqttListenerMetrics(name);
+        MqttCallback callback = new MqttSubscriptionCallback(listener);
+        Provider<MqttCallback> listenerProvider = () -> callback;
+        MqttMessageHandler handler = (topic, message) -> dispatch(listenerDefinition, listenerProvider, metrics, topic,
+                message);
+        synchronized (subscriptionLock) {
+            subscriptions.put(topicFilter, new Subscription(topicFilter, qos, handler, metrics));
+            replayHandlers.put(name, handler);
+            updateRoutes();
+        }
+        String shareGroup = getShareGroup();
+        for (IMqttClient client : getSubscribingClients()) {
+            Set<String> unsubscriptions = pendingUnsubscriptions.get(client);
+            if (unsubscriptions != null) {
+                unsubscriptions.remove(topicFilter);
+            }
+            if (client.isConnected()) {
                 try {
-                    connect();
-                    timer.cancel();
+                    MqttClientUtils.subscribe(client, MqttClientUtils.share(new String[]{topicFilter}, shareGroup),
+                            new int[]{qos});
+                    continue;
                 } catch (MqttException e) {
-                    LOGGER.debug("Can not connect MQTT client {}", mqttClient.getClientId(), e);
+                    if (client.isConnected()) {
+                        throw e;
+                    }
                 }
+            }
+            subscribedClients.remove(client);
+        }
+        LOGGER.debug("Subscribed MQTT client {} to {}", mqttClient.getClientId(), topicFilter);
+    }
 
+    /**
+     * Removes a subscription made at runtime. Clients which are disconnected unsubscribe when they reconnect, in case
+     * the broker kept their session.
+     *
+     * @param topicFilter the topic filter.
+     * @throws MqttException if the client can not unsubscribe.
+     */
+    void removeSubscription(String topicFilter) throws MqttException {
+        synchronized (subscriptionLock) {
+            if (subscriptions.remove(topicFilter) == null) {
+                return;
+            }
+            replayHandlers.remove(SUBSCRIPTION_PREFIX + topicFilter);
+            updateRoutes();
+        }
+        if (isListenerTopicFilter(topicFilter)) {
+            // the broker subscription is still needed by a listener
+            return;
+        }
+        String shareGroup = getShareGroup();
+        for (IMqttClient client : getSubscribingClients()) {
+            if (client.isConnected()) {
+                try {
+                    client.unsubscribe(MqttClientUtils.share(new String[]{topicFilter}, shareGroup));
+                    continue;
+                } catch (MqttException e) {
+                    if (client.isConnected()) {
+                        throw e;
+                    }
+                }
+            }
+            pendingUnsubscriptions.computeIfAbsent(client, key -> ConcurrentHashMap.newKeySet()).add(topicFilter);
+        }
+        LOGGER.debug("Unsubscribed MQTT client {} from {}", mqttClient.getClientId(), topicFilter);
+    }
+
+    private boolean isListenerTopicFilter(String topicFilter) {
+        for (MqttListenerDefinition listenerDefinition : clientDefinition.getListenerDefinitions()) {
+            if (Arrays.asList(listenerDefinition.getTopicFilter()).contains(topicFilter)) {
+                return true;
+            }
+        }
+        for (MqttBatchListenerDefinition batchListenerDefinition : clientDefinition.getBatchListenerDefinitions()) {
+            if (Arrays.asList(batchListenerDefinition.getTopicFilter()).contains(topicFilter)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the quality of service of each topic filter subscribed at runtime.
+     */
+    Map<String, Integer> getSubscriptions() {
+        Map<String, Integer> result = new LinkedHashMap<>();
+        synchronized (subscriptionLock) {
+            for (Subscription subscription : subscriptions.values()) {
+                result.put(subscription.topicFilter, subscription.qos);
+            }
+        }
+        return result;
+    }
+
+    MqttDynamicSubscriptionManager getSubscriptionManager() {
+        return subscriptionManager;
+    }
+
+    /**
+     * Publishes a new routing trie and new listener metrics, built from the routes of the listeners and the
+     * subscriptions made at runtime. Must be called holding the subscription lock.
+     */
+    private void updateRoutes() {
+        MqttTopicTrie<MqttMessageHandler> routes = new MqttTopicTrie<>();
+        for (Map.Entry<String, MqttMessageHandler> route : listenerRoutes) {
+            routes.add(route.getKey(), route.getValue());
+        }
+        Map<String, MqttListenerMetrics> metrics = new LinkedHashMap<>(listenerRouteMetrics);
+        for (Subscription subscription : subscriptions.values()) {
+            routes.add(MqttClientUtils.unshare(subscription.topicFilter), subscription.handler);
+            metrics.put(subscription.metrics.getListenerName(), subscription.metrics);
+        }
+        router = routes;
+        listenerMetrics = Collections.unmodifiableMap(metrics);
+    }
+
+    /**
+     * @return true if the subscriptions are shared by the connections of the client, so each connection subscribes.
+     */
+    private boolean isSharingConnections() {
+        return !connections.isEmpty() && clientDefinition.getConfig().isSharedSubscriptions();
+    }
+
+    /**
+     * @return the group of the shared subscriptions of the listeners which do not declare their own group: the share
+     * group of the client, else the client id when the connections share the subscriptions, else null.
+     */
+    private String getShareGroup() {
+        MqttConfig.ClientConfig clientConfig = clientDefinition.getConfig();
+        if (!Strings.isNullOrEmpty(clientConfig.getShareGroup())) {
+            return clientConfig.getShareGroup();
+        }
+        return isSharingConnections() ? clientConfig.getClientId() : null;
+    }
+
+    /**
+     * Prepares the dispatching of messages, then connects the client and its additional connections on the connection
+     * scheduler.
+     *
+     * @return a future completed when the client is connected, or completed exceptionally when its first connection
+     * attempt fails.
+     */
+    CompletableFuture<Void> start() {
+        resolveProviders();
+        if (keyExtractorKey != null) {
+            clientDefinition.getPoolDefinition().setKeyExtractor(injector.getInstance(keyExtractorKey));
+        }
+        MqttPoolDefinition poolDefinition = clientDefinition.getPoolDefinition();
+        if (pool != null && poolDefinition.isBackpressure()) {
+            flowController = new MqttFlowController(mqttClient, poolDefinition::getQueueDepth,
+                    poolDefinition.getHighWatermark(), poolDefinition.getLowWatermark(), scheduler);
+            mqttClient.setManualAcks(true);
+        }
+        if (spool != null) {
+            scheduler.scheduleWithFixedDelay(this::replaySpool, SPOOL_REPLAY_INTERVAL_MS, SPOOL_REPLAY_INTERVAL_MS,
+                    TimeUnit.MILLISECONDS);
+        }
+        connectionScheduler.execute(() -> {
+            try {
+                connect();
+            } catch (MqttException e) {
+                LOGGER.debug("Can not connect MQTT client {}", mqttClient.getClientId(), e);
+                startup.completeExceptionally(e);
+                connectionLost(e);
+            } catch (RuntimeException e) {
+                startup.completeExceptionally(e);
+            }
+        });
+        for (IMqttClient connection : connections) {
+            ConnectionCallback connectionCallback = new ConnectionCallback(connection);
+            connection.setCallback(connectionCallback);
+            connectionScheduler.execute(() -> {
+                try {
+                    connect(connection);
+                } catch (MqttException e) {
+                    LOGGER.debug("Can not connect MQTT client {}", connection.getClientId(), e);
+                    connectionCallback.connectionLost(e);
+                } catch (RuntimeException e) {
+                    LOGGER.error("Can not connect MQTT client {}", connection.getClientId(), e);
+                }
+            });
+        }
+        return startup;
+    }
+
+    /**
+     * Stops the connection attempts of a client which could not connect at startup.
+     */
+    void stopConnecting() {
+        connecting = false;
+    }
+
+    /**
+     * Resolves the providers of listeners and handlers once, to avoid a Guice lookup for each message, and compiles
+     * the topic filters of all listeners into the routing trie. The instance of a thread-safe listener is resolved once
+     * and reused for all messages.
+     */
+    void resolveProviders() {
+        List<Map.Entry<String, MqttMessageHandler>> routes = new ArrayList<>();
+        listenerProviders.clear();
+        replayHandlers.keySet().removeIf(name -> !name.startsWith(SUBSCRIPTION_PREFIX));
+        Map<String, MqttListenerMetrics> metrics = new LinkedHashMap<>();
+        for (Map.Entry<MqttListenerDefinition, Key<MqttCallback>> entry : listenerKeys.entrySet()) {
+            MqttListenerDefinition listenerDefinition = entry.getKey();
+            MqttPayloadCodec<Object> codec = listenerDefinition.isTyped() ? resolveCodec(listenerDefinition) : null;
+            MqttListenerMetrics listenerMetrics = metrics.computeIfAbsent(listenerDefinition.getClassName(),
+                    MqttListenerMetrics::new);
+            MqttRetryingCallback.FailureHandler failureHandler = retryFailureHandler(listenerDefinition,
+                    listenerMetrics);
+            Provider<MqttCallback> listenerProvider;
+            if (listenerDefinition.isThreadSafe()) {
+                MqttCallback listener = retrying(decoding(injector.getInstance(entry.getValue()), codec),
+                        failureHandler);
+                listenerProvider = () -> listener;
+            } else if (codec != null || failureHandler != null) {
+                Provider<MqttCallback> rawListenerProvider = injector.getProvider(entry.getValue());
+                listenerProvider = () -> retrying(decoding(rawListenerProvider.get(), codec), failureHandler);
+            } else {
+                listenerProvider = injector.getProvider(entry.getValue());
+            }
+            listenerProviders.add(listenerProvider);
+            MqttMessageHandler handler;
+            if (listenerDefinition.isAsync()) {
+                handler = (topic, message) -> dispatchAsync(listenerDefinition, listenerProvider, listenerMetrics,
+                        topic, message);
+            } else {
+                handler = (topic, message) -> dispatch(listenerDefinition, listenerProvider, listenerMetrics, topic,
+                        message);
+            }
+            for (String topicFilter : listenerDefinition.getTopicFilter()) {
+                routes.add(new AbstractMap.SimpleImmutableEntry<>(MqttClientUtils.unshare(topicFilter), handler));
+            }
+            replayHandlers.put(listenerDefinition.getClassName(), handler);
+        }
+        batchAccumulators.clear();
+        for (Map.Entry<MqttBatchListenerDefinition, Key<MqttBatchCallback>> entry : batchListenerKeys.entrySet()) {
+            MqttBatchListenerDefinition batchListenerDefinition = entry.getKey();
+            Provider<MqttBatchCallback> batchListenerProvider = injector.getProvider(entry.getValue());
+            MqttListenerMetrics batchListenerMetrics = metrics.computeIfAbsent(
+                    batchListenerDefinition.getClassName(), MqttListenerMetrics::new);
+            // expired batches may run the listener, which must not hold the scheduler shared by all the clients
+            MqttBatchAccumulator<MqttReceivedMessage> batchAccumulator = new MqttBatchAccumulator<>(
+                    batchListenerDefinition.getMaxBatchSize(),
+                    batchListenerDefinition.getMaxLatencyMs(),
+                    scheduler,
+                    batchExecutor != null ? batchExecutor : Runnable::run,
+                    messages -> batchReady(batchListenerDefinition, batchListenerProvider, batchListenerMetrics,
+                            messages)
+            );
+            batchAccumulators.add(batchAccumulator);
+            MqttMessageHandler batchHandler = (topic, message) -> {
+                if (accepting) {
+                    batchAccumulator.add(new MqttReceivedMessage(topic, message));
+                } else {
+                    abandon(batchListenerDefinition.getClassName(), topic, message);
+                }
+            };
+            for (String topicFilter : batchListenerDefinition.getTopicFilter()) {
+                routes.add(new AbstractMap.SimpleImmutableEntry<>(MqttClientUtils.unshare(topicFilter),
+                        batchHandler));
+            }
+            replayHandlers.put(batchListenerDefinition.getClassName(), batchHandler);
+        }
+        synchronized (subscriptionLock) {
+            listenerRoutes = routes;
+            listenerRouteMetrics = metrics;
+            updateRoutes();
+        }
+        if (publisherKey != null) {
+            publisherProvider = injector.getProvider(publisherKey);
+        }
+        if (rejectHandlerKey != null) {
+            rejectHandlerProvider = injector.getProvider(rejectHandlerKey);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private MqttPayloadCodec<Object> resolveCodec(MqttListenerDefinition listenerDefinition) {
+        if (listenerDefinition.getCodecClass() != null) {
+            return injector.getInstance(listenerDefinition.getCodecClass());
+        }
+        return (MqttPayloadCodec<Object>) MqttPayloadCodecs.forType(
+                MqttPayloadCodecs.resolvePayloadType(listenerDefinition.getListenerClass()));
+    }
+
+    @SuppressWarnings("unchecked")
+    private MqttCallback decoding(MqttCallback listener, MqttPayloadCodec<Object> codec) {
+        if (codec == null) {
+            return listener;
+        }
+        return new MqttTypedCallback<>((MqttTypedListener<Object>) listener, codec);
+    }
+
+    private MqttCallback retrying(MqttCallback listener, MqttRetryingCallback.FailureHandler failureHandler) {
+        if (failureHandler == null) {
+            return listener;
+        }
+        return new MqttRetryingCallback(listener, 1, failureHandler);
+    }
+
+    /**
+     * @return the handler of failed attempts of a listener with a retry policy, null if the listener has none.
+     */
+    private MqttRetryingCallback.FailureHandler retryFailureHandler(MqttListenerDefinition listenerDefinition,
+                                                                    MqttListenerMetrics metrics) {
+        MqttRetryPolicy retryPolicy = listenerDefinition.getRetryPolicy();
+        if (retryPolicy == null || listenerDefinition.isAsync()) {
+            return null;
+        }
+        return (callback, topic, message, failure) -> {
+            if (retryPolicy.canRetry(callback.getAttempt()) && scheduler != null && accepting) {
+                long delayMs = retryPolicy.delayMs(callback.getAttempt());
+                LOGGER.debug("Attempt {} of listener {} failed on topic {}, retrying in {} ms",
+                        callback.getAttempt(), listenerDefinition.getClassName(), topic, delayMs, failure);
+                scheduler.schedule(() -> retry(listenerDefinition, callback.nextAttempt(), metrics, topic, message),
+                        delayMs, TimeUnit.MILLISECONDS);
+            } else {
+                giveUp(listenerDefinition, retryPolicy, callback.getAttempt(), topic, message, failure);
             }
         };
-        timer.scheduleAtFixedRate(
-                task,
-                clientDefinition.getConfig().getReconnectionInterval() * 1000L,
-                clientDefinition.getConfig().getReconnectionInterval() * 1000L
-        );
     }
 
-    private void connect() throws MqttException {
-        LOGGER.debug("Trying to connect {}", mqttClient.getClientId());
-        MqttClientUtils.connect(mqttClient, clientDefinition);
-        LOGGER.info("Client {} is now connected", mqttClient.getClientId());
-        if (clientDefinition.getListenerDefinition() != null) {
-            MqttClientUtils.subscribe(mqttClient, clientDefinition.getListenerDefinition());
+    /**
+     * Hands a new attempt to the retry executor of the client, which submits it to the pool or runs it when there is
+     * no pool. The scheduler only waits for the delay, so neither a slow listener nor a full pool running the attempt
+     * on the submitting thread ever holds the thread shared by all the clients.
+     */
+    private void retry(MqttListenerDefinition listenerDefinition, MqttRetryingCallback callback,
+                       MqttListenerMetrics metrics, String topic, MqttMessage message) {
+        if (!accepting) {
+            abandon(listenerDefinition.getClassName(), topic, message);
+            return;
+        }
+        try {
+            if (retryExecutor != null) {
+                retryExecutor.execute(() -> attempt(listenerDefinition, callback, metrics, topic, message));
+            } else if (pool != null) {
+                attempt(listenerDefinition, callback, metrics, topic, message);
+            } else {
+                abandon(listenerDefinition.getClassName(), topic, message);
+            }
+        } catch (RejectedExecutionException e) {
+            abandon(listenerDefinition.getClassName(), topic, message);
         }
     }
 
-    void start() {
+    private void attempt(MqttListenerDefinition listenerDefinition, MqttRetryingCallback callback,
+                         MqttListenerMetrics metrics, String topic, MqttMessage message) {
+        if (pool == null) {
+            callback.messageArrived(topic, message);
+            return;
+        }
         try {
-            connect();
-        } catch (MqttException e) {
-            LOGGER.debug("Can not connect MQTT client {}", mqttClient.getClientId(), e);
-            connectionLost(e);
+            pool.submit(new MqttListenerTask(callback, topic, message, metrics));
+        } catch (RejectedExecutionException e) {
+            abandon(listenerDefinition.getClassName(), topic, message);
+        }
+    }
+
+    /**
+     * Publishes a message whose last attempt failed to the dead-letter topic of the listener, or hands it to the
+     * reject handler. The failure is logged if the message can be neither published nor rejected.
+     */
+    private void giveUp(MqttListenerDefinition listenerDefinition, MqttRetryPolicy retryPolicy, int attempts,
+                        String topic, MqttMessage message, Exception failure) {
+        SeedException seedException = SeedException.wrap(failure, MqttErrorCode.LISTENER_ERROR)
+                .put("listenerClass", listenerDefinition.getClassName())
+                .put("attempts", attempts);
+        String deadLetterTopic = retryPolicy.getDeadLetterTopic();
+        if (deadLetterTopic != null && asyncPublisher != null) {
+            LOGGER.warn("Publishing MQTT message received on topic {} to dead-letter topic {} after {} attempts",
+                    topic, deadLetterTopic, attempts, seedException);
+            if (pool == null && retryExecutor != null) {
+                // without a pool, the last attempt may have run on the delivery thread, which must not wait for the
+                // in-flight window of the publisher
+                try {
+                    retryExecutor.execute(() -> publishDeadLetter(deadLetterTopic, topic, message, seedException));
+                } catch (RejectedExecutionException e) {
+                    LOGGER.error(seedException.getMessage(), seedException);
+                }
+            } else {
+                publishDeadLetter(deadLetterTopic, topic, message, seedException);
+            }
+        } else if (rejectHandlerProvider != null) {
+            LOGGER.warn("Rejecting MQTT message received on topic {} after {} attempts", topic, attempts,
+                    seedException);
+            rejectHandlerProvider.get().reject(topic, message);
+        } else {
+            LOGGER.error(seedException.getMessage(), seedException);
         }
     }
 
+    private void publishDeadLetter(String deadLetterTopic, String topic, MqttMessage message,
+                                   SeedException seedException) {
+        MqttMessage deadLetter = new MqttMessage(message.getPayload());
+        deadLetter.setQos(message.getQos());
+        asyncPublisher.publishAsync(deadLetterTopic, deadLetter).whenComplete((result, failure) -> {
+            if (failure != null) {
+                LOGGER.error("Can not publish MQTT message received on topic {} to dead-letter topic {}", topic,
+                        deadLetterTopic, failure);
+                LOGGER.error(seedException.getMessage(), seedException);
+            }
+        });
+    }
+
     @Override
     public void messageArrived(String topic, MqttMessage message) throws Exception {
+        route(topic, message);
+        if (flowController != null) {
+            flowController.messageDispatched(message);
+        }
+    }
+
+    private void route(String topic, MqttMessage message) throws Exception {
+        List<MqttMessageHandler> handlers = router.match(topic);
+        if (handlers.isEmpty()) {
+            LOGGER.debug("No MQTT listener found for topic {} on client {}", topic, mqttClient.getClientId());
+        }
+        for (MqttMessageHandler handler : handlers) {
+            handler.handle(topic, message);
+        }
+    }
+
+    private void dispatch(MqttListenerDefinition listenerDefinition, Provider<MqttCallback> listenerProvider,
+                          MqttListenerMetrics metrics, String topic, MqttMessage message) throws Exception {
         if (pool != null) {
+            if (!accepting) {
+                abandon(listenerDefinition.getClassName(), topic, message);
+                return;
+            }
             try {
-                pool.submit(new MqttListenerTask(injector.getInstance(listenerKey), topic, message));
+                if (ringBuffer != null) {
+                    ringBuffer.dispatch(listenerProvider.get(), topic, message, metrics);
+                } else {
+                    pool.submit(new MqttListenerTask(listenerProvider.get(), topic, message, metrics));
+                }
             } catch (Exception e) {
-                if (this.rejectHandlerKey == null) {
-                    MqttListenerDefinition listenerDefinition = clientDefinition.getListenerDefinition();
+                if (spool != null && spool.append(listenerDefinition.getClassName(), topic, message)) {
+                    return;
+                }
+                if (this.rejectHandlerProvider == null) {
                     throw SeedException.wrap(e, MqttErrorCode.LISTENER_ERROR)
-                            .put("listenerClass", listenerDefinition != null ? listenerDefinition.getClassName() : "<unknown>");
+                            .put("listenerClass", listenerDefinition.getClassName());
                 }
-                injector.getInstance(this.rejectHandlerKey).reject(topic, message);
+                rejectHandlerProvider.get().reject(topic, message);
             }
         } else {
-            injector.getInstance(listenerKey).messageArrived(topic, message);
+            long start = System.nanoTime();
+            try {
+                listenerProvider.get().messageArrived(topic, message);
+            } finally {
+                metrics.recordQueueWait(0);
+                metrics.recordExecution(System.nanoTime() - start);
+            }
+        }
+    }
+
+    /**
+     * Starts the processing of a message by an {@link AsyncMqttListener} on the calling thread. The permit is released
+     * when the returned stage completes. When the maximum number of messages in flight is reached, the message is
+     * spooled or handed to the reject handler instead of waiting for a permit, which would block the receiving thread
+     * and the keepalive of the connection.
+     */
+    private void dispatchAsync(MqttListenerDefinition listenerDefinition, Provider<MqttCallback> listenerProvider,
+                               MqttListenerMetrics metrics, String topic, MqttMessage message) {
+        if (!accepting) {
+            abandon(listenerDefinition.getClassName(), topic, message);
+            return;
+        }
+        if (!asyncPermits.tryAcquire()) {
+            if (spool != null && spool.append(listenerDefinition.getClassName(), topic, message)) {
+                return;
+            }
+            if (rejectHandlerProvider != null) {
+                rejectHandlerProvider.get().reject(topic, message);
+            } else {
+                reportAsyncFailure(listenerDefinition, new RejectedExecutionException(
+                        "Maximum number of asynchronous messages in flight reached: " + maxAsyncInFlight));
+            }
+            return;
+        }
+        long start = System.nanoTime();
+        metrics.recordQueueWait(0);
+        CompletionStage<Void> stage;
+        try {
+            stage = ((AsyncMqttListener) listenerProvider.get()).onMessage(topic, message);
+        } catch (Exception e) {
+            asyncPermits.release();
+            metrics.recordExecution(System.nanoTime() - start);
+            reportAsyncFailure(listenerDefinition, e);
+            return;
+        }
+        if (stage == null) {
+            asyncPermits.release();
+            metrics.recordExecution(System.nanoTime() - start);
+            return;
+        }
+        stage.whenComplete((result, failure) -> {
+            asyncPermits.release();
+            metrics.recordExecution(System.nanoTime() - start);
+            if (failure != null) {
+                reportAsyncFailure(listenerDefinition, failure instanceof CompletionException
+                        && failure.getCause() != null ? failure.getCause() : failure);
+            }
+        });
+    }
+
+    private void reportAsyncFailure(MqttListenerDefinition listenerDefinition, Throwable failure) {
+        SeedException seedException = SeedException.wrap(failure, MqttErrorCode.LISTENER_ERROR)
+                .put("listenerClass", listenerDefinition.getClassName());
+        LOGGER.error(seedException.getMessage(), seedException);
+    }
+
+    Map<String, MqttListenerMetrics> getListenerMetrics() {
+        return listenerMetrics;
+    }
+
+    int getAsyncInFlight() {
+        return maxAsyncInFlight - asyncPermits.availablePermits();
+    }
+
+    private void batchReady(MqttBatchListenerDefinition batchListenerDefinition,
+                            Provider<MqttBatchCallback> batchListenerProvider, MqttListenerMetrics metrics,
+                            List<MqttReceivedMessage> messages) {
+        MqttBatchListenerTask task = new MqttBatchListenerTask(batchListenerProvider.get(), messages, metrics);
+        if (pool != null) {
+            try {
+                pool.submit(task);
+            } catch (Exception e) {
+                List<MqttReceivedMessage> rejected = spoolBatch(batchListenerDefinition.getClassName(), messages);
+                if (rejected.isEmpty()) {
+                    return;
+                }
+                if (this.rejectHandlerProvider == null) {
+                    throw SeedException.wrap(e, MqttErrorCode.LISTENER_ERROR)
+                            .put("listenerClass", batchListenerDefinition.getClassName());
+                }
+                MqttRejectedExecutionHandler rejectHandler = rejectHandlerProvider.get();
+                for (MqttReceivedMessage receivedMessage : rejected) {
+                    rejectHandler.reject(receivedMessage.getTopic(), receivedMessage.getMessage());
+                }
+            }
+        } else {
+            task.run();
+        }
+    }
+
+    private List<MqttReceivedMessage> spoolBatch(String listenerName, List<MqttReceivedMessage> messages) {
+        if (spool == null) {
+            return messages;
+        }
+        List<MqttReceivedMessage> rejected = new ArrayList<>();
+        for (MqttReceivedMessage receivedMessage : messages) {
+            if (!spool.append(listenerName, receivedMessage.getTopic(), receivedMessage.getMessage())) {
+                rejected.add(receivedMessage);
+            }
+        }
+        return rejected;
+    }
+
+    /**
+     * Replays spooled messages into the pool while its queue depth is at or below the low watermark.
+     */
+    void replaySpool() {
+        MqttPoolDefinition poolDefinition = clientDefinition.getPoolDefinition();
+        try {
+            // asynchronous listeners without permit would spool the replayed messages again
+            while (accepting && poolDefinition.getQueueDepth() <= poolDefinition.getLowWatermark()
+                    && asyncPermits.availablePermits() > 0) {
+                MqttSpool.Record record = spool.poll();
+                if (record == null) {
+                    break;
+                }
+                MqttMessageHandler handler = replayHandlers.get(record.getListenerName());
+                if (handler != null) {
+                    handler.handle(record.getTopic(), record.getMessage());
+                } else {
+                    LOGGER.warn("Dropping spooled MQTT message on topic {}: listener {} not found on client {}",
+                            record.getTopic(), record.getListenerName(), mqttClient.getClientId());
+                }
+            }
+        } catch (Exception e) {
+            LOGGER.error("Can not replay spooled MQTT messages of client {}", mqttClient.getClientId(), e);
+        }
+    }
+
+    /**
+     * Starts the shutdown of the client: unsubscribes from its topic filters, stops dispatching received messages to
+     * the pool, flushes pending batches and shuts the pool down so it only completes the messages it already holds.
+     * Messages still received until the client is disconnected are spooled or handed to the reject handler.
+     */
+    void startDrain() {
+        drainDeadline = System.nanoTime()
+                + TimeUnit.SECONDS.toNanos(clientDefinition.getPoolDefinition().getDrainTimeout());
+        executionCountBeforeDrain = getExecutionCount();
+        accepting = false;
+        String shareGroup = getShareGroup();
+        try {
+            if (mqttClient.isConnected()) {
+                unsubscribeAll(mqttClient, shareGroup);
+            }
+        } catch (MqttException e) {
+            LOGGER.warn("Can not unsubscribe MQTT client {}", mqttClient.getClientId(), e);
+        }
+        if (isSharingConnections()) {
+            for (IMqttClient connection : connections) {
+                try {
+                    if (connection.isConnected()) {
+                        unsubscribeAll(connection, shareGroup);
+                    }
+                } catch (MqttException e) {
+                    LOGGER.warn("Can not unsubscribe MQTT client {}", connection.getClientId(), e);
+                }
+            }
+        }
+        flushBatches();
+        if (pool != null) {
+            pool.shutdown();
+        }
+    }
+
+    private void unsubscribeAll(IMqttClient client, String shareGroup) throws MqttException {
+        MqttClientUtils.unsubscribe(client, clientDefinition, shareGroup);
+        Set<String> topicFilters;
+        synchronized (subscriptionLock) {
+            topicFilters = new LinkedHashSet<>(subscriptions.keySet());
+        }
+        if (!topicFilters.isEmpty()) {
+            client.unsubscribe(MqttClientUtils.share(topicFilters.toArray(new String[0]), shareGroup));
+        }
+    }
+
+    /**
+     * Waits until the drain timeout for the pool and the asynchronous listeners to complete their messages. Messages
+     * still queued after the timeout are spooled or handed to the reject handler and running tasks are interrupted.
+     */
+    void awaitDrain() {
+        long start = System.nanoTime();
+        int timedOut = 0;
+        try {
+            if (pool != null && !pool.awaitTermination(drainDeadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+                timedOut += clientDefinition.getPoolDefinition().getActiveCount();
+                abandonQueued();
+            }
+            if (asyncPermits.tryAcquire(maxAsyncInFlight, Math.max(0, drainDeadline - System.nanoTime()),
+                    TimeUnit.NANOSECONDS)) {
+                asyncPermits.release(maxAsyncInFlight);
+            } else {
+                timedOut += getAsyncInFlight();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            if (pool != null && !pool.isTerminated()) {
+                timedOut += clientDefinition.getPoolDefinition().getActiveCount();
+                abandonQueued();
+            }
+            timedOut += getAsyncInFlight();
+        }
+        LOGGER.info("MQTT client {} drained in {} ms: {} tasks completed, {} messages abandoned, {} tasks timed out",
+                mqttClient.getClientId(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start),
+                getExecutionCount() - executionCountBeforeDrain, abandonedMessages.get(), timedOut);
+        if (lostMessages.get() > 0) {
+            LOGGER.warn("{} abandoned messages of MQTT client {} could be neither spooled nor rejected and are lost",
+                    lostMessages.get(), mqttClient.getClientId());
+        }
+    }
+
+    private void abandonQueued() {
+        for (Runnable task : pool.shutdownNow()) {
+            Runnable runnable = MqttPoolTask.unwrap(task);
+            if (runnable instanceof MqttListenerTask) {
+                MqttListenerTask listenerTask = (MqttListenerTask) runnable;
+                abandon(listenerTask.getListenerName(), listenerTask.getTopic(), listenerTask.getMessage());
+            } else if (runnable instanceof MqttBatchListenerTask) {
+                MqttBatchListenerTask batchListenerTask = (MqttBatchListenerTask) runnable;
+                for (MqttReceivedMessage receivedMessage : batchListenerTask.getMessages()) {
+                    abandon(batchListenerTask.getListenerName(), receivedMessage.getTopic(),
+                            receivedMessage.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Hands over a message which will not be processed because the client is stopping, to the spool if enabled or
+     * to the reject handler otherwise.
+     */
+    private void abandon(String listenerName, String topic, MqttMessage message) {
+        abandonedMessages.incrementAndGet();
+        if (spool != null && spool.append(listenerName, topic, message)) {
+            return;
+        }
+        if (rejectHandlerProvider != null) {
+            try {
+                rejectHandlerProvider.get().reject(topic, message);
+                return;
+            } catch (Exception e) {
+                LOGGER.error("Can not reject MQTT message on topic {} of client {}", topic, mqttClient.getClientId(),
+                        e);
+            }
         }
+        lostMessages.incrementAndGet();
+    }
 
+    private long getExecutionCount() {
+        long executionCount = 0;
+        for (MqttListenerMetrics metrics : listenerMetrics.values()) {
+            executionCount += metrics.getExecutionCount();
+        }
+        return executionCount;
+    }
+
+    MqttFlowController getFlowController() {
+        return flowController;
+    }
+
+    void flushBatches() {
+        for (MqttBatchAccumulator<MqttReceivedMessage> batchAccumulator : batchAccumulators) {
+            batchAccumulator.flush();
+        }
     }
 
     @Override
     public void deliveryComplete(IMqttDeliveryToken token) {
-        if (publisherKey != null) {
-            injector.getInstance(publisherKey).deliveryComplete(token);
+        if (asyncPublisher != null) {
+            asyncPublisher.deliveryComplete(token);
+        }
+        if (publisherProvider != null) {
+            publisherProvider.get().deliveryComplete(token);
         }
     }
 
-    void setListenerKey(Key<MqttCallback> key) {
-        this.listenerKey = key;
+    void addListenerKey(MqttListenerDefinition listenerDefinition, Key<MqttCallback> key) {
+        this.listenerKeys.put(listenerDefinition, key);
     }
 
     void setPublisherKey(Key<MqttCallback> publisherKey) {
         this.publisherKey = publisherKey;
     }
 
-    void setPool(ThreadPoolExecutor pool) {
+    void addBatchListenerKey(MqttBatchListenerDefinition batchListenerDefinition, Key<MqttBatchCallback> key) {
+        this.batchListenerKeys.put(batchListenerDefinition, key);
+    }
+
+    void setScheduler(ScheduledExecutorService scheduler) {
+        this.scheduler = scheduler;
+    }
+
+    void setConnectionScheduler(ScheduledExecutorService connectionScheduler) {
+        this.connectionScheduler = connectionScheduler;
+    }
+
+    void setRetryExecutor(ExecutorService retryExecutor) {
+        this.retryExecutor = retryExecutor;
+    }
+
+    ExecutorService getRetryExecutor() {
+        return retryExecutor;
+    }
+
+    void setBatchExecutor(ExecutorService batchExecutor) {
+        this.batchExecutor = batchExecutor;
+    }
+
+    ExecutorService getBatchExecutor() {
+        return batchExecutor;
+    }
+
+    /**
+     * @return the number of reconnection attempts of the client and its connections.
+     */
+    long getReconnectionAttempts() {
+        return reconnectionAttempts.get();
+    }
+
+    /**
+     * @return the time in milliseconds between the last connection loss and the reconnection, -1 if the client never
+     * reconnected.
+     */
+    long getLastReconnectionTimeMs() {
+        return lastReconnectionTimeMs;
+    }
+
+    void setPool(ExecutorService pool) {
         this.pool = pool;
+        this.ringBuffer = pool instanceof MqttRingBufferExecutor ? (MqttRingBufferExecutor) pool : null;
+    }
+
+    void setAsyncPublisher(MqttAsyncPublisher asyncPublisher) {
+        this.asyncPublisher = asyncPublisher;
+    }
+
+    MqttAsyncPublisher getAsyncPublisher() {
+        return asyncPublisher;
+    }
+
+    void setSpool(MqttSpool spool) {
+        this.spool = spool;
+    }
+
+    MqttSpool getSpool() {
+        return spool;
+    }
+
+    void setConnections(List<? extends IMqttClient> connections) {
+        this.connections = connections;
+    }
+
+    List<? extends IMqttClient> getConnections() {
+        return connections;
+    }
+
+    void setOfflineBuffer(MqttOfflineBuffer offlineBuffer) {
+        this.offlineBuffer = offlineBuffer;
+    }
+
+    MqttOfflineBuffer getOfflineBuffer() {
+        return offlineBuffer;
     }
 
     void setRejectHandlerKey(Key<MqttRejectedExecutionHandler> rejectHandlerKey) {
         this.rejectHandlerKey = rejectHandlerKey;
     }
+
+    void setKeyExtractorKey(Key<MqttDispatchKeyExtractor> keyExtractorKey) {
+        this.keyExtractorKey = keyExtractorKey;
+    }
+
+    /**
+     * Callback of an additional connection of the client: incoming messages are routed to the listeners of the client
+     * and the connection is reconnected when lost, unless reconnection is disabled.
+     */
+    private class ConnectionCallback implements MqttCallback {
+        private final IMqttClient connection;
+
+        private ConnectionCallback(IMqttClient connection) {
+            this.connection = connection;
+        }
+
+        @Override
+        public void connectionLost(Throwable cause) {
+            LOGGER.warn("MQTT connection lost for client: {}", connection.getClientId(), cause);
+            if (clientDefinition.getConfig().getReconnectionMode() != MqttConfig.ClientConfig.ReconnectionMode.NONE
+                    && accepting) {
+                reconnect(connection);
+            }
+        }
+
+        @Override
+        public void messageArrived(String topic, MqttMessage message) throws Exception {
+            route(topic, message);
+        }
+
+        @Override
+        public void deliveryComplete(IMqttDeliveryToken token) {
+            MqttCallbackAdapter.this.deliveryComplete(token);
+        }
+    }
+
+    /**
+     * Subscription made at runtime through the {@link MqttDynamicSubscriptionManager}.
+     */
+    private static class Subscription {
+        private final String topicFilter;
+        private final int qos;
+        private final MqttMessageHandler handler;
+        private final MqttListenerMetrics metrics;
+
+        private Subscription(String topicFilter, int qos, MqttMessageHandler handler, MqttListenerMetrics metrics) {
+            this.topicFilter = topicFilter;
+            this.qos = qos;
+            this.handler = handler;
+            this.metrics = metrics;
+        }
+    }
 }
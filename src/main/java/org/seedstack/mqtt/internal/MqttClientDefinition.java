@@ -10,29 +10,45 @@
  */
 package org.seedstack.mqtt.internal;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import org.seedstack.mqtt.MqttConfig;
 
 class MqttClientDefinition {
     private final MqttConfig.ClientConfig clientConfig;
     private final MqttPoolDefinition poolDefinition;
-    private MqttListenerDefinition listenerDefinition;
+    private final List<MqttListenerDefinition> listenerDefinitions = new ArrayList<>();
+    private final List<MqttBatchListenerDefinition> batchListenerDefinitions = new ArrayList<>();
     private MqttPublisherDefinition publisherDefinition;
 
     MqttClientDefinition(MqttConfig.ClientConfig clientConfig) {
+        this(clientConfig.getClientId(), clientConfig);
+    }
+
+    MqttClientDefinition(String clientName, MqttConfig.ClientConfig clientConfig) {
         this.clientConfig = clientConfig;
-        this.poolDefinition = new MqttPoolDefinition(clientConfig.getPoolConfig());
+        this.poolDefinition = new MqttPoolDefinition(clientName, clientConfig.getPoolConfig());
     }
 
     MqttConfig.ClientConfig getConfig() {
         return clientConfig;
     }
 
-    MqttListenerDefinition getListenerDefinition() {
-        return listenerDefinition;
+    List<MqttListenerDefinition> getListenerDefinitions() {
+        return Collections.unmodifiableList(listenerDefinitions);
+    }
+
+    void addListenerDefinition(MqttListenerDefinition listenerDefinition) {
+        this.listenerDefinitions.add(listenerDefinition);
+    }
+
+    List<MqttBatchListenerDefinition> getBatchListenerDefinitions() {
+        return Collections.unmodifiableList(batchListenerDefinitions);
     }
 
-    void setListenerDefinition(MqttListenerDefinition listenerDefinition) {
-        this.listenerDefinition = listenerDefinition;
+    void addBatchListenerDefinition(MqttBatchListenerDefinition batchListenerDefinition) {
+        this.batchListenerDefinitions.add(batchListenerDefinition);
     }
 
     MqttPublisherDefinition getPublisherDefinition() {
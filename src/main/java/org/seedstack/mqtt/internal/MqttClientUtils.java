@@ -16,10 +16,17 @@ import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
 import org.eclipse.paho.client.mqttv3.MqttException;
 import org.seedstack.seed.SeedException;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
 /**
  * Methods to connect a {@link MqttClient} and to subscribe to different topics.
  */
 final class MqttClientUtils {
+    private static final String SHARE_PREFIX = "$share/";
+
     private MqttClientUtils() {
         // no instantiation allowed
     }
@@ -29,15 +36,12 @@ final class MqttClientUtils {
      *
      * @param mqttClient       {@link MqttClient} to connect to the broker.
      * @param clientDefinition {@link MqttClientDefinition} to use to connect to the broker.
+     * @return true if the broker resumed a session kept from a previous connection of the client.
      * @throws MqttException if client can not connect to the broker.
      */
-    static void connect(IMqttClient mqttClient, MqttClientDefinition clientDefinition) throws MqttException {
+    static boolean connect(IMqttClient mqttClient, MqttClientDefinition clientDefinition) throws MqttException {
         MqttConnectOptions options = clientDefinition.getConfig().getConnectOptions();
-        if (options != null) {
-            mqttClient.connect(options);
-        } else {
-            mqttClient.connect();
-        }
+        return mqttClient.connectWithResult(options != null ? options : new MqttConnectOptions()).getSessionPresent();
     }
 
     /**
@@ -49,9 +53,43 @@ final class MqttClientUtils {
      * @throws MqttException if client can not connect to the broker.
      */
     static void subscribe(IMqttClient mqttClient, MqttListenerDefinition listenerDefinition) throws MqttException {
-        String[] topicFiler = listenerDefinition.getTopicFilter();
-        int[] qos = listenerDefinition.getQos();
-        mqttClient.subscribe(topicFiler, qos);
+        subscribe(mqttClient, listenerDefinition.getTopicFilter(), listenerDefinition.getQos());
+    }
+
+    /**
+     * Subscribe a {@link MqttClient} to topics.
+     *
+     * @param mqttClient {@link MqttClient} used for subscription.
+     * @param topicFiler topic filters to subscribe to.
+     * @param qos        qos of each topic filter.
+     * @throws MqttException if client can not connect to the broker.
+     */
+    static void subscribe(IMqttClient mqttClient, String[] topicFiler, int[] qos) throws MqttException {
+        subscribe(mqttClient, topicFiler, qos, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Subscribe a {@link MqttClient} to topics, sending at most a given number of topic filters per SUBSCRIBE packet.
+     *
+     * @param mqttClient      {@link MqttClient} used for subscription.
+     * @param topicFiler      topic filters to subscribe to.
+     * @param qos             qos of each topic filter.
+     * @param maxTopicFilters maximum number of topic filters per SUBSCRIBE packet.
+     * @throws MqttException if client can not connect to the broker.
+     */
+    static void subscribe(IMqttClient mqttClient, String[] topicFiler, int[] qos, int maxTopicFilters)
+            throws MqttException {
+        int chunkSize = Math.max(1, maxTopicFilters);
+        if (topicFiler.length <= chunkSize) {
+            mqttClient.subscribe(topicFiler, qos);
+        } else {
+            for (int from = 0; from < topicFiler.length; from += chunkSize) {
+                int to = Math.min(from + chunkSize, topicFiler.length);
+                int[] grantedQos = Arrays.copyOfRange(qos, from, to);
+                mqttClient.subscribe(Arrays.copyOfRange(topicFiler, from, to), grantedQos);
+                System.arraycopy(grantedQos, 0, qos, from, grantedQos.length);
+            }
+        }
         // Fix PAHO bug: Test all qos values to throw an exception if one subscribe is not correct.
         // the qos tab is updated if a subscribe is failed but test is only on the first item of the list.
         for (int j = 0; j < qos.length; j++) {
@@ -61,4 +99,92 @@ final class MqttClientUtils {
             }
         }
     }
+
+    /**
+     * Turns topic filters into shared subscriptions of a group.
+     *
+     * @param topicFilters topic filters.
+     * @param shareGroup   name of the group sharing the subscriptions, or null.
+     * @return the topic filters prefixed by {@code $share/<shareGroup>/}, or unchanged if the group is null. Topic
+     * filters which already are shared subscriptions are left unchanged.
+     */
+    static String[] share(String[] topicFilters, String shareGroup) {
+        if (shareGroup == null) {
+            return topicFilters;
+        }
+        String[] sharedTopicFilters = new String[topicFilters.length];
+        for (int i = 0; i < topicFilters.length; i++) {
+            sharedTopicFilters[i] = topicFilters[i].startsWith(SHARE_PREFIX) ? topicFilters[i]
+                    : SHARE_PREFIX + shareGroup + "/" + topicFilters[i];
+        }
+        return sharedTopicFilters;
+    }
+
+    /**
+     * Removes the {@code $share/<group>/} prefix of a shared subscription, giving the topic filter matched by the
+     * topics of the messages the broker delivers for it.
+     *
+     * @param topicFilter a topic filter, possibly a shared subscription.
+     * @return the topic filter without share prefix.
+     */
+    static String unshare(String topicFilter) {
+        if (!topicFilter.startsWith(SHARE_PREFIX)) {
+            return topicFilter;
+        }
+        int end = topicFilter.indexOf('/', SHARE_PREFIX.length());
+        return end < 0 ? topicFilter : topicFilter.substring(end + 1);
+    }
+
+    /**
+     * Checks that a share group is a valid topic level without wildcard.
+     *
+     * @param shareGroup the share group.
+     * @param name       the name of the listener or client declaring the group.
+     */
+    static void validateShareGroup(String shareGroup, String name) {
+        if (shareGroup.isEmpty() || shareGroup.contains("/") || shareGroup.contains("+")
+                || shareGroup.contains("#")) {
+            throw SeedException.createNew(MqttErrorCode.INVALID_SHARE_GROUP)
+                    .put("group", shareGroup)
+                    .put("name", name);
+        }
+    }
+
+    /**
+     * Unsubscribe a {@link MqttClient} from the topics of all its listeners.
+     *
+     * @param mqttClient       {@link MqttClient} to unsubscribe.
+     * @param clientDefinition {@link MqttClientDefinition} which contains all listener definitions.
+     * @throws MqttException if the client can not unsubscribe.
+     */
+    static void unsubscribe(IMqttClient mqttClient, MqttClientDefinition clientDefinition) throws MqttException {
+        unsubscribe(mqttClient, clientDefinition, null);
+    }
+
+    /**
+     * Unsubscribe a {@link MqttClient} from the topics of all its listeners.
+     *
+     * @param mqttClient       {@link MqttClient} to unsubscribe.
+     * @param clientDefinition {@link MqttClientDefinition} which contains all listener definitions.
+     * @param shareGroup       name of the group sharing the subscriptions of the listeners without their own group,
+     *                         or null.
+     * @throws MqttException if the client can not unsubscribe.
+     */
+    static void unsubscribe(IMqttClient mqttClient, MqttClientDefinition clientDefinition, String shareGroup)
+            throws MqttException {
+        List<String> topicFilters = new ArrayList<>();
+        for (MqttListenerDefinition listenerDefinition : clientDefinition.getListenerDefinitions()) {
+            String listenerShareGroup = listenerDefinition.getShareGroup();
+            Collections.addAll(topicFilters, share(listenerDefinition.getTopicFilter(),
+                    listenerShareGroup != null ? listenerShareGroup : shareGroup));
+        }
+        for (MqttBatchListenerDefinition batchListenerDefinition : clientDefinition.getBatchListenerDefinitions()) {
+            String listenerShareGroup = batchListenerDefinition.getShareGroup();
+            Collections.addAll(topicFilters, share(batchListenerDefinition.getTopicFilter(),
+                    listenerShareGroup != null ? listenerShareGroup : shareGroup));
+        }
+        if (!topicFilters.isEmpty()) {
+            mqttClient.unsubscribe(topicFilters.toArray(new String[0]));
+        }
+    }
 }
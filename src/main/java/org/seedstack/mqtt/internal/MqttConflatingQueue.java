@@ -0,0 +1,215 @@
+/*
+ * Copyright © 2013-2020, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.mqtt.internal;
+
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * Bounded blocking queue keeping at most one task per key. A task offered while another task with the same key is
+ * still waiting replaces it in place: the key keeps its position in the queue but only the latest task is executed.
+ * The replaced task is cancelled if it is a {@link Future}. The capacity bounds the number of distinct keys waiting.
+ */
+class MqttConflatingQueue extends AbstractQueue<Runnable> implements BlockingQueue<Runnable> {
+    private final int capacity;
+    private final Function<Runnable, Object> keyFunction;
+    private final Map<Object, Runnable> tasks = new LinkedHashMap<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private long conflatedCount;
+
+    /**
+     * Default constructor.
+     *
+     * @param capacity    maximum number of distinct keys waiting.
+     * @param keyFunction computes the conflation key of a task.
+     */
+    MqttConflatingQueue(int capacity, Function<Runnable, Object> keyFunction) {
+        this.capacity = capacity;
+        this.keyFunction = keyFunction;
+    }
+
+    @Override
+    public boolean offer(Runnable task) {
+        Object key = keyFunction.apply(task);
+        Runnable replaced;
+        lock.lock();
+        try {
+            replaced = tasks.get(key);
+            if (replaced == null && tasks.size() >= capacity) {
+                return false;
+            }
+            tasks.put(key, task);
+            if (replaced != null) {
+                conflatedCount++;
+            } else {
+                notEmpty.signal();
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (replaced instanceof Future) {
+            ((Future<?>) replaced).cancel(false);
+        }
+        return true;
+    }
+
+    @Override
+    public boolean offer(Runnable task, long timeout, TimeUnit unit) {
+        return offer(task);
+    }
+
+    @Override
+    public void put(Runnable task) {
+        if (!offer(task)) {
+            throw new IllegalStateException("MQTT conflating queue is full");
+        }
+    }
+
+    @Override
+    public Runnable poll() {
+        lock.lock();
+        try {
+            return removeFirst();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Runnable take() throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (tasks.isEmpty()) {
+                notEmpty.await();
+            }
+            return removeFirst();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Runnable poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            while (tasks.isEmpty()) {
+                if (nanos <= 0) {
+                    return null;
+                }
+                nanos = notEmpty.awaitNanos(nanos);
+            }
+            return removeFirst();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Runnable peek() {
+        lock.lock();
+        try {
+            return tasks.isEmpty() ? null : tasks.values().iterator().next();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        lock.lock();
+        try {
+            return tasks.values().remove(o);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int size() {
+        lock.lock();
+        try {
+            return tasks.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int remainingCapacity() {
+        lock.lock();
+        try {
+            return capacity - tasks.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int drainTo(Collection<? super Runnable> c) {
+        return drainTo(c, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public int drainTo(Collection<? super Runnable> c, int maxElements) {
+        lock.lock();
+        try {
+            int count = 0;
+            while (count < maxElements && !tasks.isEmpty()) {
+                c.add(removeFirst());
+                count++;
+            }
+            return count;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return a snapshot iterator over the waiting tasks.
+     */
+    @Override
+    public Iterator<Runnable> iterator() {
+        lock.lock();
+        try {
+            return new ArrayList<>(tasks.values()).iterator();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    long getConflatedCount() {
+        lock.lock();
+        try {
+            return conflatedCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Runnable removeFirst() {
+        Iterator<Runnable> iterator = tasks.values().iterator();
+        if (!iterator.hasNext()) {
+            return null;
+        }
+        Runnable task = iterator.next();
+        iterator.remove();
+        return task;
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright © 2013-2020, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.mqtt.internal;
+
+import java.util.AbstractMap;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link ThreadPoolExecutor} backed by a {@link MqttConflatingQueue}: a message waiting in the queue is replaced by a
+ * newer message received on the same topic for the same listener, so listeners only process the latest value of each
+ * topic and the queue length is bounded by the number of distinct topics.
+ */
+class MqttConflatingThreadPoolExecutor extends MqttThreadPoolExecutor {
+    private final MqttConflatingQueue queue;
+
+    /**
+     * Default constructor.
+     *
+     * @param coreSize                 core number of threads.
+     * @param maxSize                  maximum number of threads.
+     * @param keepAlive                keep alive time of idle threads in seconds.
+     * @param queueSize                maximum number of distinct topics waiting.
+     * @param rejectedExecutionHandler handler called when the queue is full.
+     */
+    MqttConflatingThreadPoolExecutor(int coreSize, int maxSize, int keepAlive, int queueSize,
+                                     RejectedExecutionHandler rejectedExecutionHandler) {
+        this(coreSize, maxSize, keepAlive, new MqttConflatingQueue(queueSize,
+                MqttConflatingThreadPoolExecutor::conflationKey), rejectedExecutionHandler);
+    }
+
+    private MqttConflatingThreadPoolExecutor(int coreSize, int maxSize, int keepAlive, MqttConflatingQueue queue,
+                                             RejectedExecutionHandler rejectedExecutionHandler) {
+        super(coreSize, maxSize, keepAlive, TimeUnit.SECONDS, queue, rejectedExecutionHandler);
+        this.queue = queue;
+    }
+
+    long getConflatedCount() {
+        return queue.getConflatedCount();
+    }
+
+    private static Object conflationKey(Runnable task) {
+        Runnable runnable = MqttPoolTask.unwrap(task);
+        if (runnable instanceof MqttListenerTask) {
+            // the listener name tells apart the runtime subscriptions, which all share the same callback class
+            MqttListenerTask listenerTask = (MqttListenerTask) runnable;
+            return new AbstractMap.SimpleImmutableEntry<>(listenerTask.getListenerName(), listenerTask.getTopic());
+        }
+        // other tasks (batches) are never conflated
+        return task;
+    }
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright © 2013-2020, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.mqtt.internal;
+
+import java.util.Map;
+import org.eclipse.paho.client.mqttv3.IMqttMessageListener;
+import org.eclipse.paho.client.mqttv3.MqttException;
+import org.seedstack.mqtt.MqttSubscriptionManager;
+
+/**
+ * {@link MqttSubscriptionManager} of a client, backed by its {@link MqttCallbackAdapter} which routes the messages
+ * and subscribes again on reconnection.
+ */
+class MqttDynamicSubscriptionManager implements MqttSubscriptionManager {
+    private final MqttCallbackAdapter callbackAdapter;
+
+    MqttDynamicSubscriptionManager(MqttCallbackAdapter callbackAdapter) {
+        this.callbackAdapter = callbackAdapter;
+    }
+
+    @Override
+    public void subscribe(String topicFilter, int qos, IMqttMessageListener listener) throws MqttException {
+        callbackAdapter.addSubscription(topicFilter, qos, listener);
+    }
+
+    @Override
+    public void unsubscribe(String topicFilter) throws MqttException {
+        callbackAdapter.removeSubscription(topicFilter);
+    }
+
+    @Override
+    public Map<String, Integer> getSubscriptions() {
+        return callbackAdapter.getSubscriptions();
+    }
+}
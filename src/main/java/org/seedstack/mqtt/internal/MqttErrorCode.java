@@ -14,7 +14,11 @@ import org.seedstack.shed.exception.ErrorCode;
 
 enum MqttErrorCode implements ErrorCode {
     CANNOT_CREATE_MQTT_CLIENT,
+    CANNOT_OPEN_SPOOL,
+    CLIENTS_NOT_CONNECTED,
+    INVALID_ORDERED_POOL_POLICY,
     INVALID_QOS,
+    INVALID_SHARE_GROUP,
     LISTENER_ERROR,
     MQTT_LISTENER_CLIENT_NOT_FOUND,
     MQTT_PUBLISHER_CLIENT_NOT_FOUND,
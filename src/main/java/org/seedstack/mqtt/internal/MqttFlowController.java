@@ -0,0 +1,134 @@
+/*
+ * Copyright © 2013-2020, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.mqtt.internal;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+import org.eclipse.paho.client.mqttv3.IMqttClient;
+import org.eclipse.paho.client.mqttv3.MqttException;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Acknowledges QoS 1/2 messages manually once they are dispatched. When the queue depth of the pool reaches the high
+ * watermark, acknowledgements are withheld so the in-flight window of the broker throttles the sender, instead of
+ * running listeners on the receiving thread or dropping messages. The queue depth is then polled on the scheduler and
+ * withheld acknowledgements are released once it drops to the low watermark.
+ */
+class MqttFlowController {
+    private static final Logger LOGGER = LoggerFactory.getLogger(MqttFlowController.class);
+    private static final long POLL_INTERVAL_MS = 10;
+    private final IMqttClient mqttClient;
+    private final IntSupplier queueDepth;
+    private final int highWatermark;
+    private final int lowWatermark;
+    private final ScheduledExecutorService scheduler;
+    private final Queue<MqttMessage> pendingAcks = new ConcurrentLinkedQueue<>();
+    private volatile boolean paused;
+    private volatile ScheduledFuture<?> resumeTask;
+
+    /**
+     * Default constructor.
+     *
+     * @param mqttClient    client acknowledging the messages.
+     * @param queueDepth    supplies the current queue depth of the pool.
+     * @param highWatermark queue depth above which acknowledgements are withheld.
+     * @param lowWatermark  queue depth at which withheld acknowledgements are released.
+     * @param scheduler     scheduler polling the queue depth while acknowledgements are withheld.
+     */
+    MqttFlowController(IMqttClient mqttClient, IntSupplier queueDepth, int highWatermark, int lowWatermark,
+                       ScheduledExecutorService scheduler) {
+        this.mqttClient = mqttClient;
+        this.queueDepth = queueDepth;
+        this.highWatermark = highWatermark;
+        this.lowWatermark = lowWatermark;
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Called on the receiving thread once a message has been handed over to its listeners.
+     *
+     * @param message the dispatched message.
+     */
+    void messageDispatched(MqttMessage message) {
+        if (!paused && queueDepth.getAsInt() >= highWatermark) {
+            pause();
+        }
+        if (message.getQos() == 0) {
+            return;
+        }
+        if (paused) {
+            pendingAcks.add(message);
+            if (!paused) {
+                // resumed concurrently, the message may have been enqueued after the release
+                releasePendingAcks();
+            }
+        } else {
+            acknowledge(message);
+        }
+    }
+
+    /**
+     * Forgets withheld acknowledgements, which are meaningless after a connection loss as the broker redelivers the
+     * unacknowledged messages.
+     */
+    void reset() {
+        pendingAcks.clear();
+    }
+
+    boolean isPaused() {
+        return paused;
+    }
+
+    int getPendingAcks() {
+        return pendingAcks.size();
+    }
+
+    private void pause() {
+        LOGGER.debug("Queue depth of MQTT client {} reached {}, withholding acknowledgements",
+                mqttClient.getClientId(), highWatermark);
+        // the task must be visible before the pause, so that a resume occurring in between cancels it
+        resumeTask = scheduler.scheduleWithFixedDelay(this::checkQueueDepth, POLL_INTERVAL_MS, POLL_INTERVAL_MS,
+                TimeUnit.MILLISECONDS);
+        paused = true;
+    }
+
+    void checkQueueDepth() {
+        if (paused && queueDepth.getAsInt() <= lowWatermark) {
+            LOGGER.debug("Queue depth of MQTT client {} dropped to {}, releasing {} acknowledgements",
+                    mqttClient.getClientId(), lowWatermark, pendingAcks.size());
+            ScheduledFuture<?> task = resumeTask;
+            if (task != null) {
+                task.cancel(false);
+            }
+            paused = false;
+            releasePendingAcks();
+        }
+    }
+
+    private void releasePendingAcks() {
+        MqttMessage message;
+        while ((message = pendingAcks.poll()) != null) {
+            acknowledge(message);
+        }
+    }
+
+    private void acknowledge(MqttMessage message) {
+        try {
+            mqttClient.messageArrivedComplete(message.getId(), message.getQos());
+        } catch (MqttException e) {
+            LOGGER.warn("Cannot acknowledge MQTT message {} on client {}", message.getId(),
+                    mqttClient.getClientId(), e);
+        }
+    }
+}
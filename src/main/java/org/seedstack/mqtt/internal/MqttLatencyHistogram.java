@@ -0,0 +1,119 @@
+/*
+ * Copyright © 2013-2020, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.mqtt.internal;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import org.seedstack.mqtt.spi.MqttLatencyInfo;
+
+/**
+ * Fixed-memory histogram of durations in nanoseconds. Each power of two is split in {@value #SUB_BUCKETS} linear
+ * sub-buckets, so recorded values are approximated with a relative error below 1/{@value #SUB_BUCKETS}. Recording only
+ * increments an atomic counter and never allocates, so it can be called concurrently by all workers.
+ */
+class MqttLatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKET_COUNT = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Records a duration.
+     *
+     * @param nanos the duration in nanoseconds, negative values being recorded as 0.
+     */
+    void record(long nanos) {
+        long value = Math.max(0, nanos);
+        counts.incrementAndGet(indexOf(value));
+        long currentMax;
+        while (value > (currentMax = max.get())) {
+            if (max.compareAndSet(currentMax, value)) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Computes the value below which a given ratio of the recorded values fall.
+     *
+     * @param ratio the ratio, between 0 and 1.
+     * @param snapshot the bucket counts, as returned by {@link #snapshot()}.
+     * @param total the total count of the snapshot.
+     * @return the highest value of the bucket containing the percentile, capped by the maximum recorded value.
+     */
+    private long valueAt(double ratio, long[] snapshot, long total) {
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(ratio * total));
+        long cumulated = 0;
+        for (int i = 0; i < snapshot.length; i++) {
+            cumulated += snapshot[i];
+            if (cumulated >= rank) {
+                return Math.min(highestValueOf(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    /**
+     * @return a summary of the recorded values, in nanoseconds.
+     */
+    MqttLatencyInfo toLatencyInfo() {
+        long[] snapshot = snapshot();
+        long total = 0;
+        for (long count : snapshot) {
+            total += count;
+        }
+        MqttLatencyInfo latencyInfo = new MqttLatencyInfo();
+        latencyInfo.setCount(total);
+        latencyInfo.setP50(valueAt(0.5, snapshot, total));
+        latencyInfo.setP99(valueAt(0.99, snapshot, total));
+        latencyInfo.setP999(valueAt(0.999, snapshot, total));
+        latencyInfo.setMax(max.get());
+        return latencyInfo;
+    }
+
+    /**
+     * @return the number of recorded values.
+     */
+    long getCount() {
+        long count = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            count += counts.get(i);
+        }
+        return count;
+    }
+
+    private long[] snapshot() {
+        long[] snapshot = new long[BUCKET_COUNT];
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            snapshot[i] = counts.get(i);
+        }
+        return snapshot;
+    }
+
+    static int indexOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    static long highestValueOf(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = index / SUB_BUCKETS - 1;
+        long lowest = (long) (SUB_BUCKETS + index % SUB_BUCKETS) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+}
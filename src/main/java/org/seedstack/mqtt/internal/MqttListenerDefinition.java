@@ -11,6 +11,9 @@
 package org.seedstack.mqtt.internal;
 
 import org.eclipse.paho.client.mqttv3.MqttCallback;
+import org.seedstack.mqtt.AsyncMqttListener;
+import org.seedstack.mqtt.MqttPayloadCodec;
+import org.seedstack.mqtt.MqttTypedListener;
 
 /**
  * Defined all topics/qos to listen.
@@ -20,13 +23,37 @@ class MqttListenerDefinition {
     private final String className;
     private final int[] qos;
     private final Class<? extends MqttCallback> listenerClass;
+    private final boolean threadSafe;
+    private final boolean async;
+    private final boolean typed;
+    @SuppressWarnings("rawtypes")
+    private final Class<? extends MqttPayloadCodec> codecClass;
+    private MqttRetryPolicy retryPolicy;
+    private String shareGroup;
 
     MqttListenerDefinition(Class<? extends MqttCallback> mqttListenerClass, String className,
                            String[] topicFilter, int[] qos) {
+        this(mqttListenerClass, className, topicFilter, qos, false);
+    }
+
+    MqttListenerDefinition(Class<? extends MqttCallback> mqttListenerClass, String className,
+                           String[] topicFilter, int[] qos, boolean threadSafe) {
+        this(mqttListenerClass, className, topicFilter, qos, threadSafe, null);
+    }
+
+    @SuppressWarnings("rawtypes")
+    MqttListenerDefinition(Class<? extends MqttCallback> mqttListenerClass, String className,
+                           String[] topicFilter, int[] qos, boolean threadSafe,
+                           Class<? extends MqttPayloadCodec> codecClass) {
         this.topicFilter = topicFilter;
         this.className = className;
         this.qos = qos;
         this.listenerClass = mqttListenerClass;
+        this.threadSafe = threadSafe;
+        this.async = mqttListenerClass != null && AsyncMqttListener.class.isAssignableFrom(mqttListenerClass);
+        this.typed = !async && mqttListenerClass != null
+                && MqttTypedListener.class.isAssignableFrom(mqttListenerClass);
+        this.codecClass = codecClass;
     }
 
     String[] getTopicFilter() {
@@ -44,4 +71,43 @@ class MqttListenerDefinition {
     Class<? extends MqttCallback> getListenerClass() {
         return listenerClass;
     }
+
+    boolean isThreadSafe() {
+        return threadSafe;
+    }
+
+    boolean isAsync() {
+        return async;
+    }
+
+    boolean isTyped() {
+        return typed;
+    }
+
+    @SuppressWarnings("rawtypes")
+    Class<? extends MqttPayloadCodec> getCodecClass() {
+        return codecClass;
+    }
+
+    /**
+     * @return the retry policy of the listener, null if failed messages are not retried.
+     */
+    MqttRetryPolicy getRetryPolicy() {
+        return retryPolicy;
+    }
+
+    void setRetryPolicy(MqttRetryPolicy retryPolicy) {
+        this.retryPolicy = retryPolicy;
+    }
+
+    /**
+     * @return the group of the shared subscriptions of the listener, null if it does not declare one.
+     */
+    String getShareGroup() {
+        return shareGroup;
+    }
+
+    void setShareGroup(String shareGroup) {
+        this.shareGroup = shareGroup;
+    }
 }
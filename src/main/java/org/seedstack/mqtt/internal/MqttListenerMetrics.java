@@ -0,0 +1,50 @@
+/*
+ * Copyright © 2013-2020, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.mqtt.internal;
+
+import org.seedstack.mqtt.spi.MqttListenerInfo;
+
+/**
+ * Queue-wait and execution time histograms of a listener.
+ */
+class MqttListenerMetrics {
+    private final String listenerName;
+    private final MqttLatencyHistogram queueWait = new MqttLatencyHistogram();
+    private final MqttLatencyHistogram execution = new MqttLatencyHistogram();
+
+    MqttListenerMetrics(String listenerName) {
+        this.listenerName = listenerName;
+    }
+
+    String getListenerName() {
+        return listenerName;
+    }
+
+    /**
+     * @return the number of messages (or batches) whose execution has been recorded.
+     */
+    long getExecutionCount() {
+        return execution.getCount();
+    }
+
+    void recordQueueWait(long nanos) {
+        queueWait.record(nanos);
+    }
+
+    void recordExecution(long nanos) {
+        execution.record(nanos);
+    }
+
+    MqttListenerInfo toListenerInfo() {
+        MqttListenerInfo listenerInfo = new MqttListenerInfo();
+        listenerInfo.setListenerName(listenerName);
+        listenerInfo.setQueueWait(queueWait.toLatencyInfo());
+        listenerInfo.setExecution(execution.toLatencyInfo());
+        return listenerInfo;
+    }
+}
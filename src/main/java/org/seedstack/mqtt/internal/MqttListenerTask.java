@@ -24,6 +24,8 @@ class MqttListenerTask implements Runnable {
     private final MqttCallback listener;
     private final String topic;
     private final MqttMessage message;
+    private final MqttListenerMetrics metrics;
+    private final long enqueuedAt;
 
     /**
      * Default constructor
@@ -33,18 +35,72 @@ class MqttListenerTask implements Runnable {
      * @param message  {@link MqttMessage} received
      */
     MqttListenerTask(MqttCallback listener, String topic, MqttMessage message) {
+        this(listener, topic, message, null);
+    }
+
+    /**
+     * Constructor recording the queue-wait and execution times of the task.
+     *
+     * @param listener real listener to call
+     * @param topic    topic received
+     * @param message  {@link MqttMessage} received
+     * @param metrics  metrics of the listener, null to record nothing
+     */
+    MqttListenerTask(MqttCallback listener, String topic, MqttMessage message, MqttListenerMetrics metrics) {
         this.listener = listener;
         this.topic = topic;
         this.message = message;
+        this.metrics = metrics;
+        this.enqueuedAt = metrics != null ? System.nanoTime() : 0;
     }
 
     @Override
     public void run() {
+        long start = metrics != null ? System.nanoTime() : 0;
         try {
             listener.messageArrived(topic, message);
         } catch (Exception e) {
             throw SeedException.wrap(e, MqttErrorCode.LISTENER_ERROR)
-                    .put("listenerClass", listener.getClass().getName());
+                    .put("listenerClass", getListenerClassName());
+        } finally {
+            if (metrics != null) {
+                metrics.recordQueueWait(start - enqueuedAt);
+                metrics.recordExecution(System.nanoTime() - start);
+            }
+        }
+    }
+
+    /**
+     * @return the name of the listener definition if the task records metrics, the class name of the listener
+     * otherwise.
+     */
+    String getListenerName() {
+        return metrics != null ? metrics.getListenerName() : getListenerClassName();
+    }
+
+    /**
+     * @return the class name of the listener, without the callbacks retrying or decoding its messages.
+     */
+    private String getListenerClassName() {
+        MqttCallback callback = listener;
+        if (callback instanceof MqttRetryingCallback) {
+            callback = ((MqttRetryingCallback) callback).getListener();
+        }
+        if (callback instanceof MqttTypedCallback) {
+            return ((MqttTypedCallback<?>) callback).getListener().getClass().getName();
         }
+        return callback.getClass().getName();
+    }
+
+    MqttCallback getListener() {
+        return listener;
+    }
+
+    String getTopic() {
+        return topic;
+    }
+
+    MqttMessage getMessage() {
+        return message;
     }
 }
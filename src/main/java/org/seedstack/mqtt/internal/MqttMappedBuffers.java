@@ -0,0 +1,57 @@
+/*
+ * Copyright © 2013-2020, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.mqtt.internal;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Methods to release the mapping of a memory-mapped file before the file is deleted. A file stays mapped until its
+ * buffer is garbage collected otherwise, and Windows refuses to delete a mapped file.
+ */
+final class MqttMappedBuffers {
+    private static final Logger LOGGER = LoggerFactory.getLogger(MqttMappedBuffers.class);
+
+    private MqttMappedBuffers() {
+        // no instantiation allowed
+    }
+
+    /**
+     * Releases the mapping of a buffer, with the unsupported API of the running JVM. The buffer must not be accessed
+     * anymore. The mapping is left to the garbage collector when the JVM does not allow its release.
+     *
+     * @param buffer the buffer to unmap.
+     */
+    static void unmap(MappedByteBuffer buffer) {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Method invokeCleaner;
+            try {
+                invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            } catch (NoSuchMethodException e) {
+                // Java 8
+                Method cleaner = buffer.getClass().getMethod("cleaner");
+                cleaner.setAccessible(true);
+                Object bufferCleaner = cleaner.invoke(buffer);
+                if (bufferCleaner != null) {
+                    bufferCleaner.getClass().getMethod("clean").invoke(bufferCleaner);
+                }
+                return;
+            }
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            invokeCleaner.invoke(theUnsafe.get(null), buffer);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            LOGGER.debug("Cannot unmap memory-mapped buffer, it will be unmapped when garbage collected", e);
+        }
+    }
+}
@@ -0,0 +1,531 @@
+/*
+ * Copyright © 2013-2020, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.mqtt.internal;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.eclipse.paho.client.mqttv3.MqttClientPersistence;
+import org.eclipse.paho.client.mqttv3.MqttPersistable;
+import org.eclipse.paho.client.mqttv3.MqttPersistenceException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Log-structured {@link MqttClientPersistence} appending puts and removals to memory-mapped segment files of a fixed
+ * size, instead of writing one file per in-flight message. The persisted data is also kept in memory, so reads never
+ * hit the disk. The log is replayed when the persistence is opened.
+ * <p>
+ * A segment is deleted once it is the oldest one and all its puts have been removed. When a new segment is started,
+ * the entries still live in the oldest segment are copied forward, so a long-lived entry does not retain the segments
+ * written after it. Segments are unmapped before being deleted, as Windows refuses to delete a mapped file.
+ * <p>
+ * When synchronization is enabled, a put returns once its record is forced to disk. A single thread forces the
+ * current segment for all the puts written since its last force (group commit), so concurrent writers share the cost
+ * of a force. Removals are not awaited: after a crash, a removed entry may come back, which only causes a duplicate
+ * delivery. The current segment is forced before the oldest segments are deleted, so the entries copied forward
+ * survive a crash.
+ * <p>
+ * Record layout: {@code length | type | key | header | payload}, the key, header and payload being prefixed by their
+ * length. Each record is written before its length, so a segment is recovered up to its last complete record.
+ */
+class MqttMappedPersistence implements MqttClientPersistence {
+    private static final Logger LOGGER = LoggerFactory.getLogger(MqttMappedPersistence.class);
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final int HEADER_SIZE = 4;
+    private static final byte PUT = 1;
+    private static final byte REMOVE = 2;
+    private static final byte[] EMPTY = new byte[0];
+    private final Path baseDirectory;
+    private final int segmentSize;
+    private final boolean sync;
+    private final Map<String, Entry> index = new HashMap<>();
+    private final Deque<Segment> segments = new ArrayDeque<>();
+    private final Object syncLock = new Object();
+    private Path directory;
+    private long nextSegmentId;
+    private long writtenSequence;
+    private long requestedSequence;
+    private long syncedSequence;
+    private volatile boolean open;
+    private Thread syncThread;
+
+    /**
+     * Default constructor.
+     *
+     * @param baseDirectory directory containing the directory of each client.
+     * @param segmentSize   size of each segment file in bytes.
+     * @param sync          true to wait for the records of puts to be forced to disk.
+     */
+    MqttMappedPersistence(Path baseDirectory, int segmentSize, boolean sync) {
+        this.baseDirectory = baseDirectory;
+        this.segmentSize = segmentSize;
+        this.sync = sync;
+    }
+
+    @Override
+    public synchronized void open(String clientId, String serverURI) throws MqttPersistenceException {
+        directory = baseDirectory.resolve((clientId + "-" + serverURI).replaceAll("[^a-zA-Z0-9._-]", "_"));
+        try {
+            Files.createDirectories(directory);
+            for (long id : listSegmentIds()) {
+                Segment segment = openSegment(id, 0);
+                segments.addLast(segment);
+                replay(segment);
+                nextSegmentId = id + 1;
+            }
+        } catch (IOException e) {
+            close(segments);
+            throw new MqttPersistenceException(e);
+        }
+        trimHead();
+        if (!index.isEmpty()) {
+            LOGGER.debug("Recovered {} persisted MQTT entries from {}", index.size(), directory);
+        }
+        open = true;
+        if (sync) {
+            syncThread = new Thread(this::syncLoop, "mqtt-persistence-sync-" + clientId);
+            syncThread.setDaemon(true);
+            syncThread.start();
+        }
+    }
+
+    @Override
+    public void close() throws MqttPersistenceException {
+        synchronized (syncLock) {
+            open = false;
+            syncLock.notifyAll();
+        }
+        if (syncThread != null) {
+            try {
+                syncThread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            syncThread = null;
+        }
+        synchronized (this) {
+            close(segments);
+            segments.clear();
+            index.clear();
+        }
+    }
+
+    @Override
+    public void put(String key, MqttPersistable persistable) throws MqttPersistenceException {
+        long sequence;
+        synchronized (this) {
+            checkOpen();
+            byte[] header = copy(persistable.getHeaderBytes(), persistable.getHeaderOffset(),
+                    persistable.getHeaderLength());
+            byte[] payload = copy(persistable.getPayloadBytes(), persistable.getPayloadOffset(),
+                    persistable.getPayloadLength());
+            Segment segment = append(PUT, key, header, payload);
+            index(key, new Entry(new PersistedData(key, header, payload), segment));
+            sequence = ++writtenSequence;
+            trimHead();
+        }
+        awaitSync(sequence);
+    }
+
+    @Override
+    public synchronized MqttPersistable get(String key) throws MqttPersistenceException {
+        checkOpen();
+        Entry entry = index.get(key);
+        return entry != null ? entry.data : null;
+    }
+
+    @Override
+    public synchronized void remove(String key) throws MqttPersistenceException {
+        checkOpen();
+        if (index.containsKey(key)) {
+            append(REMOVE, key, EMPTY, EMPTY);
+            unindex(key);
+            writtenSequence++;
+            trimHead();
+        }
+    }
+
+    @Override
+    @SuppressWarnings("rawtypes")
+    public synchronized Enumeration keys() throws MqttPersistenceException {
+        checkOpen();
+        return Collections.enumeration(new ArrayList<>(index.keySet()));
+    }
+
+    @Override
+    public synchronized void clear() throws MqttPersistenceException {
+        checkOpen();
+        for (Segment segment : segments) {
+            segment.delete();
+        }
+        segments.clear();
+        index.clear();
+    }
+
+    @Override
+    public synchronized boolean containsKey(String key) throws MqttPersistenceException {
+        checkOpen();
+        return index.containsKey(key);
+    }
+
+    private void checkOpen() throws MqttPersistenceException {
+        if (!open) {
+            throw new MqttPersistenceException();
+        }
+    }
+
+    private Segment append(byte type, String key, byte[] header, byte[] payload) throws MqttPersistenceException {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        int length = 1 + 4 + keyBytes.length + 4 + header.length + 4 + payload.length;
+        Segment segment = segments.peekLast();
+        if (segment == null || segment.writePosition + HEADER_SIZE + length > segment.buffer.capacity()) {
+            segment = roll(HEADER_SIZE + length);
+        }
+        MappedByteBuffer buffer = segment.buffer;
+        int position = segment.writePosition;
+        buffer.position(position + HEADER_SIZE);
+        buffer.put(type);
+        buffer.putInt(keyBytes.length).put(keyBytes);
+        buffer.putInt(header.length).put(header);
+        buffer.putInt(payload.length).put(payload);
+        buffer.putInt(position, length);
+        segment.writePosition = position + HEADER_SIZE + length;
+        return segment;
+    }
+
+    /**
+     * Starts a new segment, then copies the live entries of the oldest segment forward so it can be deleted.
+     */
+    private Segment roll(int minSize) throws MqttPersistenceException {
+        Segment previous = segments.peekLast();
+        if (previous != null && sync) {
+            previous.force();
+        }
+        Segment segment;
+        try {
+            segment = openSegment(nextSegmentId++, Math.max(segmentSize, minSize));
+        } catch (IOException e) {
+            throw new MqttPersistenceException(e);
+        }
+        segments.addLast(segment);
+        Segment head = segments.peekFirst();
+        // the copied entries and the record being appended must fit in the new segment
+        if (head != segment && head.live > 0 && head.liveBytes <= segment.buffer.capacity() / 2
+                && head.liveBytes + minSize <= segment.buffer.capacity()) {
+            for (Entry entry : new ArrayList<>(index.values())) {
+                if (entry.segment == head) {
+                    PersistedData data = entry.data;
+                    append(PUT, data.getKey(), data.getHeaderBytes(), data.getPayloadBytes());
+                    index(data.getKey(), new Entry(data, segment));
+                }
+            }
+        }
+        trimHead();
+        return segment;
+    }
+
+    private void index(String key, Entry entry) {
+        Entry previous = index.put(key, entry);
+        if (previous != null) {
+            previous.segment.release(previous);
+        }
+        entry.segment.live++;
+        entry.segment.liveBytes += entry.size();
+    }
+
+    private void unindex(String key) {
+        Entry previous = index.remove(key);
+        if (previous != null) {
+            previous.segment.release(previous);
+        }
+    }
+
+    /**
+     * Deletes the oldest segments without live entries, the last segment being kept for the next records.
+     */
+    private void trimHead() {
+        boolean forced = false;
+        while (segments.size() > 1 && segments.peekFirst().live == 0) {
+            if (sync && !forced) {
+                // the entries copied forward must be durable before their previous records are deleted
+                segments.peekLast().force();
+                forced = true;
+            }
+            segments.removeFirst().delete();
+        }
+    }
+
+    private void replay(Segment segment) {
+        MappedByteBuffer buffer = segment.buffer;
+        int position = 0;
+        int length;
+        while (position + HEADER_SIZE <= buffer.capacity()
+                && (length = buffer.getInt(position)) > 0
+                && position + HEADER_SIZE + length <= buffer.capacity()) {
+            buffer.position(position + HEADER_SIZE);
+            byte type = buffer.get();
+            String key = new String(read(buffer), StandardCharsets.UTF_8);
+            if (type == PUT) {
+                byte[] header = read(buffer);
+                byte[] payload = read(buffer);
+                index(key, new Entry(new PersistedData(key, header, payload), segment));
+            } else {
+                unindex(key);
+            }
+            position += HEADER_SIZE + length;
+        }
+        segment.writePosition = position;
+    }
+
+    private void syncLoop() {
+        while (true) {
+            synchronized (syncLock) {
+                while (open && syncedSequence >= requestedSequence) {
+                    try {
+                        syncLock.wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (!open) {
+                    return;
+                }
+            }
+            Segment segment;
+            long sequence;
+            synchronized (this) {
+                segment = segments.peekLast();
+                sequence = writtenSequence;
+            }
+            if (segment != null) {
+                segment.force();
+            }
+            synchronized (syncLock) {
+                syncedSequence = sequence;
+                syncLock.notifyAll();
+            }
+        }
+    }
+
+    private void awaitSync(long sequence) {
+        if (!sync) {
+            return;
+        }
+        synchronized (syncLock) {
+            if (requestedSequence < sequence) {
+                requestedSequence = sequence;
+                syncLock.notifyAll();
+            }
+            while (open && syncedSequence < sequence) {
+                try {
+                    syncLock.wait();
+                } catch (InterruptedException e) {
+                    // the record is written, only its durability is not awaited
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    private List<Long> listSegmentIds() throws IOException {
+        List<Long> ids = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory,
+                SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path file : files) {
+                String fileName = file.getFileName().toString();
+                try {
+                    ids.add(Long.parseLong(fileName.substring(SEGMENT_PREFIX.length(),
+                            fileName.length() - SEGMENT_SUFFIX.length())));
+                } catch (NumberFormatException e) {
+                    LOGGER.warn("Ignoring unexpected file in MQTT persistence directory: {}", file);
+                }
+            }
+        }
+        ids.sort(null);
+        return ids;
+    }
+
+    private Segment openSegment(long id, int size) throws IOException {
+        Path file = directory.resolve(String.format("%s%019d%s", SEGMENT_PREFIX, id, SEGMENT_SUFFIX));
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        try {
+            long mappedSize = size > 0 ? size : channel.size();
+            return new Segment(file, channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, mappedSize));
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private static void close(Deque<Segment> segments) {
+        for (Segment segment : segments) {
+            segment.close();
+        }
+    }
+
+    private static byte[] read(MappedByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    private static byte[] copy(byte[] bytes, int offset, int length) {
+        if (bytes == null || length == 0) {
+            return EMPTY;
+        }
+        byte[] copy = new byte[length];
+        System.arraycopy(bytes, offset, copy, 0, length);
+        return copy;
+    }
+
+    /**
+     * Copy of the persisted header and payload of a key.
+     */
+    private static class PersistedData implements MqttPersistable {
+        private final String key;
+        private final byte[] header;
+        private final byte[] payload;
+
+        private PersistedData(String key, byte[] header, byte[] payload) {
+            this.key = key;
+            this.header = header;
+            this.payload = payload;
+        }
+
+        private String getKey() {
+            return key;
+        }
+
+        @Override
+        public byte[] getHeaderBytes() {
+            return header;
+        }
+
+        @Override
+        public int getHeaderLength() {
+            return header.length;
+        }
+
+        @Override
+        public int getHeaderOffset() {
+            return 0;
+        }
+
+        @Override
+        public byte[] getPayloadBytes() {
+            return payload;
+        }
+
+        @Override
+        public int getPayloadLength() {
+            return payload.length;
+        }
+
+        @Override
+        public int getPayloadOffset() {
+            return 0;
+        }
+    }
+
+    /**
+     * Persisted data with the segment holding its last put.
+     */
+    private static class Entry {
+        private final PersistedData data;
+        private final Segment segment;
+
+        private Entry(PersistedData data, Segment segment) {
+            this.data = data;
+            this.segment = segment;
+        }
+
+        /**
+         * @return the size of the put record of the entry.
+         */
+        private int size() {
+            return HEADER_SIZE + 1 + 4 + data.getKey().getBytes(StandardCharsets.UTF_8).length + 4
+                    + data.getHeaderLength() + 4 + data.getPayloadLength();
+        }
+    }
+
+    private static class Segment {
+        private final Path file;
+        private final FileChannel channel;
+        private final MappedByteBuffer buffer;
+        private int writePosition;
+        private int live;
+        private long liveBytes;
+        private boolean closed;
+
+        private Segment(Path file, FileChannel channel, MappedByteBuffer buffer) {
+            this.file = file;
+            this.channel = channel;
+            this.buffer = buffer;
+        }
+
+        private void release(Entry entry) {
+            live--;
+            liveBytes -= entry.size();
+        }
+
+        /**
+         * Forces the segment to disk, unless it has already been closed by another thread.
+         */
+        private synchronized void force() {
+            if (!closed) {
+                buffer.force();
+            }
+        }
+
+        private synchronized void close() {
+            if (!closed) {
+                buffer.force();
+                unmap();
+            }
+            try {
+                channel.close();
+            } catch (IOException e) {
+                LOGGER.warn("Cannot close MQTT persistence segment {}", file, e);
+            }
+        }
+
+        private synchronized void delete() {
+            if (!closed) {
+                unmap();
+            }
+            try {
+                channel.close();
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                LOGGER.warn("Cannot delete MQTT persistence segment {}", file, e);
+            }
+        }
+
+        private void unmap() {
+            closed = true;
+            MqttMappedBuffers.unmap(buffer);
+        }
+    }
+}
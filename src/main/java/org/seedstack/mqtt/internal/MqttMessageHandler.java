@@ -0,0 +1,20 @@
+/*
+ * Copyright © 2013-2020, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.mqtt.internal;
+
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+
+/**
+ * Route target of a received message, registered in the {@link MqttTopicTrie} of a client for each topic filter of a
+ * listener.
+ */
+@FunctionalInterface
+interface MqttMessageHandler {
+
+    void handle(String topic, MqttMessage message) throws Exception;
+}
@@ -12,11 +12,17 @@ package org.seedstack.mqtt.internal;
 
 import com.google.inject.AbstractModule;
 import com.google.inject.Key;
+import com.google.inject.Scopes;
+import com.google.inject.binder.ScopedBindingBuilder;
 import com.google.inject.name.Names;
 import org.eclipse.paho.client.mqttv3.IMqttClient;
 import org.eclipse.paho.client.mqttv3.MqttCallback;
 import org.eclipse.paho.client.mqttv3.MqttClient;
+import org.seedstack.mqtt.MqttBatchCallback;
+import org.seedstack.mqtt.MqttDispatchKeyExtractor;
+import org.seedstack.mqtt.MqttPublisher;
 import org.seedstack.mqtt.MqttRejectedExecutionHandler;
+import org.seedstack.mqtt.MqttSubscriptionManager;
 
 import java.util.Map.Entry;
 import java.util.concurrent.ConcurrentHashMap;
@@ -44,14 +50,26 @@ class MqttModule extends AbstractModule {
             bind(IMqttClient.class).annotatedWith(Names.named(clientName)).toInstance(mqttClient);
             MqttCallbackAdapter callbackAdapter = mqttCallbackAdapters.get(clientName);
             mqttClient.setCallback(callbackAdapter);
+            bind(MqttSubscriptionManager.class).annotatedWith(Names.named(clientName))
+                    .toInstance(callbackAdapter.getSubscriptionManager());
+            if (callbackAdapter.getAsyncPublisher() != null) {
+                bind(MqttPublisher.class).annotatedWith(Names.named(clientName))
+                        .toInstance(callbackAdapter.getAsyncPublisher());
+            }
 
             MqttPublisherDefinition publisherDefinition = clientDefinition.getPublisherDefinition();
             if (publisherDefinition != null) {
                 registerPublishHandler(callbackAdapter, publisherDefinition);
             }
-            MqttListenerDefinition listenerDefinition = clientDefinition.getListenerDefinition();
-            if (listenerDefinition != null) {
-                registerListener(callbackAdapter, clientDefinition);
+            for (MqttListenerDefinition listenerDefinition : clientDefinition.getListenerDefinitions()) {
+                registerListener(callbackAdapter, listenerDefinition);
+            }
+            for (MqttBatchListenerDefinition batchListenerDefinition : clientDefinition.getBatchListenerDefinitions()) {
+                registerBatchListener(callbackAdapter, batchListenerDefinition);
+            }
+            if (!clientDefinition.getListenerDefinitions().isEmpty()
+                    || !clientDefinition.getBatchListenerDefinitions().isEmpty()) {
+                registerPool(callbackAdapter, clientDefinition);
             }
         }
     }
@@ -63,19 +81,39 @@ class MqttModule extends AbstractModule {
         callbackAdapter.setPublisherKey(Key.get(MqttCallback.class, Names.named(className)));
     }
 
-    private void registerListener(MqttCallbackAdapter callbackAdapter, MqttClientDefinition clientDefinition) {
-        MqttListenerDefinition listenerDefinition = clientDefinition.getListenerDefinition();
+    private void registerListener(MqttCallbackAdapter callbackAdapter, MqttListenerDefinition listenerDefinition) {
         String className = listenerDefinition.getClassName();
         Class<? extends MqttCallback> clazz = listenerDefinition.getListenerClass();
-        bind(MqttCallback.class).annotatedWith(Names.named(className)).to(clazz);
-        callbackAdapter.setListenerKey(Key.get(MqttCallback.class, Names.named(className)));
+        ScopedBindingBuilder binding = bind(MqttCallback.class).annotatedWith(Names.named(className)).to(clazz);
+        if (listenerDefinition.isThreadSafe()) {
+            binding.in(Scopes.SINGLETON);
+        }
+        callbackAdapter.addListenerKey(listenerDefinition, Key.get(MqttCallback.class, Names.named(className)));
+    }
+
+    private void registerBatchListener(MqttCallbackAdapter callbackAdapter,
+                                       MqttBatchListenerDefinition batchListenerDefinition) {
+        String className = batchListenerDefinition.getClassName();
+        Class<? extends MqttBatchCallback> clazz = batchListenerDefinition.getListenerClass();
+        bind(MqttBatchCallback.class).annotatedWith(Names.named(className)).to(clazz);
+        callbackAdapter.addBatchListenerKey(batchListenerDefinition,
+                Key.get(MqttBatchCallback.class, Names.named(className)));
+    }
+
+    private void registerPool(MqttCallbackAdapter callbackAdapter, MqttClientDefinition clientDefinition) {
         MqttPoolDefinition poolDefinition = clientDefinition.getPoolDefinition();
-        callbackAdapter.setPool(poolDefinition.getThreadPoolExecutor());
+        callbackAdapter.setPool(poolDefinition.getExecutorService());
         if (poolDefinition.getRejectHandlerClass() != null) {
             String rejectName = poolDefinition.getRejectHandlerName();
             Class<? extends MqttRejectedExecutionHandler> rejectClass = poolDefinition.getRejectHandlerClass();
             bind(MqttRejectedExecutionHandler.class).annotatedWith(Names.named(rejectName)).to(rejectClass);
             callbackAdapter.setRejectHandlerKey(Key.get(MqttRejectedExecutionHandler.class, Names.named(rejectName)));
         }
+        if (poolDefinition.getKeyExtractorClass() != null) {
+            Class<? extends MqttDispatchKeyExtractor> keyExtractorClass = poolDefinition.getKeyExtractorClass();
+            String keyExtractorName = keyExtractorClass.getCanonicalName();
+            bind(MqttDispatchKeyExtractor.class).annotatedWith(Names.named(keyExtractorName)).to(keyExtractorClass);
+            callbackAdapter.setKeyExtractorKey(Key.get(MqttDispatchKeyExtractor.class, Names.named(keyExtractorName)));
+        }
     }
 }
@@ -0,0 +1,59 @@
+/*
+ * Copyright © 2013-2020, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.mqtt.internal;
+
+import java.util.Collections;
+import java.util.Enumeration;
+import org.eclipse.paho.client.mqttv3.MqttClientPersistence;
+import org.eclipse.paho.client.mqttv3.MqttPersistable;
+
+/**
+ * {@link MqttClientPersistence} keeping nothing: QoS 1 and 2 messages in flight when the connection is lost are not
+ * sent again after the reconnection.
+ */
+class MqttNoPersistence implements MqttClientPersistence {
+    @Override
+    public void open(String clientId, String serverURI) {
+        // nothing to open
+    }
+
+    @Override
+    public void close() {
+        // nothing to close
+    }
+
+    @Override
+    public void put(String key, MqttPersistable persistable) {
+        // nothing is kept
+    }
+
+    @Override
+    public MqttPersistable get(String key) {
+        return null;
+    }
+
+    @Override
+    public void remove(String key) {
+        // nothing is kept
+    }
+
+    @Override
+    public Enumeration keys() {
+        return Collections.emptyEnumeration();
+    }
+
+    @Override
+    public void clear() {
+        // nothing is kept
+    }
+
+    @Override
+    public boolean containsKey(String key) {
+        return false;
+    }
+}
@@ -0,0 +1,230 @@
+/*
+ * Copyright © 2013-2020, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.mqtt.internal;
+
+import java.io.Closeable;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.seedstack.mqtt.MqttPublisher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Buffer of the messages published while a client is disconnected. Messages are kept in memory up to a number of
+ * messages and a size of payloads, then appended to an optional {@link MqttSpool}. Once a message has overflowed to
+ * the spool, the next ones follow it until the spool is empty, so the publication order is kept.
+ * <p>
+ * The buffer is flushed when the client is connected: messages are published through the non-blocking publisher of
+ * the client without waiting for each acknowledgement, up to its in-flight window.
+ */
+class MqttOfflineBuffer implements Closeable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(MqttOfflineBuffer.class);
+    private static final String SPOOL_LISTENER_NAME = "";
+    private final String clientName;
+    private final int maxMessages;
+    private final long maxBytes;
+    private final MqttSpool spool;
+    private final MqttPublisher publisher;
+    private final BooleanSupplier connected;
+    private final Executor flushExecutor;
+    private final Deque<MqttSpool.Record> memory = new ArrayDeque<>();
+    private final AtomicBoolean flushing = new AtomicBoolean();
+    private final AtomicLong flushedMessages = new AtomicLong();
+    private final AtomicLong droppedMessages = new AtomicLong();
+    private final AtomicLong lostMessages = new AtomicLong();
+    private long memoryBytes;
+    private boolean full;
+    private volatile double flushRate;
+
+    /**
+     * Default constructor.
+     *
+     * @param clientName    name of the client.
+     * @param maxMessages   maximum number of messages buffered in memory.
+     * @param maxBytes      maximum size of the payloads buffered in memory.
+     * @param spool         spool receiving the messages when the memory buffer is full, or null.
+     * @param publisher     publisher used to flush the buffer.
+     * @param connected     tells if the client is connected.
+     * @param flushExecutor executor running the flushes.
+     */
+    MqttOfflineBuffer(String clientName, int maxMessages, long maxBytes, MqttSpool spool, MqttPublisher publisher,
+                      BooleanSupplier connected, Executor flushExecutor) {
+        this.clientName = clientName;
+        this.maxMessages = Math.max(1, maxMessages);
+        this.maxBytes = maxBytes;
+        this.spool = spool;
+        this.publisher = publisher;
+        this.connected = connected;
+        this.flushExecutor = flushExecutor;
+    }
+
+    /**
+     * Buffers a message, then starts a flush if the client is connected again.
+     *
+     * @param topic   topic of the message.
+     * @param message the message.
+     * @return false if the buffer is full.
+     */
+    boolean offer(String topic, MqttMessage message) {
+        synchronized (this) {
+            int length = message.getPayload().length;
+            if ((spool == null || spool.size() == 0) && memory.size() < maxMessages
+                    && memoryBytes + length <= maxBytes) {
+                memory.addLast(new MqttSpool.Record(SPOOL_LISTENER_NAME, topic, message));
+                memoryBytes += length;
+            } else if (spool == null || !spool.append(SPOOL_LISTENER_NAME, topic, message)) {
+                droppedMessages.incrementAndGet();
+                if (!full) {
+                    full = true;
+                    LOGGER.warn("Offline buffer of MQTT client {} is full, messages published until it is flushed "
+                            + "are dropped", clientName);
+                }
+                return false;
+            }
+            if (full) {
+                full = false;
+                LOGGER.info("Offline buffer of MQTT client {} accepts messages again, {} messages dropped so far",
+                        clientName, droppedMessages.get());
+            }
+        }
+        if (connected.getAsBoolean()) {
+            flush();
+        }
+        return true;
+    }
+
+    /**
+     * Starts a flush of the buffer on the flush executor, unless one is running.
+     */
+    void flush() {
+        if (!isEmpty() && flushing.compareAndSet(false, true)) {
+            try {
+                flushExecutor.execute(this::flushBuffered);
+            } catch (RejectedExecutionException e) {
+                // the client is stopping: the messages are left to close()
+                flushing.set(false);
+            }
+        }
+    }
+
+    private void flushBuffered() {
+        long start = System.nanoTime();
+        long count = 0;
+        try {
+            MqttSpool.Record record;
+            while (connected.getAsBoolean() && (record = poll()) != null) {
+                String topic = record.getTopic();
+                CompletableFuture<Void> future = publisher.publishAsync(topic, record.getMessage());
+                if (future.isCompletedExceptionally() && !connected.getAsBoolean()) {
+                    // disconnected again: the message stays first until the next flush
+                    pushBack(record);
+                    break;
+                }
+                future.whenComplete((result, failure) -> {
+                    if (failure != null) {
+                        lostMessages.incrementAndGet();
+                        LOGGER.warn("Can not publish buffered MQTT message on topic {} for client {}", topic,
+                                clientName, failure);
+                    }
+                });
+                count++;
+            }
+        } finally {
+            long elapsedNanos = System.nanoTime() - start;
+            if (count > 0) {
+                flushedMessages.addAndGet(count);
+                flushRate = count * 1e9 / Math.max(1, elapsedNanos);
+                LOGGER.info("Flushed {} buffered MQTT messages of client {} at {} messages/s", count, clientName,
+                        (long) flushRate);
+            }
+            flushing.set(false);
+        }
+        // a message may have been buffered after the last poll
+        if (connected.getAsBoolean()) {
+            flush();
+        }
+    }
+
+    private synchronized MqttSpool.Record poll() {
+        MqttSpool.Record record = memory.pollFirst();
+        if (record != null) {
+            memoryBytes -= record.getMessage().getPayload().length;
+            return record;
+        }
+        return spool != null ? spool.poll() : null;
+    }
+
+    private synchronized void pushBack(MqttSpool.Record record) {
+        memory.addFirst(record);
+        memoryBytes += record.getMessage().getPayload().length;
+    }
+
+    synchronized boolean isEmpty() {
+        return memory.isEmpty() && (spool == null || spool.size() == 0);
+    }
+
+    /**
+     * @return the number of buffered messages, in memory and on disk.
+     */
+    synchronized long size() {
+        return memory.size() + (spool != null ? spool.size() : 0);
+    }
+
+    /**
+     * @return the size of the payloads buffered in memory.
+     */
+    synchronized long getMemoryBytes() {
+        return memoryBytes;
+    }
+
+    long getFlushedMessages() {
+        return flushedMessages.get();
+    }
+
+    /**
+     * @return the number of messages published per second by the last flush.
+     */
+    double getFlushRate() {
+        return flushRate;
+    }
+
+    /**
+     * @return the number of messages refused because the buffer was full.
+     */
+    long getDroppedMessages() {
+        return droppedMessages.get();
+    }
+
+    /**
+     * @return the number of flushed messages whose publication failed.
+     */
+    long getLostMessages() {
+        return lostMessages.get();
+    }
+
+    @Override
+    public synchronized void close() {
+        if (!memory.isEmpty()) {
+            LOGGER.warn("Discarding {} MQTT messages buffered in memory for client {}", memory.size(), clientName);
+        }
+        if (spool != null) {
+            if (spool.size() > 0) {
+                LOGGER.info("{} MQTT messages buffered on disk for client {} will be published after the next start",
+                        spool.size(), clientName);
+            }
+            spool.close();
+        }
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright © 2013-2020, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.mqtt.internal;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import org.seedstack.mqtt.MqttDispatchKeyExtractor;
+
+/**
+ * Executor striping {@link MqttListenerTask}s across single-threaded lanes. The lane of a task is chosen from the hash
+ * of its key (the topic by default), so tasks sharing a key are always executed in submission order while tasks with
+ * different keys run in parallel. The rejected execution handler of the lanes must neither run the task on the
+ * caller thread nor discard queued tasks, as both would break the ordering of the tasks sharing a key.
+ */
+class MqttOrderedExecutor extends AbstractExecutorService {
+    private final ThreadPoolExecutor[] lanes;
+    private volatile MqttDispatchKeyExtractor keyExtractor;
+
+    /**
+     * Default constructor.
+     *
+     * @param laneCount                number of single-threaded lanes.
+     * @param queueSize                capacity of the queue of each lane.
+     * @param rejectedExecutionHandler handler called when the queue of a lane is full.
+     */
+    MqttOrderedExecutor(int laneCount, int queueSize, RejectedExecutionHandler rejectedExecutionHandler) {
+        this.lanes = new ThreadPoolExecutor[Math.max(1, laneCount)];
+        for (int i = 0; i < lanes.length; i++) {
+            lanes[i] = new MqttThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>(queueSize), rejectedExecutionHandler);
+        }
+    }
+
+    void setKeyExtractor(MqttDispatchKeyExtractor keyExtractor) {
+        this.keyExtractor = keyExtractor;
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        laneOf(command).execute(command);
+    }
+
+    @Override
+    public Future<?> submit(Runnable task) {
+        return laneOf(task).submit(task);
+    }
+
+    @Override
+    public void shutdown() {
+        for (ThreadPoolExecutor lane : lanes) {
+            lane.shutdown();
+        }
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        List<Runnable> pending = new ArrayList<>();
+        for (ThreadPoolExecutor lane : lanes) {
+            pending.addAll(lane.shutdownNow());
+        }
+        return pending;
+    }
+
+    @Override
+    public boolean isShutdown() {
+        for (ThreadPoolExecutor lane : lanes) {
+            if (!lane.isShutdown()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean isTerminated() {
+        for (ThreadPoolExecutor lane : lanes) {
+            if (!lane.isTerminated()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for (ThreadPoolExecutor lane : lanes) {
+            if (!lane.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    int[] getQueueDepths() {
+        int[] depths = new int[lanes.length];
+        for (int i = 0; i < lanes.length; i++) {
+            depths[i] = lanes[i].getQueue().size();
+        }
+        return depths;
+    }
+
+    int getActiveCount() {
+        int activeCount = 0;
+        for (ThreadPoolExecutor lane : lanes) {
+            activeCount += lane.getActiveCount();
+        }
+        return activeCount;
+    }
+
+    private ThreadPoolExecutor laneOf(Runnable task) {
+        if (!(task instanceof MqttListenerTask)) {
+            return lanes[0];
+        }
+        MqttListenerTask listenerTask = (MqttListenerTask) task;
+        MqttDispatchKeyExtractor extractor = this.keyExtractor;
+        Object key = extractor != null
+                ? extractor.extractKey(listenerTask.getTopic(), listenerTask.getMessage())
+                : null;
+        if (key == null) {
+            key = listenerTask.getTopic();
+        }
+        int hash = key.hashCode();
+        hash ^= hash >>> 16;
+        return lanes[(hash & Integer.MAX_VALUE) % lanes.length];
+    }
+}
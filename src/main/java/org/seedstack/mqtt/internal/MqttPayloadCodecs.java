@@ -0,0 +1,124 @@
+/*
+ * Copyright © 2013-2020, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.mqtt.internal;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.google.inject.TypeLiteral;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import org.seedstack.mqtt.MqttPayloadCodec;
+import org.seedstack.mqtt.MqttTypedListener;
+
+/**
+ * Built-in {@link MqttPayloadCodec}s, chosen from the payload type of a {@link MqttTypedListener}.
+ */
+final class MqttPayloadCodecs {
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    static final MqttPayloadCodec<byte[]> BYTES = new MqttPayloadCodec<byte[]>() {
+        @Override
+        public byte[] decode(byte[] payload) {
+            return payload;
+        }
+
+        @Override
+        public byte[] encode(byte[] value) {
+            return value;
+        }
+    };
+    static final MqttPayloadCodec<ByteBuffer> BYTE_BUFFER = new MqttPayloadCodec<ByteBuffer>() {
+        @Override
+        public ByteBuffer decode(byte[] payload) {
+            return ByteBuffer.wrap(payload).asReadOnlyBuffer();
+        }
+
+        @Override
+        public byte[] encode(ByteBuffer value) {
+            if (value.hasArray() && value.arrayOffset() == 0 && value.position() == 0
+                    && value.remaining() == value.array().length) {
+                return value.array();
+            }
+            byte[] bytes = new byte[value.remaining()];
+            value.duplicate().get(bytes);
+            return bytes;
+        }
+    };
+    static final MqttPayloadCodec<String> STRING = new MqttPayloadCodec<String>() {
+        @Override
+        public String decode(byte[] payload) {
+            return new String(payload, StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public byte[] encode(String value) {
+            return value.getBytes(StandardCharsets.UTF_8);
+        }
+    };
+
+    private MqttPayloadCodecs() {
+        // no instantiation allowed
+    }
+
+    /**
+     * Resolves the payload type of a typed listener class.
+     *
+     * @param listenerClass a class implementing {@link MqttTypedListener}.
+     * @return the payload type.
+     */
+    static Type resolvePayloadType(Class<?> listenerClass) {
+        Type supertype = TypeLiteral.get(listenerClass).getSupertype(MqttTypedListener.class).getType();
+        if (supertype instanceof ParameterizedType) {
+            return ((ParameterizedType) supertype).getActualTypeArguments()[0];
+        }
+        return byte[].class;
+    }
+
+    /**
+     * Chooses the built-in codec of a payload type.
+     *
+     * @param payloadType the payload type.
+     * @return the codec.
+     */
+    static MqttPayloadCodec<?> forType(Type payloadType) {
+        if (payloadType == byte[].class) {
+            return BYTES;
+        } else if (payloadType == ByteBuffer.class) {
+            return BYTE_BUFFER;
+        } else if (payloadType == String.class) {
+            return STRING;
+        } else {
+            return new JsonCodec<>(payloadType);
+        }
+    }
+
+    /**
+     * JSON codec relying on a reader and a writer created once for the payload type.
+     */
+    static class JsonCodec<T> implements MqttPayloadCodec<T> {
+        private final ObjectReader reader;
+        private final ObjectWriter writer;
+
+        JsonCodec(Type type) {
+            this.reader = OBJECT_MAPPER.readerFor(OBJECT_MAPPER.constructType(type));
+            this.writer = OBJECT_MAPPER.writerFor(OBJECT_MAPPER.constructType(type));
+        }
+
+        @Override
+        public T decode(byte[] payload) throws Exception {
+            return reader.readValue(payload);
+        }
+
+        @Override
+        public byte[] encode(T value) throws Exception {
+            return writer.writeValueAsBytes(value);
+        }
+    }
+}
@@ -17,9 +17,12 @@ import io.nuun.kernel.api.plugin.context.Context;
 import io.nuun.kernel.api.plugin.context.InitContext;
 import io.nuun.kernel.api.plugin.request.ClasspathScanRequest;
 import org.eclipse.paho.client.mqttv3.*;
+import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
+import org.eclipse.paho.client.mqttv3.persist.MqttDefaultFilePersistence;
 import org.seedstack.mqtt.*;
 import org.seedstack.mqtt.spi.MqttClientInfo;
 import org.seedstack.mqtt.spi.MqttInfo;
+import org.seedstack.mqtt.spi.MqttListenerInfo;
 import org.seedstack.mqtt.spi.MqttPoolInfo;
 import org.seedstack.seed.Application;
 import org.seedstack.seed.SeedException;
@@ -27,9 +30,21 @@ import org.seedstack.seed.core.internal.AbstractSeedPlugin;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.*;
 import java.util.Map.Entry;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 /**
@@ -42,6 +57,11 @@ public class MqttPlugin extends AbstractSeedPlugin implements MqttInfo {
     private ConcurrentHashMap<String, MqttClientDefinition> mqttClientDefinitions = new ConcurrentHashMap<>();
     private ConcurrentHashMap<String, IMqttClient> mqttClients = new ConcurrentHashMap<>();
     private ConcurrentHashMap<String, MqttCallbackAdapter> mqttCallbackAdapters = new ConcurrentHashMap<>();
+    private final List<ExecutorService> flushExecutors = new CopyOnWriteArrayList<>();
+    private ScheduledExecutorService scheduler;
+    private ScheduledExecutorService connectionScheduler;
+    private int startupTimeout;
+    private MqttConfig.StartupPolicy startupPolicy;
 
     @Override
     public String name() {
@@ -52,6 +72,7 @@ public class MqttPlugin extends AbstractSeedPlugin implements MqttInfo {
     public Collection<ClasspathScanRequest> classpathScanRequests() {
         return classpathScanRequestBuilder()
                 .predicate(MqttPredicates.MQTT_LISTENER_SPEC)
+                .predicate(MqttPredicates.MQTT_BATCH_LISTENER_SPEC)
                 .predicate(MqttPredicates.MQTT_PUBLISHER_SPEC)
                 .predicate(MqttPredicates.MQTT_REJECT_HANDLER_SPEC)
                 .build();
@@ -63,17 +84,36 @@ public class MqttPlugin extends AbstractSeedPlugin implements MqttInfo {
         MqttConfig mqttConfig = getConfiguration(MqttConfig.class);
 
         if (mqttConfig.isEnabled()) {
+            startupTimeout = mqttConfig.getStartupTimeout();
+            startupPolicy = mqttConfig.getStartupPolicy();
             for (Entry<String, MqttConfig.ClientConfig> clientEntry : mqttConfig.getClients().entrySet()) {
-                mqttClientDefinitions.put(clientEntry.getKey(), new MqttClientDefinition(clientEntry.getValue()));
+                mqttClientDefinitions.put(clientEntry.getKey(), new MqttClientDefinition(clientEntry.getKey(),
+                        clientEntry.getValue()));
             }
 
             configureMqttListeners(initContext.scannedTypesByPredicate()
                     .get(MqttPredicates.MQTT_LISTENER_SPEC));
+            configureMqttBatchListeners(initContext.scannedTypesByPredicate()
+                    .get(MqttPredicates.MQTT_BATCH_LISTENER_SPEC));
             configureMqttPublishers(initContext.scannedTypesByPredicate()
                     .get(MqttPredicates.MQTT_PUBLISHER_SPEC));
             configureMqttRejectHandler(initContext.scannedTypesByPredicate()
                     .get(MqttPredicates.MQTT_REJECT_HANDLER_SPEC));
 
+            scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "mqtt-scheduler");
+                thread.setDaemon(true);
+                return thread;
+            });
+            // the threads bound the number of connect attempts running at the same time
+            AtomicInteger connectionThreadCount = new AtomicInteger();
+            connectionScheduler = Executors.newScheduledThreadPool(
+                    Math.max(1, mqttConfig.getMaxConcurrentConnections()), runnable -> {
+                        Thread thread = new Thread(runnable,
+                                "mqtt-connection-" + connectionThreadCount.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    });
             registerMqttClients();
         } else {
             LOGGER.info("MQTT plugin is disabled by configuration");
@@ -139,10 +179,42 @@ public class MqttPlugin extends AbstractSeedPlugin implements MqttInfo {
             try {
                 LOGGER.debug("Create MqttClient {}", entry.getKey());
                 MqttConfig.ClientConfig clientConfig = clientDefinition.getConfig();
-                IMqttClient mqttClient = new MqttClient(clientConfig.getServerUri(), clientConfig.getClientId());
+                if (!Strings.isNullOrEmpty(clientConfig.getShareGroup())) {
+                    MqttClientUtils.validateShareGroup(clientConfig.getShareGroup(), entry.getKey());
+                }
+                MqttBlockingClient mqttClient = new MqttBlockingClient(clientConfig.getServerUri(),
+                        clientConfig.getClientId(), createPersistence(entry.getKey(), clientConfig));
+                List<MqttBlockingClient> connections = new ArrayList<>();
+                for (int i = 1; i < clientConfig.getConnections(); i++) {
+                    connections.add(new MqttBlockingClient(clientConfig.getServerUri(),
+                            clientConfig.getClientId() + "-" + i, createPersistence(entry.getKey(), clientConfig)));
+                }
+                mqttClient.setConnections(connections, clientConfig.getPublishDistribution());
                 mqttClients.put(entry.getKey(), mqttClient);
                 LOGGER.debug("Create MqttCallback {}", entry.getKey());
                 MqttCallbackAdapter mqttCallbackAdapter = new MqttCallbackAdapter(mqttClient, clientDefinition);
+                mqttCallbackAdapter.setScheduler(scheduler);
+                mqttCallbackAdapter.setConnectionScheduler(connectionScheduler);
+                mqttCallbackAdapter.setConnections(connections);
+                // retries and dead letters must not hold the shared scheduler, even when a full pool runs them
+                mqttCallbackAdapter.setRetryExecutor(createClientExecutor("mqtt-retry-" + entry.getKey()));
+                mqttCallbackAdapter.setBatchExecutor(createClientExecutor("mqtt-batch-" + entry.getKey()));
+                // linger flushes wait for the in-flight window, so they run on their own thread instead of the scheduler
+                ExecutorService flushExecutor = createClientExecutor("mqtt-publish-flush-" + entry.getKey());
+                flushExecutors.add(flushExecutor);
+                MqttAsyncPublisher asyncPublisher = new MqttAsyncPublisher(mqttClient::getAsyncClient, scheduler,
+                        flushExecutor, getMaxPublishInFlight(clientConfig) * (connections.size() + 1));
+                mqttCallbackAdapter.setAsyncPublisher(asyncPublisher);
+                if (clientConfig.getOfflineBufferConfig().isEnabled()) {
+                    MqttOfflineBuffer offlineBuffer = createOfflineBuffer(entry.getKey(),
+                            clientConfig.getOfflineBufferConfig(), mqttClient, asyncPublisher);
+                    mqttClient.setOfflineBuffer(offlineBuffer);
+                    mqttCallbackAdapter.setOfflineBuffer(offlineBuffer);
+                }
+                MqttConfig.ClientConfig.PoolConfig poolConfig = clientConfig.getPoolConfig();
+                if (poolConfig.isEnabled() && poolConfig.getSpoolConfig().isEnabled()) {
+                    mqttCallbackAdapter.setSpool(createSpool(entry.getKey(), poolConfig.getSpoolConfig()));
+                }
                 mqttCallbackAdapters.put(entry.getKey(), mqttCallbackAdapter);
             } catch (MqttException e) {
                 throw SeedException.wrap(e, MqttErrorCode.CANNOT_CREATE_MQTT_CLIENT)
@@ -152,6 +224,84 @@ public class MqttPlugin extends AbstractSeedPlugin implements MqttInfo {
 
     }
 
+    private MqttClientPersistence createPersistence(String clientName, MqttConfig.ClientConfig clientConfig) {
+        MqttConfig.ClientConfig.PersistenceConfig persistenceConfig = clientConfig.getPersistenceConfig();
+        switch (persistenceConfig.getMode()) {
+            case NONE:
+                return new MqttNoPersistence();
+            case MEMORY:
+                return new MemoryPersistence();
+            case MAPPED:
+                return new MqttMappedPersistence(Strings.isNullOrEmpty(persistenceConfig.getDirectory())
+                        ? Paths.get(System.getProperty("java.io.tmpdir"), "seedstack-mqtt-persistence", clientName)
+                        : Paths.get(persistenceConfig.getDirectory()),
+                        persistenceConfig.getSegmentSize(), persistenceConfig.isSync());
+            case FILE:
+            default:
+                return Strings.isNullOrEmpty(persistenceConfig.getDirectory())
+                        ? new MqttDefaultFilePersistence()
+                        : new MqttDefaultFilePersistence(persistenceConfig.getDirectory());
+        }
+    }
+
+    private int getMaxPublishInFlight(MqttConfig.ClientConfig clientConfig) {
+        if (clientConfig.getMaxPublishInFlight() > 0) {
+            return clientConfig.getMaxPublishInFlight();
+        }
+        return clientConfig.getConnectOptions() != null
+                ? clientConfig.getConnectOptions().getMaxInflight()
+                : MqttConnectOptions.MAX_INFLIGHT_DEFAULT;
+    }
+
+    private MqttSpool createSpool(String clientName, MqttConfig.ClientConfig.PoolConfig.SpoolConfig spoolConfig) {
+        Path directory = Strings.isNullOrEmpty(spoolConfig.getDirectory())
+                ? Paths.get(System.getProperty("java.io.tmpdir"), "seedstack-mqtt-spool", clientName)
+                : Paths.get(spoolConfig.getDirectory());
+        if (mqttClientDefinitions.get(clientName).getPoolDefinition().getRejectHandlerClass() != null) {
+            LOGGER.warn("MQTT client {} has an overflow spool, its reject handler is only called when the spool "
+                    + "is full", clientName);
+        }
+        try {
+            return new MqttSpool(directory, spoolConfig.getSegmentSize(), spoolConfig.getMaxDiskUsage());
+        } catch (IOException e) {
+            throw SeedException.wrap(e, MqttErrorCode.CANNOT_OPEN_SPOOL)
+                    .put("client", clientName)
+                    .put("directory", directory);
+        }
+    }
+
+    private MqttOfflineBuffer createOfflineBuffer(String clientName,
+                                                  MqttConfig.ClientConfig.OfflineBufferConfig offlineBufferConfig,
+                                                  MqttBlockingClient mqttClient, MqttAsyncPublisher asyncPublisher) {
+        MqttSpool overflow = null;
+        if (offlineBufferConfig.isOverflow()) {
+            Path directory = Strings.isNullOrEmpty(offlineBufferConfig.getDirectory())
+                    ? Paths.get(System.getProperty("java.io.tmpdir"), "seedstack-mqtt-offline", clientName)
+                    : Paths.get(offlineBufferConfig.getDirectory());
+            try {
+                overflow = new MqttSpool(directory, offlineBufferConfig.getSegmentSize(),
+                        offlineBufferConfig.getMaxDiskUsage());
+            } catch (IOException e) {
+                throw SeedException.wrap(e, MqttErrorCode.CANNOT_OPEN_SPOOL)
+                        .put("client", clientName)
+                        .put("directory", directory);
+            }
+        }
+        // flushes wait for the in-flight window, so they run on their own thread instead of the shared scheduler
+        ExecutorService flushExecutor = createClientExecutor("mqtt-offline-flush-" + clientName);
+        flushExecutors.add(flushExecutor);
+        return new MqttOfflineBuffer(clientName, offlineBufferConfig.getMaxMessages(),
+                offlineBufferConfig.getMaxBytes(), overflow, asyncPublisher, mqttClient::isConnected, flushExecutor);
+    }
+
+    private ExecutorService createClientExecutor(String threadName) {
+        return Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, threadName);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
     private void configureMqttListeners(Collection<Class<?>> listenerCandidates) {
         for (Class<?> candidate : listenerCandidates) {
             @SuppressWarnings("unchecked")
@@ -166,30 +316,20 @@ public class MqttPlugin extends AbstractSeedPlugin implements MqttInfo {
                                 .put("client", client)
                                 .put("listenerName", mqttListenerName);
                     }
-                    String[] qosList = resolveSubstitutes(annotation.qos());
                     String[] topics = resolveSubstitutes(annotation.topics());
-                    if (qosList.length != topics.length) {
-                        throw SeedException.createNew(MqttErrorCode.TOPICS_QOS_NOT_EQUAL)
-                                .put("listenerName", mqttListenerName);
-                    }
-                    int[] qosListSubstitute = new int[qosList.length];
-
-                    for (int i = 0; i < qosList.length; i++) {
-                        try {
-                            qosListSubstitute[i] = Integer.parseInt(qosList[i]);
-                        } catch (NumberFormatException e) {
-                            throw SeedException.wrap(e, MqttErrorCode.INVALID_QOS)
-                                    .put("listenerName", mqttListenerName)
-                                    .put("value", qosList[i]);
-                        }
-                    }
+                    int[] qosListSubstitute = resolveQos(mqttListenerName, annotation.qos(), topics);
                     LOGGER.debug("New MqttListener found: {} for client {} and topicFiler {}",
                             mqttListenerName,
                             client,
                             topics);
 
-                    mqttClientDefinitions.get(client).setListenerDefinition(new MqttListenerDefinition(
-                            mqttListenerClass, mqttListenerName, topics, qosListSubstitute));
+                    MqttListenerDefinition listenerDefinition = new MqttListenerDefinition(
+                            mqttListenerClass, mqttListenerName, topics, qosListSubstitute,
+                            annotation.threadSafe(),
+                            annotation.codec() != MqttPayloadCodec.class ? annotation.codec() : null);
+                    listenerDefinition.setRetryPolicy(createRetryPolicy(annotation));
+                    listenerDefinition.setShareGroup(resolveShareGroup(mqttListenerName, annotation.group()));
+                    mqttClientDefinitions.get(client).addListenerDefinition(listenerDefinition);
                 }
             } else {
                 LOGGER.info("Ignoring listener without configured client: {}", mqttListenerName);
@@ -197,6 +337,77 @@ public class MqttPlugin extends AbstractSeedPlugin implements MqttInfo {
         }
     }
 
+    private MqttRetryPolicy createRetryPolicy(MqttListener annotation) {
+        String deadLetterTopic = application.substituteWithConfiguration(annotation.deadLetterTopic());
+        if (annotation.maxAttempts() <= 1 && Strings.isNullOrEmpty(deadLetterTopic)) {
+            return null;
+        }
+        return new MqttRetryPolicy(annotation.maxAttempts(), annotation.retryDelayMs(), annotation.maxRetryDelayMs(),
+                annotation.retryMultiplier(), annotation.retryJitter(), Strings.emptyToNull(deadLetterTopic));
+    }
+
+    private void configureMqttBatchListeners(Collection<Class<?>> listenerCandidates) {
+        for (Class<?> candidate : listenerCandidates) {
+            @SuppressWarnings("unchecked")
+            Class<? extends MqttBatchCallback> mqttListenerClass = (Class<? extends MqttBatchCallback>) candidate;
+            String mqttListenerName = mqttListenerClass.getCanonicalName();
+            MqttBatchListener annotation = mqttListenerClass.getAnnotation(MqttBatchListener.class);
+            String[] clients = resolveSubstitutes(annotation.clients());
+            if (clients.length > 0) {
+                for (String client : clients) {
+                    if (!mqttClientDefinitions.containsKey(client)) {
+                        throw SeedException.createNew(MqttErrorCode.MQTT_LISTENER_CLIENT_NOT_FOUND)
+                                .put("client", client)
+                                .put("listenerName", mqttListenerName);
+                    }
+                    String[] topics = resolveSubstitutes(annotation.topics());
+                    int[] qosListSubstitute = resolveQos(mqttListenerName, annotation.qos(), topics);
+                    LOGGER.debug("New MqttBatchListener found: {} for client {} and topicFiler {}",
+                            mqttListenerName,
+                            client,
+                            topics);
+
+                    MqttBatchListenerDefinition batchListenerDefinition = new MqttBatchListenerDefinition(
+                            mqttListenerClass, mqttListenerName, topics, qosListSubstitute,
+                            annotation.maxBatchSize(), annotation.maxLatencyMs());
+                    batchListenerDefinition.setShareGroup(resolveShareGroup(mqttListenerName, annotation.group()));
+                    mqttClientDefinitions.get(client).addBatchListenerDefinition(batchListenerDefinition);
+                }
+            } else {
+                LOGGER.info("Ignoring batch listener without configured client: {}", mqttListenerName);
+            }
+        }
+    }
+
+    private String resolveShareGroup(String mqttListenerName, String group) {
+        String shareGroup = application.substituteWithConfiguration(group);
+        if (Strings.isNullOrEmpty(shareGroup)) {
+            return null;
+        }
+        MqttClientUtils.validateShareGroup(shareGroup, mqttListenerName);
+        return shareGroup;
+    }
+
+    private int[] resolveQos(String mqttListenerName, String[] qos, String[] topics) {
+        String[] qosList = resolveSubstitutes(qos);
+        if (qosList.length != topics.length) {
+            throw SeedException.createNew(MqttErrorCode.TOPICS_QOS_NOT_EQUAL)
+                    .put("listenerName", mqttListenerName);
+        }
+        int[] qosListSubstitute = new int[qosList.length];
+
+        for (int i = 0; i < qosList.length; i++) {
+            try {
+                qosListSubstitute[i] = Integer.parseInt(qosList[i]);
+            } catch (NumberFormatException e) {
+                throw SeedException.wrap(e, MqttErrorCode.INVALID_QOS)
+                        .put("listenerName", mqttListenerName)
+                        .put("value", qosList[i]);
+            }
+        }
+        return qosListSubstitute;
+    }
+
     private String[] resolveSubstitutes(String[] values) {
         List<String> result = new ArrayList<>();
         if (values != null) {
@@ -214,27 +425,62 @@ public class MqttPlugin extends AbstractSeedPlugin implements MqttInfo {
 
     @Override
     public void stop() {
+        // stop receiving and let the pools complete the messages they hold before disconnecting the clients
+        for (MqttCallbackAdapter callbackAdapter : mqttCallbackAdapters.values()) {
+            callbackAdapter.startDrain();
+        }
+        for (MqttCallbackAdapter callbackAdapter : mqttCallbackAdapters.values()) {
+            callbackAdapter.awaitDrain();
+        }
+        if (scheduler != null) {
+            scheduler.shutdown();
+        }
+        for (MqttCallbackAdapter callbackAdapter : mqttCallbackAdapters.values()) {
+            if (callbackAdapter.getRetryExecutor() != null) {
+                callbackAdapter.getRetryExecutor().shutdown();
+            }
+            if (callbackAdapter.getBatchExecutor() != null) {
+                callbackAdapter.getBatchExecutor().shutdown();
+            }
+        }
+        for (ExecutorService flushExecutor : flushExecutors) {
+            flushExecutor.shutdown();
+        }
+        if (connectionScheduler != null) {
+            connectionScheduler.shutdownNow();
+        }
         for (Entry<String, IMqttClient> entry : mqttClients.entrySet()) {
-            IMqttClient client = entry.getValue();
-            String clientName = entry.getKey();
-            try {
-                if (client.isConnected()) {
-                    client.disconnect();
+            disconnect(entry.getKey(), entry.getValue());
+            MqttCallbackAdapter callbackAdapter = mqttCallbackAdapters.get(entry.getKey());
+            if (callbackAdapter != null) {
+                for (IMqttClient connection : callbackAdapter.getConnections()) {
+                    disconnect(entry.getKey(), connection);
                 }
-                client.close();
-                LOGGER.debug("Disconect MqttClient {} ", clientName);
-            } catch (MqttException e) {
-                LOGGER.error("Can not disconnect MQTT client: {}", clientName, e);
             }
         }
-        for (MqttClientDefinition clientDefinition : mqttClientDefinitions.values()) {
-            if (clientDefinition.getPoolDefinition().getThreadPoolExecutor() != null) {
-                clientDefinition.getPoolDefinition().getThreadPoolExecutor().shutdown();
+        for (MqttCallbackAdapter callbackAdapter : mqttCallbackAdapters.values()) {
+            if (callbackAdapter.getSpool() != null) {
+                callbackAdapter.getSpool().close();
+            }
+            if (callbackAdapter.getOfflineBuffer() != null) {
+                callbackAdapter.getOfflineBuffer().close();
             }
         }
         super.stop();
     }
 
+    private void disconnect(String clientName, IMqttClient client) {
+        try {
+            if (client.isConnected()) {
+                client.disconnect();
+            }
+            client.close();
+            LOGGER.debug("Disconect MqttClient {} ", clientName);
+        } catch (MqttException e) {
+            LOGGER.error("Can not disconnect MQTT client: {}", clientName, e);
+        }
+    }
+
     @Override
     public Object nativeUnitModule() {
         return new MqttModule(mqttClients, mqttClientDefinitions, mqttCallbackAdapters);
@@ -243,8 +489,67 @@ public class MqttPlugin extends AbstractSeedPlugin implements MqttInfo {
     @Override
     public void start(Context context) {
         super.start(context);
+        long start = System.nanoTime();
+        Map<String, CompletableFuture<Void>> startups = new LinkedHashMap<>();
         for (Entry<String, MqttCallbackAdapter> entry : mqttCallbackAdapters.entrySet()) {
-            entry.getValue().start();
+            startups.put(entry.getKey(), entry.getValue().start());
+        }
+        if (!startups.isEmpty()) {
+            awaitStartup(startups, start);
+        }
+    }
+
+    /**
+     * Waits until the startup timeout for the clients, connected in parallel, then applies the startup policy to the
+     * clients which are not connected.
+     */
+    private void awaitStartup(Map<String, CompletableFuture<Void>> startups, long start) {
+        long deadline = start + TimeUnit.SECONDS.toNanos(startupTimeout);
+        Map<String, Throwable> notConnected = new LinkedHashMap<>();
+        for (Entry<String, CompletableFuture<Void>> entry : startups.entrySet()) {
+            try {
+                entry.getValue().get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            } catch (TimeoutException e) {
+                notConnected.put(entry.getKey(), e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                notConnected.put(entry.getKey(), e);
+            } catch (ExecutionException e) {
+                if (!(e.getCause() instanceof MqttException)) {
+                    // not a connection failure, like a rejected subscription
+                    throw e.getCause() instanceof SeedException
+                            ? (SeedException) e.getCause()
+                            : SeedException.wrap(e.getCause(), MqttErrorCode.CLIENTS_NOT_CONNECTED)
+                            .put("clients", entry.getKey())
+                            .put("timeout", startupTimeout);
+                }
+                notConnected.put(entry.getKey(), e.getCause());
+            }
+        }
+        LOGGER.info("{} of {} MQTT clients connected in {} ms", startups.size() - notConnected.size(),
+                startups.size(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        if (notConnected.isEmpty()) {
+            return;
+        }
+        switch (startupPolicy) {
+            case FAIL:
+                throw SeedException.createNew(MqttErrorCode.CLIENTS_NOT_CONNECTED)
+                        .put("clients", notConnected.keySet())
+                        .put("timeout", startupTimeout);
+            case DEGRADE:
+                for (Entry<String, Throwable> entry : notConnected.entrySet()) {
+                    LOGGER.error("MQTT client {} is not connected at startup and is disabled", entry.getKey(),
+                            entry.getValue());
+                    mqttCallbackAdapters.get(entry.getKey()).stopConnecting();
+                }
+                break;
+            case BACKGROUND:
+            default:
+                for (Entry<String, Throwable> entry : notConnected.entrySet()) {
+                    LOGGER.warn("MQTT client {} is not connected at startup, it keeps connecting in the background",
+                            entry.getKey(), entry.getValue());
+                }
+                break;
         }
     }
 
@@ -253,6 +558,16 @@ public class MqttPlugin extends AbstractSeedPlugin implements MqttInfo {
         return Collections.unmodifiableSet(new HashSet<>(Collections.list(mqttClientDefinitions.keys())));
     }
 
+    @Override
+    public MqttListenerInfo getListenerInfo(String clientName, String listenerName) {
+        MqttCallbackAdapter callbackAdapter = mqttCallbackAdapters.get(clientName);
+        if (callbackAdapter == null) {
+            return null;
+        }
+        MqttListenerMetrics listenerMetrics = callbackAdapter.getListenerMetrics().get(listenerName);
+        return listenerMetrics != null ? listenerMetrics.toListenerInfo() : null;
+    }
+
     @Override
     public MqttClientInfo getClientInfo(String id) {
         MqttClientDefinition mqttClientDefinition = mqttClientDefinitions.get(id);
@@ -261,8 +576,16 @@ public class MqttPlugin extends AbstractSeedPlugin implements MqttInfo {
         mqttClientInfo.setUri(clientConfig.getServerUri());
         mqttClientInfo.setClientId(clientConfig.getClientId());
         mqttClientInfo.setReconnectionInterval(clientConfig.getReconnectionInterval());
-        if (mqttClientDefinition.getListenerDefinition() != null) {
-            mqttClientInfo.setTopicFilters(mqttClientDefinition.getListenerDefinition().getTopicFilter());
+        mqttClientInfo.setConnections(Math.max(1, clientConfig.getConnections()));
+        List<String> topicFilters = new ArrayList<>();
+        for (MqttListenerDefinition listenerDefinition : mqttClientDefinition.getListenerDefinitions()) {
+            topicFilters.addAll(Arrays.asList(listenerDefinition.getTopicFilter()));
+        }
+        for (MqttBatchListenerDefinition batchListenerDefinition : mqttClientDefinition.getBatchListenerDefinitions()) {
+            topicFilters.addAll(Arrays.asList(batchListenerDefinition.getTopicFilter()));
+        }
+        if (!topicFilters.isEmpty()) {
+            mqttClientInfo.setTopicFilters(topicFilters.toArray(new String[topicFilters.size()]));
         }
         MqttConnectOptions mqttConnectOptions = clientConfig.getConnectOptions();
         if (mqttConnectOptions != null) {
@@ -278,6 +601,40 @@ public class MqttPlugin extends AbstractSeedPlugin implements MqttInfo {
         mqttPoolInfo.setQueueSize(poolConfig.getQueueSize());
         mqttPoolInfo.setMaxSize(poolConfig.getMaxSize());
         mqttPoolInfo.setKeepAlive(poolConfig.getKeepAlive());
+        mqttPoolInfo.setMode(poolConfig.getMode().name());
+        mqttPoolInfo.setLaneQueueDepths(mqttClientDefinition.getPoolDefinition().getLaneQueueDepths());
+        mqttPoolInfo.setQueueMode(poolConfig.getQueueMode().name());
+        mqttPoolInfo.setConflatedMessages(mqttClientDefinition.getPoolDefinition().getConflatedCount());
+        MqttCallbackAdapter callbackAdapter = mqttCallbackAdapters.get(id);
+        if (callbackAdapter != null) {
+            mqttClientInfo.setAsyncInFlight(callbackAdapter.getAsyncInFlight());
+            mqttClientInfo.setReconnectionAttempts(callbackAdapter.getReconnectionAttempts());
+            mqttClientInfo.setLastReconnectionTime(callbackAdapter.getLastReconnectionTimeMs());
+            if (callbackAdapter.getAsyncPublisher() != null) {
+                mqttClientInfo.setPublishInFlight(callbackAdapter.getAsyncPublisher().getInFlight());
+            }
+            MqttOfflineBuffer offlineBuffer = callbackAdapter.getOfflineBuffer();
+            if (offlineBuffer != null) {
+                mqttClientInfo.setOfflineBufferedMessages(offlineBuffer.size());
+                mqttClientInfo.setOfflineBufferedBytes(offlineBuffer.getMemoryBytes());
+                mqttClientInfo.setOfflineFlushedMessages(offlineBuffer.getFlushedMessages());
+                mqttClientInfo.setOfflineFlushRate(offlineBuffer.getFlushRate());
+                mqttClientInfo.setOfflineDroppedMessages(offlineBuffer.getDroppedMessages());
+                mqttClientInfo.setOfflineLostMessages(offlineBuffer.getLostMessages());
+            }
+            Map<String, MqttListenerInfo> listenerInfos = new LinkedHashMap<>();
+            for (MqttListenerMetrics listenerMetrics : callbackAdapter.getListenerMetrics().values()) {
+                MqttListenerInfo listenerInfo = listenerMetrics.toListenerInfo();
+                listenerInfos.put(listenerInfo.getListenerName(), listenerInfo);
+            }
+            mqttClientInfo.setListenerInfos(listenerInfos);
+        }
+        if (callbackAdapter != null && callbackAdapter.getFlowController() != null) {
+            mqttPoolInfo.setPendingAcks(callbackAdapter.getFlowController().getPendingAcks());
+        }
+        if (callbackAdapter != null && callbackAdapter.getSpool() != null) {
+            mqttPoolInfo.setSpooledMessages(callbackAdapter.getSpool().size());
+        }
         mqttClientInfo.setMqttPoolInfo(mqttPoolInfo);
 
         return mqttClientInfo;
@@ -11,32 +11,144 @@
 package org.seedstack.mqtt.internal;
 
 import org.seedstack.mqtt.MqttConfig;
+import org.seedstack.mqtt.MqttConfig.ClientConfig.PoolConfig.PoolMode;
+import org.seedstack.mqtt.MqttConfig.ClientConfig.PoolConfig.QueueMode;
+import org.seedstack.mqtt.MqttConfig.ClientConfig.PoolConfig.RejectedExecutionPolicy;
+import org.seedstack.mqtt.MqttDispatchKeyExtractor;
 import org.seedstack.mqtt.MqttRejectedExecutionHandler;
+import org.seedstack.seed.SeedException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.RejectedExecutionHandler;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
 class MqttPoolDefinition {
+    private static final Logger LOGGER = LoggerFactory.getLogger(MqttPoolDefinition.class);
     private String rejectHandlerName;
     private Class<? extends MqttRejectedExecutionHandler> rejectHandlerClass;
-    private ThreadPoolExecutor threadPoolExecutor;
+    private Class<? extends MqttDispatchKeyExtractor> keyExtractorClass;
+    private ExecutorService executorService;
+    private boolean backpressure;
+    private int highWatermark;
+    private int lowWatermark;
+    private int drainTimeout;
+    private RejectedExecutionPolicy rejectedExecutionPolicy;
 
-    MqttPoolDefinition(MqttConfig.ClientConfig.PoolConfig poolConfig) {
+    MqttPoolDefinition(String clientName, MqttConfig.ClientConfig.PoolConfig poolConfig) {
         if (poolConfig.isEnabled()) {
-            this.threadPoolExecutor = new ThreadPoolExecutor(
+            // rejected messages must reach the spool instead of being discarded or run by the caller
+            this.rejectedExecutionPolicy = poolConfig.getSpoolConfig().isEnabled()
+                    ? RejectedExecutionPolicy.ABORT
+                    : poolConfig.getRejectedExecutionPolicy();
+            this.backpressure = poolConfig.isBackpressure();
+            this.drainTimeout = poolConfig.getDrainTimeout();
+            this.highWatermark = poolConfig.getHighWatermark() > 0
+                    ? poolConfig.getHighWatermark()
+                    : Math.max(1, poolConfig.getQueueSize() * 3 / 4);
+            this.lowWatermark = Math.min(highWatermark, poolConfig.getLowWatermark() > 0
+                    ? poolConfig.getLowWatermark()
+                    : poolConfig.getQueueSize() / 4);
+            if (poolConfig.getQueueMode() == QueueMode.CONFLATING && poolConfig.getMode() != PoolMode.STANDARD
+                    && poolConfig.getMode() != PoolMode.VIRTUAL) {
+                LOGGER.warn("The CONFLATING queue mode is not supported by the {} pool mode, messages won't be "
+                        + "conflated", poolConfig.getMode());
+            }
+            switch (poolConfig.getMode()) {
+                case ORDERED:
+                    if (rejectedExecutionPolicy == RejectedExecutionPolicy.CALLER_RUNS
+                            || rejectedExecutionPolicy == RejectedExecutionPolicy.DISCARD_OLDEST) {
+                        // running a task on the caller or dropping a queued one would reorder the tasks of a key
+                        throw SeedException.createNew(MqttErrorCode.INVALID_ORDERED_POOL_POLICY)
+                                .put("policy", rejectedExecutionPolicy);
+                    }
+                    this.executorService = new MqttOrderedExecutor(
+                            poolConfig.getLanes(),
+                            poolConfig.getQueueSize(),
+                            getRejectedExecutionHandler()
+                    );
+                    this.keyExtractorClass = poolConfig.getKeyExtractor();
+                    break;
+                case VIRTUAL:
+                    ExecutorService virtualThreadExecutor = MqttVirtualThreadExecutor.newVirtualThreadPerTaskExecutor();
+                    if (virtualThreadExecutor != null) {
+                        if (poolConfig.getQueueMode() == QueueMode.CONFLATING) {
+                            LOGGER.warn("The CONFLATING queue mode is not supported by the VIRTUAL pool mode, which "
+                                    + "has no queue, messages won't be conflated");
+                        }
+                        this.executorService = new MqttVirtualThreadExecutor(
+                                virtualThreadExecutor,
+                                poolConfig.getMaxSize(),
+                                rejectedExecutionPolicy
+                        );
+                    } else {
+                        LOGGER.warn("Virtual threads are not supported by the running JVM, "
+                                + "falling back to a standard MQTT thread pool");
+                        this.executorService = createThreadPoolExecutor(poolConfig);
+                    }
+                    break;
+                case RING_BUFFER:
+                    this.executorService = new MqttRingBufferExecutor(
+                            "mqtt-ring-buffer-" + clientName,
+                            poolConfig.getQueueSize(),
+                            poolConfig.getMaxSize(),
+                            poolConfig.getWaitStrategy(),
+                            rejectedExecutionPolicy
+                    );
+                    break;
+                case STANDARD:
+                default:
+                    this.executorService = createThreadPoolExecutor(poolConfig);
+                    break;
+            }
+            if (backpressure) {
+                checkBackpressure(clientName, poolConfig);
+            }
+        } else if (poolConfig.isBackpressure()) {
+            LOGGER.warn("Backpressure is ignored for MQTT client {} as its pool is disabled", clientName);
+        }
+    }
+
+    private void checkBackpressure(String clientName, MqttConfig.ClientConfig.PoolConfig poolConfig) {
+        if (rejectedExecutionPolicy == RejectedExecutionPolicy.CALLER_RUNS) {
+            LOGGER.warn("Backpressure of MQTT client {} is defeated by the CALLER_RUNS policy, which runs listeners on "
+                    + "the receiving thread once the pool is full: use the ABORT policy with a spool, or DISCARD",
+                    clientName);
+        }
+        // the queue depth of a VIRTUAL pool is its number of running tasks
+        int capacity = executorService instanceof MqttVirtualThreadExecutor
+                ? poolConfig.getMaxSize()
+                : poolConfig.getQueueSize();
+        if (highWatermark > capacity) {
+            LOGGER.warn("Backpressure of MQTT client {} never engages: its high watermark {} exceeds the capacity {} "
+                    + "of its pool", clientName, highWatermark, capacity);
+        }
+    }
+
+    private ThreadPoolExecutor createThreadPoolExecutor(MqttConfig.ClientConfig.PoolConfig poolConfig) {
+        if (poolConfig.getQueueMode() == QueueMode.CONFLATING) {
+            return new MqttConflatingThreadPoolExecutor(
                     poolConfig.getCoreSize(),
                     poolConfig.getMaxSize(),
-                    poolConfig.getKeepAlive(), TimeUnit.SECONDS,
-                    new ArrayBlockingQueue<>(poolConfig.getQueueSize())
+                    poolConfig.getKeepAlive(),
+                    poolConfig.getQueueSize(),
+                    getRejectedExecutionHandler()
             );
-            threadPoolExecutor.setRejectedExecutionHandler(getRejectedExecutionHandler(poolConfig));
         }
+        return new MqttThreadPoolExecutor(
+                poolConfig.getCoreSize(),
+                poolConfig.getMaxSize(),
+                poolConfig.getKeepAlive(), TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(poolConfig.getQueueSize()),
+                getRejectedExecutionHandler()
+        );
     }
 
-    private RejectedExecutionHandler getRejectedExecutionHandler(MqttConfig.ClientConfig.PoolConfig poolConfig) {
-        switch (poolConfig.getRejectedExecutionPolicy()) {
+    private RejectedExecutionHandler getRejectedExecutionHandler() {
+        switch (rejectedExecutionPolicy) {
             case ABORT:
                 return new ThreadPoolExecutor.AbortPolicy();
             case DISCARD:
@@ -63,7 +175,91 @@ class MqttPoolDefinition {
         return rejectHandlerClass;
     }
 
+    Class<? extends MqttDispatchKeyExtractor> getKeyExtractorClass() {
+        return keyExtractorClass;
+    }
+
+    void setKeyExtractor(MqttDispatchKeyExtractor keyExtractor) {
+        if (executorService instanceof MqttOrderedExecutor) {
+            ((MqttOrderedExecutor) executorService).setKeyExtractor(keyExtractor);
+        }
+    }
+
+    int[] getLaneQueueDepths() {
+        if (executorService instanceof MqttOrderedExecutor) {
+            return ((MqttOrderedExecutor) executorService).getQueueDepths();
+        }
+        return new int[0];
+    }
+
+    /**
+     * @return the number of tasks waiting in the pool (in the fullest lane for ORDERED, the number of running tasks
+     * for VIRTUAL).
+     */
+    int getQueueDepth() {
+        if (executorService instanceof ThreadPoolExecutor) {
+            return ((ThreadPoolExecutor) executorService).getQueue().size();
+        } else if (executorService instanceof MqttOrderedExecutor) {
+            int depth = 0;
+            for (int laneDepth : ((MqttOrderedExecutor) executorService).getQueueDepths()) {
+                depth = Math.max(depth, laneDepth);
+            }
+            return depth;
+        } else if (executorService instanceof MqttRingBufferExecutor) {
+            return ((MqttRingBufferExecutor) executorService).getQueueDepth();
+        } else if (executorService instanceof MqttVirtualThreadExecutor) {
+            return ((MqttVirtualThreadExecutor) executorService).getActiveCount();
+        }
+        return 0;
+    }
+
+    /**
+     * @return the number of tasks currently running in the pool.
+     */
+    int getActiveCount() {
+        if (executorService instanceof ThreadPoolExecutor) {
+            return ((ThreadPoolExecutor) executorService).getActiveCount();
+        } else if (executorService instanceof MqttOrderedExecutor) {
+            return ((MqttOrderedExecutor) executorService).getActiveCount();
+        } else if (executorService instanceof MqttRingBufferExecutor) {
+            return ((MqttRingBufferExecutor) executorService).getActiveCount();
+        } else if (executorService instanceof MqttVirtualThreadExecutor) {
+            return ((MqttVirtualThreadExecutor) executorService).getActiveCount();
+        }
+        return 0;
+    }
+
+    /**
+     * @return the number of queued messages replaced by a newer message on the same topic (CONFLATING queue mode).
+     */
+    long getConflatedCount() {
+        if (executorService instanceof MqttConflatingThreadPoolExecutor) {
+            return ((MqttConflatingThreadPoolExecutor) executorService).getConflatedCount();
+        }
+        return 0;
+    }
+
+    boolean isBackpressure() {
+        return backpressure;
+    }
+
+    int getHighWatermark() {
+        return highWatermark;
+    }
+
+    int getLowWatermark() {
+        return lowWatermark;
+    }
+
+    int getDrainTimeout() {
+        return drainTimeout;
+    }
+
+    ExecutorService getExecutorService() {
+        return executorService;
+    }
+
     ThreadPoolExecutor getThreadPoolExecutor() {
-        return threadPoolExecutor;
+        return executorService instanceof ThreadPoolExecutor ? (ThreadPoolExecutor) executorService : null;
     }
 }
@@ -0,0 +1,31 @@
+/*
+ * Copyright © 2013-2020, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.mqtt.internal;
+
+import java.util.concurrent.FutureTask;
+
+/**
+ * Future task keeping a reference to its runnable, so the message it carries can be recovered when it is still queued:
+ * to compute its conflation key or to hand it over when the pool is shut down before executing it.
+ */
+class MqttPoolTask<T> extends FutureTask<T> {
+    private final Runnable runnable;
+
+    MqttPoolTask(Runnable runnable, T result) {
+        super(runnable, result);
+        this.runnable = runnable;
+    }
+
+    /**
+     * @param task a task submitted to a pool or returned by {@link java.util.concurrent.ExecutorService#shutdownNow()}.
+     * @return the runnable wrapped by the task if it is a {@link MqttPoolTask}, the task itself otherwise.
+     */
+    static Runnable unwrap(Runnable task) {
+        return task instanceof MqttPoolTask ? ((MqttPoolTask<?>) task).runnable : task;
+    }
+}
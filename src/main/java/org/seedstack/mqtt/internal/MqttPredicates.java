@@ -8,6 +8,8 @@
 package org.seedstack.mqtt.internal;
 
 import org.eclipse.paho.client.mqttv3.MqttCallback;
+import org.seedstack.mqtt.MqttBatchCallback;
+import org.seedstack.mqtt.MqttBatchListener;
 import org.seedstack.mqtt.MqttListener;
 import org.seedstack.mqtt.MqttPublishHandler;
 import org.seedstack.mqtt.MqttRejectHandler;
@@ -26,6 +28,12 @@ class MqttPredicates {
             .and(elementAnnotatedWith(MqttListener.class, false));
 
 
+    static final Predicate<Class<?>> MQTT_BATCH_LISTENER_SPEC = classIsAssignableFrom(MqttBatchCallback.class)
+            .and(classIsInterface().negate())
+            .and(classModifierIs(Modifier.ABSTRACT).negate())
+            .and(elementAnnotatedWith(MqttBatchListener.class, false));
+
+
     static final Predicate<Class<?>> MQTT_PUBLISHER_SPEC = classIsAssignableFrom(MqttCallback.class)
             .and(classIsInterface().negate())
             .and(classModifierIs(Modifier.ABSTRACT).negate())
@@ -0,0 +1,51 @@
+/*
+ * Copyright © 2013-2020, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.mqtt.internal;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Exponential backoff with full jitter between the reconnection attempts of a client: the delay before an attempt is
+ * drawn uniformly between zero and a ceiling doubling after each failed attempt, up to a maximum. Spreading the
+ * attempts over the whole range prevents clients which lost their connection together from retrying in lock-step.
+ */
+class MqttReconnectionBackoff {
+    private final long delayMs;
+    private final long maxDelayMs;
+
+    /**
+     * Default constructor.
+     *
+     * @param delayMs    ceiling of the delay before the first attempt.
+     * @param maxDelayMs maximum ceiling of the delay.
+     */
+    MqttReconnectionBackoff(long delayMs, long maxDelayMs) {
+        this.delayMs = Math.max(1, delayMs);
+        this.maxDelayMs = Math.max(this.delayMs, maxDelayMs);
+    }
+
+    /**
+     * @param attempt number of the next attempt, starting at 1.
+     * @return the maximum delay in milliseconds before this attempt.
+     */
+    long ceilingMs(int attempt) {
+        int doublings = Math.max(0, attempt - 1);
+        if (doublings >= Long.numberOfLeadingZeros(delayMs) - 1) {
+            return maxDelayMs;
+        }
+        return Math.min(maxDelayMs, delayMs << doublings);
+    }
+
+    /**
+     * @param attempt number of the next attempt, starting at 1.
+     * @return the delay in milliseconds before this attempt.
+     */
+    long delayMs(int attempt) {
+        return ThreadLocalRandom.current().nextLong(ceilingMs(attempt) + 1);
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright © 2013-2020, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.mqtt.internal;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Retry policy of a listener: maximum number of attempts, exponential backoff with jitter between attempts and
+ * dead-letter topic of messages whose last attempt failed.
+ */
+class MqttRetryPolicy {
+    private final int maxAttempts;
+    private final long delayMs;
+    private final long maxDelayMs;
+    private final double multiplier;
+    private final double jitter;
+    private final String deadLetterTopic;
+
+    /**
+     * Default constructor.
+     *
+     * @param maxAttempts     maximum number of attempts, including the first one.
+     * @param delayMs         delay before the first retry.
+     * @param maxDelayMs      maximum delay between two retries.
+     * @param multiplier      factor applied to the delay after each retry.
+     * @param jitter          ratio of the delay randomly added or removed, between 0 and 1.
+     * @param deadLetterTopic topic of messages whose last attempt failed, null for none.
+     */
+    MqttRetryPolicy(int maxAttempts, long delayMs, long maxDelayMs, double multiplier, double jitter,
+                    String deadLetterTopic) {
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.delayMs = Math.max(0, delayMs);
+        this.maxDelayMs = Math.max(this.delayMs, maxDelayMs);
+        this.multiplier = Math.max(1, multiplier);
+        this.jitter = Math.min(1, Math.max(0, jitter));
+        this.deadLetterTopic = deadLetterTopic;
+    }
+
+    /**
+     * @param attempt number of attempts already made.
+     * @return true if another attempt is allowed.
+     */
+    boolean canRetry(int attempt) {
+        return attempt < maxAttempts;
+    }
+
+    /**
+     * @param attempt number of attempts already made, starting at 1.
+     * @return the delay in milliseconds before the next attempt.
+     */
+    long delayMs(int attempt) {
+        double delay = Math.min(maxDelayMs, delayMs * Math.pow(multiplier, attempt - 1));
+        if (jitter > 0) {
+            delay *= 1 + jitter * (2 * ThreadLocalRandom.current().nextDouble() - 1);
+        }
+        return Math.round(delay);
+    }
+
+    int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    String getDeadLetterTopic() {
+        return deadLetterTopic;
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright © 2013-2020, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.mqtt.internal;
+
+import org.eclipse.paho.client.mqttv3.IMqttDeliveryToken;
+import org.eclipse.paho.client.mqttv3.MqttCallback;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+
+/**
+ * {@link MqttCallback} catching the failures of a listener and handing them to a {@link FailureHandler}, which
+ * schedules a new attempt or gives up, so the calling thread is never held between attempts.
+ */
+class MqttRetryingCallback implements MqttCallback {
+    private final MqttCallback listener;
+    private final int attempt;
+    private final FailureHandler failureHandler;
+
+    /**
+     * Default constructor.
+     *
+     * @param listener       listener to call.
+     * @param attempt        number of the attempt, starting at 1.
+     * @param failureHandler handler of the failures of the listener.
+     */
+    MqttRetryingCallback(MqttCallback listener, int attempt, FailureHandler failureHandler) {
+        this.listener = listener;
+        this.attempt = attempt;
+        this.failureHandler = failureHandler;
+    }
+
+    @Override
+    public void messageArrived(String topic, MqttMessage message) {
+        try {
+            listener.messageArrived(topic, message);
+        } catch (Exception e) {
+            failureHandler.failed(this, topic, message, e);
+        }
+    }
+
+    @Override
+    public void connectionLost(Throwable cause) {
+        listener.connectionLost(cause);
+    }
+
+    @Override
+    public void deliveryComplete(IMqttDeliveryToken token) {
+        listener.deliveryComplete(token);
+    }
+
+    /**
+     * @return a callback calling the same listener for the next attempt.
+     */
+    MqttRetryingCallback nextAttempt() {
+        return new MqttRetryingCallback(listener, attempt + 1, failureHandler);
+    }
+
+    int getAttempt() {
+        return attempt;
+    }
+
+    MqttCallback getListener() {
+        return listener;
+    }
+
+    /**
+     * Handles the failure of an attempt.
+     */
+    @FunctionalInterface
+    interface FailureHandler {
+        void failed(MqttRetryingCallback callback, String topic, MqttMessage message, Exception failure);
+    }
+}
@@ -0,0 +1,345 @@
+/*
+ * Copyright © 2013-2020, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.mqtt.internal;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import org.eclipse.paho.client.mqttv3.MqttCallback;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.seedstack.mqtt.MqttConfig.ClientConfig.PoolConfig.RejectedExecutionPolicy;
+import org.seedstack.mqtt.MqttConfig.ClientConfig.PoolConfig.WaitStrategy;
+import org.seedstack.seed.SeedException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Executor backed by a pre-allocated bounded ring buffer. Each slot carries a sequence number so producers and
+ * consumers only synchronize through CAS operations on their respective cursor, without any lock. Received messages
+ * are written directly in the slots, so no task object is allocated per message. Idle consumers wait according to the
+ * configured {@link WaitStrategy}.
+ */
+class MqttRingBufferExecutor extends AbstractExecutorService {
+    private static final Logger LOGGER = LoggerFactory.getLogger(MqttRingBufferExecutor.class);
+    private static final int SPIN_TRIES = 100;
+    private static final int YIELD_TRIES = 100;
+    private static final long PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+    private final int mask;
+    private final AtomicLongArray sequences;
+    private final MqttCallback[] listeners;
+    private final String[] topics;
+    private final MqttMessage[] messages;
+    private final Runnable[] tasks;
+    private final MqttListenerMetrics[] metrics;
+    private final long[] enqueuedAt;
+    private final AtomicLong producerCursor = new AtomicLong();
+    private final AtomicLong consumerCursor = new AtomicLong();
+    private final Thread[] consumers;
+    private final CountDownLatch terminated;
+    private final WaitStrategy waitStrategy;
+    private final RejectedExecutionPolicy rejectedExecutionPolicy;
+    private volatile boolean started;
+    private volatile boolean shutdown;
+    private volatile boolean stopped;
+
+    /**
+     * Default constructor.
+     *
+     * @param name                    name prefix of the consumer threads.
+     * @param capacity                minimum number of slots, rounded up to the next power of two.
+     * @param consumerCount           number of consumer threads.
+     * @param waitStrategy            how idle consumers wait for new messages.
+     * @param rejectedExecutionPolicy policy applied when the ring buffer is full.
+     */
+    MqttRingBufferExecutor(String name, int capacity, int consumerCount, WaitStrategy waitStrategy,
+                           RejectedExecutionPolicy rejectedExecutionPolicy) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        this.mask = size - 1;
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+        this.listeners = new MqttCallback[size];
+        this.topics = new String[size];
+        this.messages = new MqttMessage[size];
+        this.tasks = new Runnable[size];
+        this.metrics = new MqttListenerMetrics[size];
+        this.enqueuedAt = new long[size];
+        this.waitStrategy = waitStrategy;
+        this.rejectedExecutionPolicy = rejectedExecutionPolicy;
+        this.consumers = new Thread[Math.max(1, consumerCount)];
+        this.terminated = new CountDownLatch(consumers.length);
+        for (int i = 0; i < consumers.length; i++) {
+            consumers[i] = new Thread(this::consume, name + "-" + i);
+            consumers[i].setDaemon(true);
+        }
+    }
+
+    /**
+     * Publishes a received message without allocating a task.
+     *
+     * @param listener listener to call.
+     * @param topic    topic received.
+     * @param message  {@link MqttMessage} received.
+     */
+    void dispatch(MqttCallback listener, String topic, MqttMessage message) {
+        dispatch(listener, topic, message, null);
+    }
+
+    /**
+     * Publishes a received message without allocating a task, recording its queue-wait and execution times.
+     *
+     * @param listener        listener to call.
+     * @param topic           topic received.
+     * @param message         {@link MqttMessage} received.
+     * @param listenerMetrics metrics of the listener, null to record nothing.
+     */
+    void dispatch(MqttCallback listener, String topic, MqttMessage message, MqttListenerMetrics listenerMetrics) {
+        while (!publish(listener, topic, message, null, listenerMetrics)) {
+            if (!reject(listener, topic, message, null)) {
+                return;
+            }
+        }
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        while (!publish(null, null, null, command, null)) {
+            if (!reject(null, null, null, command)) {
+                return;
+            }
+        }
+    }
+
+    private boolean publish(MqttCallback listener, String topic, MqttMessage message, Runnable task,
+                            MqttListenerMetrics listenerMetrics) {
+        if (shutdown) {
+            throw new RejectedExecutionException("MQTT ring buffer executor has been shut down");
+        }
+        if (!started) {
+            startConsumers();
+        }
+        while (true) {
+            long position = producerCursor.get();
+            int index = (int) position & mask;
+            long difference = sequences.get(index) - position;
+            if (difference == 0) {
+                if (producerCursor.compareAndSet(position, position + 1)) {
+                    listeners[index] = listener;
+                    topics[index] = topic;
+                    messages[index] = message;
+                    tasks[index] = task;
+                    metrics[index] = listenerMetrics;
+                    enqueuedAt[index] = listenerMetrics != null ? System.nanoTime() : 0;
+                    sequences.lazySet(index, position + 1);
+                    return true;
+                }
+            } else if (difference < 0) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Applies the rejected execution policy on a full ring buffer.
+     *
+     * @return true if the publication must be retried.
+     */
+    private boolean reject(MqttCallback listener, String topic, MqttMessage message, Runnable task) {
+        switch (rejectedExecutionPolicy) {
+            case ABORT:
+                throw new RejectedExecutionException("MQTT ring buffer is full");
+            case DISCARD:
+                return false;
+            case DISCARD_OLDEST:
+                consumeOne(false);
+                return true;
+            case CALLER_RUNS:
+            default:
+                run(listener, topic, message, task);
+                return false;
+        }
+    }
+
+    private void consume() {
+        try {
+            int idle = 0;
+            while (!stopped) {
+                if (consumeOne(true)) {
+                    idle = 0;
+                } else if (shutdown) {
+                    break;
+                } else {
+                    idle = await(idle);
+                }
+            }
+        } finally {
+            terminated.countDown();
+        }
+    }
+
+    /**
+     * Claims the next slot and runs (or discards) its content.
+     *
+     * @return false if the ring buffer is empty.
+     */
+    private boolean consumeOne(boolean run) {
+        while (true) {
+            long position = consumerCursor.get();
+            int index = (int) position & mask;
+            long difference = sequences.get(index) - (position + 1);
+            if (difference == 0) {
+                if (consumerCursor.compareAndSet(position, position + 1)) {
+                    MqttCallback listener = listeners[index];
+                    String topic = topics[index];
+                    MqttMessage message = messages[index];
+                    Runnable task = tasks[index];
+                    MqttListenerMetrics listenerMetrics = metrics[index];
+                    long enqueued = enqueuedAt[index];
+                    listeners[index] = null;
+                    topics[index] = null;
+                    messages[index] = null;
+                    tasks[index] = null;
+                    metrics[index] = null;
+                    sequences.lazySet(index, position + mask + 1);
+                    if (run) {
+                        if (listenerMetrics != null) {
+                            long start = System.nanoTime();
+                            listenerMetrics.recordQueueWait(start - enqueued);
+                            run(listener, topic, message, task);
+                            listenerMetrics.recordExecution(System.nanoTime() - start);
+                        } else {
+                            run(listener, topic, message, task);
+                        }
+                    }
+                    return true;
+                }
+            } else if (difference < 0) {
+                return false;
+            }
+        }
+    }
+
+    private void run(MqttCallback listener, String topic, MqttMessage message, Runnable task) {
+        try {
+            if (task != null) {
+                task.run();
+            } else {
+                listener.messageArrived(topic, message);
+            }
+        } catch (SeedException e) {
+            LOGGER.error(e.getMessage(), e);
+        } catch (Exception e) {
+            SeedException seedException = SeedException.wrap(e, MqttErrorCode.LISTENER_ERROR)
+                    .put("listenerClass", task != null ? task.getClass().getName() : listener.getClass().getName());
+            LOGGER.error(seedException.getMessage(), seedException);
+        }
+    }
+
+    private int await(int idle) {
+        switch (waitStrategy) {
+            case BUSY_SPIN:
+                break;
+            case YIELD:
+                Thread.yield();
+                break;
+            case PARK:
+            default:
+                if (idle < SPIN_TRIES) {
+                    break;
+                } else if (idle < SPIN_TRIES + YIELD_TRIES) {
+                    Thread.yield();
+                } else {
+                    LockSupport.parkNanos(PARK_NANOS);
+                    return idle;
+                }
+                break;
+        }
+        return idle + 1;
+    }
+
+    private synchronized void startConsumers() {
+        if (!started && !shutdown) {
+            for (Thread consumer : consumers) {
+                consumer.start();
+            }
+            started = true;
+        }
+    }
+
+    /**
+     * @return the number of consumers which have not terminated yet. Once the executor is shut down, consumers exit
+     * as soon as the ring buffer is empty, so this is the number of tasks still running.
+     */
+    int getActiveCount() {
+        return (int) terminated.getCount();
+    }
+
+    int getQueueDepth() {
+        return (int) Math.max(0, producerCursor.get() - consumerCursor.get());
+    }
+
+    @Override
+    protected <T> RunnableFuture<T> newTaskFor(Runnable runnable, T value) {
+        return new MqttPoolTask<>(runnable, value);
+    }
+
+    @Override
+    public synchronized void shutdown() {
+        shutdown = true;
+        if (!started) {
+            stopped = true;
+            while (terminated.getCount() > 0) {
+                terminated.countDown();
+            }
+        }
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        shutdown();
+        stopped = true;
+        List<Runnable> pending = new ArrayList<>();
+        while (true) {
+            long position = consumerCursor.get();
+            int index = (int) position & mask;
+            if (sequences.get(index) != position + 1) {
+                break;
+            }
+            if (consumerCursor.compareAndSet(position, position + 1)) {
+                pending.add(tasks[index] != null
+                        ? tasks[index]
+                        : new MqttListenerTask(listeners[index], topics[index], messages[index], metrics[index]));
+                sequences.lazySet(index, position + mask + 1);
+            }
+        }
+        return pending;
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return shutdown;
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return terminated.getCount() == 0;
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return terminated.await(timeout, unit);
+    }
+}
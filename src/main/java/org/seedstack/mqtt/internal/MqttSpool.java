@@ -0,0 +1,279 @@
+/*
+ * Copyright © 2013-2020, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.mqtt.internal;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Journal of rejected messages stored in memory-mapped segment files of a fixed size. Messages are appended to the
+ * last segment, a new segment being created when it is full, and read back in order from the first one. Segments are
+ * unmapped and deleted once fully read. Each record is written before its length header, so segments left by a
+ * previous run are recovered up to their last complete record when the spool is opened. The length header of a record
+ * is negated once it is read, so records consumed by a previous run are not replayed.
+ * <p>
+ * Record layout: {@code length | listener name | topic | qos | retained | payload}, strings and payload being prefixed
+ * by their length.
+ */
+class MqttSpool implements Closeable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(MqttSpool.class);
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".spool";
+    private static final int HEADER_SIZE = 4;
+    private final Path directory;
+    private final int segmentSize;
+    private final int maxSegments;
+    private final Deque<Segment> segments = new ArrayDeque<>();
+    private long nextSegmentId;
+    private long count;
+
+    /**
+     * Opens the spool, recovering the segments left in the directory.
+     *
+     * @param directory    directory of the segment files, created if needed.
+     * @param segmentSize  size of each segment file in bytes.
+     * @param maxDiskUsage maximum size of all segment files in bytes.
+     * @throws IOException if the directory or a segment cannot be opened.
+     */
+    MqttSpool(Path directory, int segmentSize, long maxDiskUsage) throws IOException {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.maxSegments = (int) Math.max(1, Math.min(Integer.MAX_VALUE, maxDiskUsage / segmentSize));
+        Files.createDirectories(directory);
+        for (long id : listSegmentIds()) {
+            Segment segment = openSegment(id, 0);
+            segment.recover();
+            segments.addLast(segment);
+            count += segment.recordCount;
+            nextSegmentId = id + 1;
+        }
+        if (count > 0) {
+            LOGGER.info("Recovered {} spooled MQTT messages from {}", count, directory);
+        }
+    }
+
+    /**
+     * Appends a message to the spool.
+     *
+     * @param listenerName name of the listener which must receive the message.
+     * @param topic        topic of the message.
+     * @param message      the message.
+     * @return false if the message could not be spooled because the maximum disk usage is reached or it does not fit
+     * in a segment.
+     */
+    synchronized boolean append(String listenerName, String topic, MqttMessage message) {
+        byte[] listenerNameBytes = listenerName.getBytes(StandardCharsets.UTF_8);
+        byte[] topicBytes = topic.getBytes(StandardCharsets.UTF_8);
+        byte[] payload = message.getPayload();
+        int length = 4 + listenerNameBytes.length + 4 + topicBytes.length + 2 + 4 + payload.length;
+        if (HEADER_SIZE + length > segmentSize) {
+            return false;
+        }
+        Segment segment = segments.peekLast();
+        try {
+            if (segment == null || segment.writePosition + HEADER_SIZE + length > segment.buffer.capacity()) {
+                if (segments.size() >= maxSegments) {
+                    return false;
+                }
+                segment = openSegment(nextSegmentId++, segmentSize);
+                segments.addLast(segment);
+            }
+        } catch (IOException e) {
+            LOGGER.error("Cannot create MQTT spool segment in {}", directory, e);
+            return false;
+        }
+        MappedByteBuffer buffer = segment.buffer;
+        int position = segment.writePosition;
+        buffer.position(position + HEADER_SIZE);
+        buffer.putInt(listenerNameBytes.length).put(listenerNameBytes);
+        buffer.putInt(topicBytes.length).put(topicBytes);
+        buffer.put((byte) message.getQos());
+        buffer.put((byte) (message.isRetained() ? 1 : 0));
+        buffer.putInt(payload.length).put(payload);
+        buffer.putInt(position, length);
+        segment.writePosition = position + HEADER_SIZE + length;
+        count++;
+        return true;
+    }
+
+    /**
+     * Reads and removes the oldest spooled message.
+     *
+     * @return the spooled message or null if the spool is empty.
+     */
+    synchronized Record poll() {
+        Segment segment;
+        while ((segment = segments.peekFirst()) != null) {
+            if (segment.readPosition < segment.writePosition) {
+                count--;
+                return segment.read();
+            }
+            segments.removeFirst();
+            segment.delete();
+        }
+        return null;
+    }
+
+    synchronized long size() {
+        return count;
+    }
+
+    @Override
+    public synchronized void close() {
+        for (Segment segment : segments) {
+            segment.close();
+        }
+        segments.clear();
+    }
+
+    private List<Long> listSegmentIds() throws IOException {
+        List<Long> ids = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory,
+                SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path file : files) {
+                String fileName = file.getFileName().toString();
+                try {
+                    ids.add(Long.parseLong(fileName.substring(SEGMENT_PREFIX.length(),
+                            fileName.length() - SEGMENT_SUFFIX.length())));
+                } catch (NumberFormatException e) {
+                    LOGGER.warn("Ignoring unexpected file in MQTT spool directory: {}", file);
+                }
+            }
+        }
+        ids.sort(null);
+        return ids;
+    }
+
+    private Segment openSegment(long id, int size) throws IOException {
+        Path file = directory.resolve(String.format("%s%019d%s", SEGMENT_PREFIX, id, SEGMENT_SUFFIX));
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        try {
+            long mappedSize = size > 0 ? size : channel.size();
+            return new Segment(file, channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, mappedSize));
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * A message read from the spool.
+     */
+    static class Record {
+        private final String listenerName;
+        private final String topic;
+        private final MqttMessage message;
+
+        Record(String listenerName, String topic, MqttMessage message) {
+            this.listenerName = listenerName;
+            this.topic = topic;
+            this.message = message;
+        }
+
+        String getListenerName() {
+            return listenerName;
+        }
+
+        String getTopic() {
+            return topic;
+        }
+
+        MqttMessage getMessage() {
+            return message;
+        }
+    }
+
+    private static class Segment {
+        private final Path file;
+        private final FileChannel channel;
+        private final MappedByteBuffer buffer;
+        private int readPosition;
+        private int writePosition;
+        private long recordCount;
+
+        private Segment(Path file, FileChannel channel, MappedByteBuffer buffer) {
+            this.file = file;
+            this.channel = channel;
+            this.buffer = buffer;
+        }
+
+        private void recover() {
+            int position = 0;
+            int length;
+            while (position + HEADER_SIZE <= buffer.capacity()
+                    && (length = buffer.getInt(position)) != 0
+                    && position + HEADER_SIZE + Math.abs(length) <= buffer.capacity()) {
+                position += HEADER_SIZE + Math.abs(length);
+                if (length < 0) {
+                    readPosition = position;
+                } else {
+                    recordCount++;
+                }
+            }
+            writePosition = position;
+        }
+
+        private Record read() {
+            int length = buffer.getInt(readPosition);
+            buffer.position(readPosition + HEADER_SIZE);
+            String listenerName = readString();
+            String topic = readString();
+            int qos = buffer.get();
+            boolean retained = buffer.get() == 1;
+            byte[] payload = new byte[buffer.getInt()];
+            buffer.get(payload);
+            buffer.putInt(readPosition, -length);
+            readPosition += HEADER_SIZE + length;
+            MqttMessage message = new MqttMessage(payload);
+            message.setQos(qos);
+            message.setRetained(retained);
+            return new Record(listenerName, topic, message);
+        }
+
+        private String readString() {
+            byte[] bytes = new byte[buffer.getInt()];
+            buffer.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        private void close() {
+            buffer.force();
+            MqttMappedBuffers.unmap(buffer);
+            try {
+                channel.close();
+            } catch (IOException e) {
+                LOGGER.warn("Cannot close MQTT spool segment {}", file, e);
+            }
+        }
+
+        private void delete() {
+            MqttMappedBuffers.unmap(buffer);
+            try {
+                channel.close();
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                LOGGER.warn("Cannot delete MQTT spool segment {}", file, e);
+            }
+        }
+    }
+}
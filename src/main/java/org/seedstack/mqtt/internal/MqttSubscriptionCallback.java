@@ -0,0 +1,40 @@
+/*
+ * Copyright © 2013-2020, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.mqtt.internal;
+
+import org.eclipse.paho.client.mqttv3.IMqttDeliveryToken;
+import org.eclipse.paho.client.mqttv3.IMqttMessageListener;
+import org.eclipse.paho.client.mqttv3.MqttCallback;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+
+/**
+ * {@link MqttCallback} wrapping the listener of a subscription made at runtime, so its messages are dispatched like
+ * the messages of a {@link org.seedstack.mqtt.MqttListener}.
+ */
+class MqttSubscriptionCallback implements MqttCallback {
+    private final IMqttMessageListener listener;
+
+    MqttSubscriptionCallback(IMqttMessageListener listener) {
+        this.listener = listener;
+    }
+
+    @Override
+    public void messageArrived(String topic, MqttMessage message) throws Exception {
+        listener.messageArrived(topic, message);
+    }
+
+    @Override
+    public void connectionLost(Throwable cause) {
+        // only messages are delivered to subscription listeners
+    }
+
+    @Override
+    public void deliveryComplete(IMqttDeliveryToken token) {
+        // only messages are delivered to subscription listeners
+    }
+}
@@ -0,0 +1,30 @@
+/*
+ * Copyright © 2013-2020, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.mqtt.internal;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link ThreadPoolExecutor} wrapping submitted tasks in {@link MqttPoolTask}s, so the messages of the tasks returned
+ * by {@link #shutdownNow()} can be recovered.
+ */
+class MqttThreadPoolExecutor extends ThreadPoolExecutor {
+    MqttThreadPoolExecutor(int coreSize, int maxSize, long keepAlive, TimeUnit unit, BlockingQueue<Runnable> queue,
+                           RejectedExecutionHandler rejectedExecutionHandler) {
+        super(coreSize, maxSize, keepAlive, unit, queue, rejectedExecutionHandler);
+    }
+
+    @Override
+    protected <T> RunnableFuture<T> newTaskFor(Runnable runnable, T value) {
+        return new MqttPoolTask<>(runnable, value);
+    }
+}
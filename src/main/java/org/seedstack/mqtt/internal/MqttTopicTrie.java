@@ -0,0 +1,104 @@
+/*
+ * Copyright © 2013-2020, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.mqtt.internal;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Trie of MQTT topic filters, one node per topic level. Matching a topic walks the trie level by level, following the
+ * exact level, the single-level wildcard ({@code +}) and collecting multi-level wildcards ({@code #}), so its cost only
+ * depends on the number of levels of the topic. As required by the MQTT specification, topics starting with
+ * {@code $} are not matched by filters starting with a wildcard.
+ *
+ * @param <T> type of the values associated to topic filters.
+ */
+class MqttTopicTrie<T> {
+    private static final String SINGLE_LEVEL_WILDCARD = "+";
+    private static final String MULTI_LEVEL_WILDCARD = "#";
+    private final Node<T> root = new Node<>();
+
+    /**
+     * Associates a value to a topic filter.
+     *
+     * @param topicFilter the topic filter, possibly containing wildcards.
+     * @param value       the value.
+     */
+    void add(String topicFilter, T value) {
+        Node<T> node = root;
+        int start = 0;
+        while (true) {
+            int end = topicFilter.indexOf('/', start);
+            String level = topicFilter.substring(start, end < 0 ? topicFilter.length() : end);
+            if (MULTI_LEVEL_WILDCARD.equals(level)) {
+                node.multiLevelValues.add(value);
+                return;
+            }
+            node = node.children.computeIfAbsent(level, key -> new Node<>());
+            if (end < 0) {
+                node.values.add(value);
+                return;
+            }
+            start = end + 1;
+        }
+    }
+
+    /**
+     * Finds the values of all topic filters matching a topic. Each value is returned once, even when several of its
+     * topic filters match.
+     *
+     * @param topic the topic name, without wildcard.
+     * @return the matching values, in insertion order of their node.
+     */
+    List<T> match(String topic) {
+        List<T> result = new ArrayList<>(2);
+        collect(root, topic, 0, result);
+        return result;
+    }
+
+    private void collect(Node<T> node, String topic, int start, List<T> result) {
+        boolean wildcardAllowed = start != 0 || !topic.startsWith("$");
+        if (wildcardAllowed) {
+            addAll(node.multiLevelValues, result);
+        }
+        if (start > topic.length()) {
+            addAll(node.values, result);
+            return;
+        }
+        int end = topic.indexOf('/', start);
+        if (end < 0) {
+            end = topic.length();
+        }
+        Node<T> child = node.children.get(topic.substring(start, end));
+        if (child != null) {
+            collect(child, topic, end + 1, result);
+        }
+        if (wildcardAllowed) {
+            Node<T> singleLevel = node.children.get(SINGLE_LEVEL_WILDCARD);
+            if (singleLevel != null) {
+                collect(singleLevel, topic, end + 1, result);
+            }
+        }
+    }
+
+    private void addAll(List<T> values, List<T> result) {
+        for (T value : values) {
+            if (!result.contains(value)) {
+                result.add(value);
+            }
+        }
+    }
+
+    private static class Node<T> {
+        private final Map<String, Node<T>> children = new HashMap<>();
+        private final List<T> values = new ArrayList<>(1);
+        private final List<T> multiLevelValues = new ArrayList<>(1);
+    }
+}
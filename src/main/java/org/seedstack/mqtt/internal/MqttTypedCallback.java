@@ -0,0 +1,49 @@
+/*
+ * Copyright © 2013-2020, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.mqtt.internal;
+
+import org.eclipse.paho.client.mqttv3.IMqttDeliveryToken;
+import org.eclipse.paho.client.mqttv3.MqttCallback;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.seedstack.mqtt.MqttPayloadCodec;
+import org.seedstack.mqtt.MqttTypedListener;
+
+/**
+ * {@link MqttCallback} decoding the payload of received messages before calling a {@link MqttTypedListener}. As it is
+ * called by the listener task, decoding happens on the pool thread when the pool is enabled.
+ *
+ * @param <T> the payload type.
+ */
+class MqttTypedCallback<T> implements MqttCallback {
+    private final MqttTypedListener<T> listener;
+    private final MqttPayloadCodec<T> codec;
+
+    MqttTypedCallback(MqttTypedListener<T> listener, MqttPayloadCodec<T> codec) {
+        this.listener = listener;
+        this.codec = codec;
+    }
+
+    @Override
+    public void messageArrived(String topic, MqttMessage message) throws Exception {
+        listener.onMessage(topic, codec.decode(message.getPayload()), message);
+    }
+
+    @Override
+    public void connectionLost(Throwable cause) {
+        listener.connectionLost(cause);
+    }
+
+    @Override
+    public void deliveryComplete(IMqttDeliveryToken token) {
+        listener.deliveryComplete(token);
+    }
+
+    MqttTypedListener<T> getListener() {
+        return listener;
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright © 2013-2020, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.mqtt.internal;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import org.seedstack.mqtt.MqttConfig.ClientConfig.PoolConfig.RejectedExecutionPolicy;
+
+/**
+ * Executor running each task on its own virtual thread. Concurrency is capped by a semaphore instead of a queue: when
+ * no permit is available the configured {@link RejectedExecutionPolicy} is applied. As nothing is ever queued,
+ * DISCARD_OLDEST behaves like DISCARD.
+ */
+class MqttVirtualThreadExecutor extends AbstractExecutorService {
+    private final ExecutorService delegate;
+    private final Semaphore permits;
+    private final int maxConcurrency;
+    private final RejectedExecutionPolicy rejectedExecutionPolicy;
+
+    /**
+     * Default constructor.
+     *
+     * @param delegate                executor starting a new virtual thread per task.
+     * @param maxConcurrency          maximum number of tasks running at the same time.
+     * @param rejectedExecutionPolicy policy applied when the maximum concurrency is reached.
+     */
+    MqttVirtualThreadExecutor(ExecutorService delegate, int maxConcurrency,
+                              RejectedExecutionPolicy rejectedExecutionPolicy) {
+        this.delegate = delegate;
+        this.maxConcurrency = Math.max(1, maxConcurrency);
+        this.permits = new Semaphore(this.maxConcurrency);
+        this.rejectedExecutionPolicy = rejectedExecutionPolicy;
+    }
+
+    /**
+     * Creates a virtual thread per task executor through reflection, as the add-on still targets Java 8.
+     *
+     * @return the executor or null if the running JVM does not support virtual threads.
+     */
+    static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) method.invoke(null);
+        } catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException e) {
+            // Virtual threads are either missing (JDK < 19) or a disabled preview feature (JDK 19/20)
+            return null;
+        }
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        if (!permits.tryAcquire()) {
+            reject(command);
+            return;
+        }
+        try {
+            delegate.execute(() -> {
+                try {
+                    command.run();
+                } finally {
+                    permits.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    private void reject(Runnable command) {
+        switch (rejectedExecutionPolicy) {
+            case ABORT:
+                throw new RejectedExecutionException("Task " + command + " rejected: all permits are in use");
+            case DISCARD:
+            case DISCARD_OLDEST:
+                break;
+            case CALLER_RUNS:
+            default:
+                if (!isShutdown()) {
+                    command.run();
+                }
+                break;
+        }
+    }
+
+    int getAvailablePermits() {
+        return permits.availablePermits();
+    }
+
+    int getActiveCount() {
+        return maxConcurrency - permits.availablePermits();
+    }
+
+    @Override
+    public void shutdown() {
+        delegate.shutdown();
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        return delegate.shutdownNow();
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return delegate.isShutdown();
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return delegate.isTerminated();
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return delegate.awaitTermination(timeout, unit);
+    }
+}
@@ -7,6 +7,9 @@
  */
 package org.seedstack.mqtt.spi;
 
+import java.util.Collections;
+import java.util.Map;
+
 /**
  * Information related to an Mqtt client. Can be used for monitoring purpose.
  */
@@ -22,6 +25,12 @@ public class MqttClientInfo {
 
     private int reconnectionInterval;
 
+    private int connections;
+
+    private long reconnectionAttempts;
+
+    private long lastReconnectionTime = -1;
+
     private String uri;
 
     private int keepAliveInterval;
@@ -32,6 +41,23 @@ public class MqttClientInfo {
 
     private int connectionTimeout;
 
+    private int asyncInFlight;
+
+    private int publishInFlight;
+
+    private long offlineBufferedMessages;
+
+    private long offlineBufferedBytes;
+
+    private long offlineFlushedMessages;
+
+    private double offlineFlushRate;
+
+    private long offlineDroppedMessages;
+    private long offlineLostMessages;
+
+    private Map<String, MqttListenerInfo> listenerInfos = Collections.emptyMap();
+
     public String getClientId() {
         return clientId;
     }
@@ -76,6 +102,40 @@ public class MqttClientInfo {
         this.reconnectionInterval = reconnectionInterval;
     }
 
+    /**
+     * @return the number of physical connections of the client.
+     */
+    public int getConnections() {
+        return connections;
+    }
+
+    public void setConnections(int connections) {
+        this.connections = connections;
+    }
+
+    /**
+     * @return the number of reconnection attempts of the client.
+     */
+    public long getReconnectionAttempts() {
+        return reconnectionAttempts;
+    }
+
+    public void setReconnectionAttempts(long reconnectionAttempts) {
+        this.reconnectionAttempts = reconnectionAttempts;
+    }
+
+    /**
+     * @return the time in milliseconds the client took to reconnect after its last connection loss, -1 if it never
+     * reconnected.
+     */
+    public long getLastReconnectionTime() {
+        return lastReconnectionTime;
+    }
+
+    public void setLastReconnectionTime(long lastReconnectionTime) {
+        this.lastReconnectionTime = lastReconnectionTime;
+    }
+
     public void setUri(String uri) {
         this.uri = uri;
     }
@@ -115,4 +175,101 @@ public class MqttClientInfo {
     public void setConnectionTimeout(int connectionTimeout) {
         this.connectionTimeout = connectionTimeout;
     }
+
+    public int getAsyncInFlight() {
+        return asyncInFlight;
+    }
+
+    public void setAsyncInFlight(int asyncInFlight) {
+        this.asyncInFlight = asyncInFlight;
+    }
+
+    /**
+     * @return the number of messages published through the {@link org.seedstack.mqtt.MqttPublisher} of the client
+     * and not delivered yet.
+     */
+    public int getPublishInFlight() {
+        return publishInFlight;
+    }
+
+    public void setPublishInFlight(int publishInFlight) {
+        this.publishInFlight = publishInFlight;
+    }
+
+    /**
+     * @return the number of messages held by the offline buffer of the client, in memory and on disk.
+     */
+    public long getOfflineBufferedMessages() {
+        return offlineBufferedMessages;
+    }
+
+    public void setOfflineBufferedMessages(long offlineBufferedMessages) {
+        this.offlineBufferedMessages = offlineBufferedMessages;
+    }
+
+    /**
+     * @return the size of the payloads held in memory by the offline buffer of the client.
+     */
+    public long getOfflineBufferedBytes() {
+        return offlineBufferedBytes;
+    }
+
+    public void setOfflineBufferedBytes(long offlineBufferedBytes) {
+        this.offlineBufferedBytes = offlineBufferedBytes;
+    }
+
+    /**
+     * @return the number of buffered messages published after a reconnection.
+     */
+    public long getOfflineFlushedMessages() {
+        return offlineFlushedMessages;
+    }
+
+    public void setOfflineFlushedMessages(long offlineFlushedMessages) {
+        this.offlineFlushedMessages = offlineFlushedMessages;
+    }
+
+    /**
+     * @return the number of messages per second published by the last flush of the offline buffer.
+     */
+    public double getOfflineFlushRate() {
+        return offlineFlushRate;
+    }
+
+    public void setOfflineFlushRate(double offlineFlushRate) {
+        this.offlineFlushRate = offlineFlushRate;
+    }
+
+    /**
+     * @return the number of messages refused because the offline buffer was full.
+     */
+    public long getOfflineDroppedMessages() {
+        return offlineDroppedMessages;
+    }
+
+    public void setOfflineDroppedMessages(long offlineDroppedMessages) {
+        this.offlineDroppedMessages = offlineDroppedMessages;
+    }
+
+    /**
+     * @return the number of buffered messages that could not be published when the offline buffer was flushed.
+     */
+    public long getOfflineLostMessages() {
+        return offlineLostMessages;
+    }
+
+    public void setOfflineLostMessages(long offlineLostMessages) {
+        this.offlineLostMessages = offlineLostMessages;
+    }
+
+    /**
+     * @return the latencies of the listeners of the client, by listener class name.
+     */
+    public Map<String, MqttListenerInfo> getListenerInfos() {
+        return Collections.unmodifiableMap(listenerInfos);
+    }
+
+    public void setListenerInfos(Map<String, MqttListenerInfo> listenerInfos) {
+        this.listenerInfos = listenerInfos;
+    }
 }
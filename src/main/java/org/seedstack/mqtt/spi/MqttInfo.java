@@ -27,4 +27,16 @@ public interface MqttInfo {
      * @return MqttClientInfo
      */
     MqttClientInfo getClientInfo(String clientName);
+
+    /**
+     * Provides the queue-wait and execution latencies of a listener of a configured client
+     *
+     * @param clientName   a configured client name
+     * @param listenerName the class name of a listener of the client
+     * @return MqttListenerInfo or null if the listener is not registered on the client
+     */
+    default MqttListenerInfo getListenerInfo(String clientName, String listenerName) {
+        MqttClientInfo clientInfo = getClientInfo(clientName);
+        return clientInfo != null ? clientInfo.getListenerInfos().get(listenerName) : null;
+    }
 }
@@ -0,0 +1,47 @@
+/*
+ * Copyright © 2013-2020, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.mqtt.spi;
+
+/**
+ * Latencies of a listener of a Mqtt client. Can be used for monitoring purpose.
+ */
+public class MqttListenerInfo {
+    private String listenerName;
+    private MqttLatencyInfo queueWait;
+    private MqttLatencyInfo execution;
+
+    public String getListenerName() {
+        return listenerName;
+    }
+
+    public void setListenerName(String listenerName) {
+        this.listenerName = listenerName;
+    }
+
+    /**
+     * @return the time spent by messages between their reception and the start of the listener.
+     */
+    public MqttLatencyInfo getQueueWait() {
+        return queueWait;
+    }
+
+    public void setQueueWait(MqttLatencyInfo queueWait) {
+        this.queueWait = queueWait;
+    }
+
+    /**
+     * @return the time spent by the listener processing messages (until completion for asynchronous listeners).
+     */
+    public MqttLatencyInfo getExecution() {
+        return execution;
+    }
+
+    public void setExecution(MqttLatencyInfo execution) {
+        this.execution = execution;
+    }
+}
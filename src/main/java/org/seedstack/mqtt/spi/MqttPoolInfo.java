@@ -12,6 +12,12 @@ public class MqttPoolInfo {
     private int maxSize;
     private int queueSize;
     private int keepAlive;
+    private String mode;
+    private int[] laneQueueDepths;
+    private int pendingAcks;
+    private String queueMode;
+    private long conflatedMessages;
+    private long spooledMessages;
 
     public int getCoreSize() {
         return coreSize;
@@ -44,4 +50,56 @@ public class MqttPoolInfo {
     public void setKeepAlive(int keepAlive) {
         this.keepAlive = keepAlive;
     }
+
+    public String getMode() {
+        return mode;
+    }
+
+    public void setMode(String mode) {
+        this.mode = mode;
+    }
+
+    public int[] getLaneQueueDepths() {
+        if (laneQueueDepths != null) {
+            return laneQueueDepths.clone();
+        } else {
+            return new int[]{};
+        }
+    }
+
+    public void setLaneQueueDepths(int[] laneQueueDepths) {
+        this.laneQueueDepths = laneQueueDepths.clone();
+    }
+
+    public int getPendingAcks() {
+        return pendingAcks;
+    }
+
+    public void setPendingAcks(int pendingAcks) {
+        this.pendingAcks = pendingAcks;
+    }
+
+    public String getQueueMode() {
+        return queueMode;
+    }
+
+    public void setQueueMode(String queueMode) {
+        this.queueMode = queueMode;
+    }
+
+    public long getConflatedMessages() {
+        return conflatedMessages;
+    }
+
+    public void setConflatedMessages(long conflatedMessages) {
+        this.conflatedMessages = conflatedMessages;
+    }
+
+    public long getSpooledMessages() {
+        return spooledMessages;
+    }
+
+    public void setSpooledMessages(long spooledMessages) {
+        this.spooledMessages = spooledMessages;
+    }
 }
@@ -0,0 +1,225 @@
+/*
+ * Copyright © 2013-2020, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.mqtt.internal;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import mockit.Expectations;
+import mockit.Mocked;
+import mockit.Verifications;
+import org.eclipse.paho.client.mqttv3.IMqttActionListener;
+import org.eclipse.paho.client.mqttv3.IMqttAsyncClient;
+import org.eclipse.paho.client.mqttv3.IMqttDeliveryToken;
+import org.eclipse.paho.client.mqttv3.IMqttToken;
+import org.eclipse.paho.client.mqttv3.MqttException;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.junit.Test;
+import org.seedstack.mqtt.MqttBufferedPublisher;
+import org.seedstack.mqtt.MqttOutboundMessage;
+import org.seedstack.mqtt.MqttPublishResult;
+import org.seedstack.mqtt.MqttPublisher;
+
+public class MqttAsyncPublisherTest {
+    @Mocked
+    private IMqttAsyncClient asyncClient;
+    @Mocked
+    private IMqttDeliveryToken deliveryToken;
+    @Mocked
+    private IMqttToken failedToken;
+    @Mocked
+    private ScheduledExecutorService scheduler;
+
+    @Test
+    public void futureIsCompletedOnDelivery() throws Exception {
+        MqttAsyncPublisher publisher = new MqttAsyncPublisher(topic -> asyncClient, scheduler, Runnable::run, 2);
+        CompletableFuture<Void> future = publisher.publishAsync("topic", new byte[]{1}, 1);
+        assertThat(future).isNotDone();
+        assertThat(publisher.getInFlight()).isEqualTo(1);
+
+        Object userContext = capturePublishedContexts().get(0);
+        new Expectations() {
+            {
+                deliveryToken.getUserContext();
+                result = userContext;
+            }
+        };
+        assertThat(publisher.deliveryComplete(deliveryToken)).isTrue();
+        assertThat(future).isCompleted();
+        assertThat(publisher.getInFlight()).isEqualTo(0);
+    }
+
+    @Test
+    public void futureFailsWhenPublishingFails() throws Exception {
+        new Expectations() {
+            {
+                asyncClient.publish(anyString, (MqttMessage) any, any, (IMqttActionListener) any);
+                result = new MqttException(MqttException.REASON_CODE_CLIENT_NOT_CONNECTED);
+            }
+        };
+        MqttAsyncPublisher publisher = new MqttAsyncPublisher(topic -> asyncClient, scheduler, Runnable::run, 2);
+        CompletableFuture<Void> future = publisher.publishAsync("topic", new byte[]{1}, 1);
+        assertThat(future).isCompletedExceptionally();
+        assertThat(publisher.getInFlight()).isEqualTo(0);
+    }
+
+    @Test
+    public void futureFailsWhenDeliveryFails() throws Exception {
+        MqttAsyncPublisher publisher = new MqttAsyncPublisher(topic -> asyncClient, scheduler, Runnable::run, 2);
+        CompletableFuture<Void> future = publisher.publishAsync("topic", new byte[]{1}, 1);
+        List<Object> userContexts = new ArrayList<>();
+        List<IMqttActionListener> listeners = new ArrayList<>();
+        new Verifications() {
+            {
+                asyncClient.publish("topic", (MqttMessage) any, withCapture(userContexts), withCapture(listeners));
+            }
+        };
+        new Expectations() {
+            {
+                failedToken.getUserContext();
+                result = userContexts.get(0);
+            }
+        };
+        listeners.get(0).onFailure(failedToken, new MqttException(MqttException.REASON_CODE_CONNECTION_LOST));
+        assertThat(future).isCompletedExceptionally();
+        assertThat(publisher.getInFlight()).isEqualTo(0);
+    }
+
+    @Test
+    public void foreignTokensAreIgnored() {
+        MqttAsyncPublisher publisher = new MqttAsyncPublisher(topic -> asyncClient, scheduler, Runnable::run, 2);
+        assertThat(publisher.deliveryComplete(deliveryToken)).isFalse();
+        assertThat(publisher.deliveryComplete(null)).isFalse();
+    }
+
+    @Test
+    public void publishAllReportsEachMessageInOrder() throws Exception {
+        MqttAsyncPublisher publisher = new MqttAsyncPublisher(topic -> asyncClient, scheduler, Runnable::run, 4);
+        MqttOutboundMessage first = new MqttOutboundMessage("topic", new byte[]{1}, 1);
+        MqttOutboundMessage second = new MqttOutboundMessage("topic", new byte[]{2}, 1);
+        CompletableFuture<List<MqttPublishResult>> future = publisher.publishAll(Arrays.asList(first, second));
+        assertThat(publisher.getInFlight()).isEqualTo(2);
+
+        List<Object> userContexts = new ArrayList<>();
+        List<IMqttActionListener> listeners = new ArrayList<>();
+        new Verifications() {
+            {
+                asyncClient.publish("topic", (MqttMessage) any, withCapture(userContexts), withCapture(listeners));
+                times = 2;
+            }
+        };
+        new Expectations() {
+            {
+                deliveryToken.getUserContext();
+                result = userContexts.get(0);
+                failedToken.getUserContext();
+                result = userContexts.get(1);
+            }
+        };
+        publisher.deliveryComplete(deliveryToken);
+        assertThat(future).isNotDone();
+        listeners.get(1).onFailure(failedToken, new MqttException(MqttException.REASON_CODE_CONNECTION_LOST));
+
+        List<MqttPublishResult> results = future.get();
+        assertThat(results).hasSize(2);
+        assertThat(results.get(0).getMessage()).isSameAs(first);
+        assertThat(results.get(0).isSuccess()).isTrue();
+        assertThat(results.get(1).getMessage()).isSameAs(second);
+        assertThat(results.get(1).isSuccess()).isFalse();
+        assertThat(results.get(1).getFailure()).isInstanceOf(MqttException.class);
+        assertThat(publisher.getInFlight()).isEqualTo(0);
+    }
+
+    @Test
+    public void bufferedPublisherFlushesFullBatches() throws Exception {
+        MqttAsyncPublisher publisher = new MqttAsyncPublisher(topic -> asyncClient, scheduler, Runnable::run, 4);
+        MqttBufferedPublisher bufferedPublisher = publisher.buffered(2, 1000);
+        CompletableFuture<Void> first = bufferedPublisher.publish(new MqttOutboundMessage("topic", new byte[]{1}, 1));
+        new Verifications() {
+            {
+                asyncClient.publish(anyString, (MqttMessage) any, any, (IMqttActionListener) any);
+                times = 0;
+            }
+        };
+        CompletableFuture<Void> second = bufferedPublisher.publish(new MqttOutboundMessage("topic", new byte[]{2}, 1));
+        List<Object> userContexts = capturePublishedContexts();
+        assertThat(userContexts).hasSize(2);
+        new Expectations() {
+            {
+                deliveryToken.getUserContext();
+                returns(userContexts.get(0), userContexts.get(1));
+            }
+        };
+        publisher.deliveryComplete(deliveryToken);
+        publisher.deliveryComplete(deliveryToken);
+        assertThat(first).isCompleted();
+        assertThat(second).isCompleted();
+
+        bufferedPublisher.close();
+        assertThat(bufferedPublisher.publish(new MqttOutboundMessage("topic", new byte[]{3}, 1)))
+                .isCompletedExceptionally();
+    }
+
+    @Test
+    public void bufferedPublisherFlushesExpiredBatchesOnFlushExecutor() throws Exception {
+        List<Runnable> flushes = new ArrayList<>();
+        MqttAsyncPublisher publisher = new MqttAsyncPublisher(topic -> asyncClient, scheduler, flushes::add, 4);
+        MqttBufferedPublisher bufferedPublisher = publisher.buffered(2, 1000);
+        bufferedPublisher.publish(new MqttOutboundMessage("topic", new byte[]{1}, 1));
+        List<Runnable> expirations = new ArrayList<>();
+        new Verifications() {
+            {
+                scheduler.schedule(withCapture(expirations), 1000L, TimeUnit.MILLISECONDS);
+            }
+        };
+        expirations.get(0).run();
+        new Verifications() {
+            {
+                // the scheduler never waits for the in-flight window
+                asyncClient.publish(anyString, (MqttMessage) any, any, (IMqttActionListener) any);
+                times = 0;
+            }
+        };
+
+        assertThat(flushes).hasSize(1);
+        flushes.get(0).run();
+        assertThat(capturePublishedContexts()).hasSize(1);
+    }
+
+    @Test
+    public void bufferedMessagesFailWhenPublicationFails(@Mocked MqttPublisher failingPublisher) {
+        CompletableFuture<List<MqttPublishResult>> failure = new CompletableFuture<>();
+        failure.completeExceptionally(new IllegalStateException("publication failed"));
+        new Expectations() {
+            {
+                failingPublisher.publishAll((Collection<MqttOutboundMessage>) any);
+                result = failure;
+            }
+        };
+        MqttBatchingPublisher bufferedPublisher = new MqttBatchingPublisher(failingPublisher, scheduler, Runnable::run,
+                1, 1000);
+        assertThat(bufferedPublisher.publish(new MqttOutboundMessage("topic", new byte[]{1}, 1)))
+                .isCompletedExceptionally();
+    }
+
+    private List<Object> capturePublishedContexts() throws Exception {
+        List<Object> userContexts = new ArrayList<>();
+        new Verifications() {
+            {
+                asyncClient.publish("topic", (MqttMessage) any, withCapture(userContexts), (IMqttActionListener) any);
+            }
+        };
+        return userContexts;
+    }
+}
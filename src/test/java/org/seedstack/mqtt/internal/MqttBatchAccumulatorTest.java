@@ -0,0 +1,75 @@
+/*
+ * Copyright © 2013-2020, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.mqtt.internal;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.seedstack.mqtt.MqttReceivedMessage;
+
+public class MqttBatchAccumulatorTest {
+    private ScheduledExecutorService scheduler;
+    private List<List<MqttReceivedMessage>> batches;
+
+    @Before
+    public void setUp() {
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+        batches = new CopyOnWriteArrayList<>();
+    }
+
+    @After
+    public void tearDown() {
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    public void testFlushWhenFull() {
+        MqttBatchAccumulator<MqttReceivedMessage> accumulator = new MqttBatchAccumulator<>(3, 60000, scheduler, batches::add);
+        for (int i = 0; i < 7; i++) {
+            accumulator.add(new MqttReceivedMessage("topic" + i, new MqttMessage()));
+        }
+        assertThat(batches).hasSize(2);
+        assertThat(batches.get(0)).extracting(MqttReceivedMessage::getTopic)
+                .containsExactly("topic0", "topic1", "topic2");
+        assertThat(batches.get(1)).extracting(MqttReceivedMessage::getTopic)
+                .containsExactly("topic3", "topic4", "topic5");
+
+        accumulator.flush();
+        assertThat(batches).hasSize(3);
+        assertThat(batches.get(2)).extracting(MqttReceivedMessage::getTopic).containsExactly("topic6");
+    }
+
+    @Test
+    public void testFlushWhenLatencyExpires() throws Exception {
+        MqttBatchAccumulator<MqttReceivedMessage> accumulator = new MqttBatchAccumulator<>(100, 50, scheduler, batches::add);
+        accumulator.add(new MqttReceivedMessage("topic", new MqttMessage()));
+        accumulator.add(new MqttReceivedMessage("topic", new MqttMessage()));
+        assertThat(batches).isEmpty();
+
+        long deadline = System.currentTimeMillis() + 2000;
+        while (batches.isEmpty() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(batches).hasSize(1);
+        assertThat(batches.get(0)).hasSize(2);
+    }
+
+    @Test
+    public void testFlushEmpty() {
+        MqttBatchAccumulator<MqttReceivedMessage> accumulator = new MqttBatchAccumulator<>(10, 50, scheduler, batches::add);
+        accumulator.flush();
+        assertThat(batches).isEmpty();
+    }
+}
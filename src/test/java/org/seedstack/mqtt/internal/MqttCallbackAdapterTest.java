@@ -13,26 +13,38 @@ package org.seedstack.mqtt.internal;
 
 import com.google.inject.Injector;
 import com.google.inject.Key;
-import java.util.Timer;
-import java.util.TimerTask;
+import com.google.inject.Provider;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import mockit.Deencapsulation;
+import mockit.Delegate;
 import mockit.Expectations;
-import mockit.Invocation;
-import mockit.Mock;
-import mockit.MockUp;
 import mockit.Mocked;
 import mockit.Verifications;
 import org.eclipse.paho.client.mqttv3.IMqttClient;
 import org.eclipse.paho.client.mqttv3.IMqttDeliveryToken;
 import org.eclipse.paho.client.mqttv3.MqttCallback;
+import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
 import org.eclipse.paho.client.mqttv3.MqttException;
 import org.eclipse.paho.client.mqttv3.MqttMessage;
 import org.eclipse.paho.client.mqttv3.MqttSecurityException;
+import org.assertj.core.api.Assertions;
 import org.junit.Test;
+import org.seedstack.mqtt.AsyncMqttListener;
 import org.seedstack.mqtt.MqttConfig;
 import org.seedstack.mqtt.MqttRejectedExecutionHandler;
+import org.seedstack.mqtt.MqttSubscriptionManager;
+import org.seedstack.mqtt.MqttTypedListener;
 import org.seedstack.seed.SeedException;
 
 public class MqttCallbackAdapterTest {
@@ -73,7 +85,7 @@ public class MqttCallbackAdapterTest {
 
         new Verifications() {
             {
-                mqttClient.connect();
+                mqttClient.connectWithResult((MqttConnectOptions) any);
                 times = 0;
             }
         };
@@ -98,7 +110,7 @@ public class MqttCallbackAdapterTest {
 
         new Verifications() {
             {
-                injector.getInstance((Key) any);
+                injector.getProvider((Key) any);
                 times = 0;
             }
         };
@@ -111,7 +123,7 @@ public class MqttCallbackAdapterTest {
         MqttCallbackAdapter callbackAdapter = new MqttCallbackAdapter(mqttClient, clientDefinition);
         Deencapsulation.setField(callbackAdapter, "injector", injector);
 
-        callbackAdapter.setListenerKey(listenerKey);
+        callbackAdapter.addListenerKey(createListenerDefinition(), listenerKey);
         callbackAdapter.setPublisherKey(publisherKey);
 
         new Expectations() {
@@ -119,21 +131,22 @@ public class MqttCallbackAdapterTest {
                 mqttClient.getClientId();
                 result = clientDefinition.getConfig().getClientId();
 
-                injector.getInstance(listenerKey);
-                result = listener;
+                injector.getProvider(listenerKey);
+                result = (Provider<?>) () -> listener;
 
-                injector.getInstance(publisherKey);
-                result = publisher;
+                injector.getProvider(publisherKey);
+                result = (Provider<?>) () -> publisher;
 
             }
         };
 
         final Throwable cause = new RuntimeException("Fake exception");
+        callbackAdapter.resolveProviders();
         callbackAdapter.connectionLost(cause);
 
         new Verifications() {
             {
-                mqttClient.connect();
+                mqttClient.connectWithResult((MqttConnectOptions) any);
                 times = 0;
 
                 publisher.connectionLost(cause);
@@ -146,16 +159,19 @@ public class MqttCallbackAdapterTest {
 
     @SuppressWarnings("static-access")
     @Test
-    public void testConnectionLostWithReconnection(@Mocked final MqttClientUtils mqttClientUtils) throws Exception {
+    public void testConnectionLostWithReconnection(@Mocked final MqttClientUtils mqttClientUtils,
+                                                   @Mocked final ScheduledExecutorService connectionScheduler)
+            throws Exception {
         final MqttClientDefinition clientDefinition = new MqttClientDefinition(createClientConfig()
                 .setReconnectionMode(MqttConfig.ClientConfig.ReconnectionMode.ALWAYS)
                 .setReconnectionInterval(1)
         );
         MqttCallbackAdapter callbackAdapter = new MqttCallbackAdapter(mqttClient, clientDefinition);
+        callbackAdapter.setConnectionScheduler(connectionScheduler);
 
         final MqttListenerDefinition listenerDefinition = new MqttListenerDefinition(listener.getClass(), "clazz",
                 new String[]{"topic"}, new int[]{0});
-        clientDefinition.setListenerDefinition(listenerDefinition);
+        clientDefinition.addListenerDefinition(listenerDefinition);
         new Expectations() {
             {
                 mqttClient.getClientId();
@@ -163,27 +179,253 @@ public class MqttCallbackAdapterTest {
 
             }
         };
+        List<Runnable> attempts = new ArrayList<>();
+        List<Long> delays = new ArrayList<>();
+        recordReconnectionAttempts(connectionScheduler, attempts, delays);
+
+        callbackAdapter.connectionLost(new RuntimeException("Fake exception"));
+        Assertions.assertThat(attempts).hasSize(1);
+        Assertions.assertThat(delays.get(0)).isBetween(0L, 1000L);
+        attempts.get(0).run();
+
+        new Verifications() {
+            {
+                mqttClientUtils.connect(mqttClient, clientDefinition);
+                times = 1;
+
+                mqttClientUtils.subscribe(mqttClient, (String[]) any, listenerDefinition.getQos(), 100);
+                times = 1;
+            }
+        };
+        Assertions.assertThat(attempts).hasSize(1);
+        Assertions.assertThat(callbackAdapter.getReconnectionAttempts()).isEqualTo(1);
+        Assertions.assertThat(callbackAdapter.getLastReconnectionTimeMs()).isGreaterThanOrEqualTo(0);
+    }
 
-        final MockUp<Timer> timerMock = new MockUp<Timer>() {
-            @Mock
-            public void scheduleAtFixedRate(Invocation inv, TimerTask task, long delay, long period) {
-                inv.proceed(task, 0, 10000);
+    @SuppressWarnings("static-access")
+    @Test
+    public void testReconnectionToPresentSessionDoesNotSubscribeAgain(
+            @Mocked final MqttClientUtils mqttClientUtils,
+            @Mocked final ScheduledExecutorService connectionScheduler) throws Exception {
+        final MqttClientDefinition clientDefinition = new MqttClientDefinition(createClientConfig()
+                .setReconnectionMode(MqttConfig.ClientConfig.ReconnectionMode.ALWAYS)
+                .setReconnectionInterval(1)
+        );
+        MqttCallbackAdapter callbackAdapter = new MqttCallbackAdapter(mqttClient, clientDefinition);
+        callbackAdapter.setConnectionScheduler(connectionScheduler);
+        clientDefinition.addListenerDefinition(new MqttListenerDefinition(listener.getClass(), "clazz",
+                new String[]{"topic"}, new int[]{1}));
+        new Expectations() {
+            {
+                mqttClientUtils.connect(mqttClient, clientDefinition);
+                result = true;
             }
         };
+        List<Runnable> attempts = new ArrayList<>();
+        recordReconnectionAttempts(connectionScheduler, attempts, new ArrayList<>());
+
         callbackAdapter.connectionLost(new RuntimeException("Fake exception"));
+        attempts.get(0).run();
+        callbackAdapter.connectionLost(new RuntimeException("Fake exception"));
+        attempts.get(1).run();
+
+        new Verifications() {
+            {
+                mqttClientUtils.connect(mqttClient, clientDefinition);
+                times = 2;
+
+                mqttClientUtils.subscribe(mqttClient, (String[]) any, (int[]) any, anyInt);
+                times = 1;
+            }
+        };
+    }
+
+    @SuppressWarnings("static-access")
+    @Test
+    public void testSubscriptionFailureResubscribesWithoutReconnecting(
+            @Mocked final MqttClientUtils mqttClientUtils,
+            @Mocked final ScheduledExecutorService connectionScheduler) throws Exception {
+        final MqttClientDefinition clientDefinition = new MqttClientDefinition(createClientConfig()
+                .setReconnectionMode(MqttConfig.ClientConfig.ReconnectionMode.ALWAYS)
+                .setReconnectionInterval(1)
+        );
+        MqttCallbackAdapter callbackAdapter = new MqttCallbackAdapter(mqttClient, clientDefinition);
+        callbackAdapter.setConnectionScheduler(connectionScheduler);
+        clientDefinition.addListenerDefinition(new MqttListenerDefinition(listener.getClass(), "clazz",
+                new String[]{"topic"}, new int[]{1}));
+        new Expectations() {
+            {
+                mqttClientUtils.subscribe(mqttClient, (String[]) any, (int[]) any, anyInt);
+                result = new MqttException(MqttException.REASON_CODE_CLIENT_TIMEOUT);
+                result = null;
 
-        // Just wait for timer execution
-        Thread.sleep(100);
+                mqttClient.isConnected();
+                result = true;
+            }
+        };
+        List<Runnable> attempts = new ArrayList<>();
+        recordReconnectionAttempts(connectionScheduler, attempts, new ArrayList<>());
+
+        callbackAdapter.connectionLost(new RuntimeException("Fake exception"));
+        attempts.get(0).run();
+        Assertions.assertThat(attempts).hasSize(2);
+        attempts.get(1).run();
+        Assertions.assertThat(attempts).hasSize(2);
 
         new Verifications() {
             {
                 mqttClientUtils.connect(mqttClient, clientDefinition);
                 times = 1;
 
-                mqttClientUtils.subscribe(mqttClient, listenerDefinition);
+                mqttClientUtils.subscribe(mqttClient, (String[]) any, (int[]) any, anyInt);
+                times = 2;
+            }
+        };
+    }
+
+    @SuppressWarnings("static-access")
+    @Test
+    public void testUnexpectedReconnectionFailureSchedulesNextAttempt(
+            @Mocked final MqttClientUtils mqttClientUtils,
+            @Mocked final ScheduledExecutorService connectionScheduler) throws Exception {
+        final MqttClientDefinition clientDefinition = new MqttClientDefinition(createClientConfig()
+                .setReconnectionMode(MqttConfig.ClientConfig.ReconnectionMode.ALWAYS)
+                .setReconnectionInterval(1)
+        );
+        MqttCallbackAdapter callbackAdapter = new MqttCallbackAdapter(mqttClient, clientDefinition);
+        callbackAdapter.setConnectionScheduler(connectionScheduler);
+        new Expectations() {
+            {
+                mqttClientUtils.connect(mqttClient, clientDefinition);
+                result = new IllegalStateException("Fake failure");
+            }
+        };
+        List<Runnable> attempts = new ArrayList<>();
+        recordReconnectionAttempts(connectionScheduler, attempts, new ArrayList<>());
+
+        callbackAdapter.connectionLost(new RuntimeException("Fake exception"));
+        attempts.get(0).run();
+        Assertions.assertThat(attempts).hasSize(2);
+        Assertions.assertThat(callbackAdapter.getReconnectionAttempts()).isEqualTo(1);
+    }
+
+    @Test
+    public void testSubscriptionMadeAtRuntimeIsRoutedAndSubscribed() throws Exception {
+        MqttClientDefinition clientDefinition = new MqttClientDefinition(createClientConfig());
+        MqttCallbackAdapter callbackAdapter = new MqttCallbackAdapter(mqttClient, clientDefinition);
+        callbackAdapter.resolveProviders();
+        new Expectations() {
+            {
+                mqttClient.isConnected();
+                result = true;
+            }
+        };
+        List<String> received = new ArrayList<>();
+        MqttSubscriptionManager subscriptionManager = callbackAdapter.getSubscriptionManager();
+
+        subscriptionManager.subscribe("devices/+/state", 1, (topic, message) -> received.add(topic));
+        callbackAdapter.messageArrived("devices/1/state", new MqttMessage());
+        Assertions.assertThat(received).containsExactly("devices/1/state");
+        Assertions.assertThat(subscriptionManager.getSubscriptions()).containsEntry("devices/+/state", 1);
+        Assertions.assertThat(callbackAdapter.getListenerMetrics()).containsKey("subscription:devices/+/state");
+
+        subscriptionManager.unsubscribe("devices/+/state");
+        callbackAdapter.messageArrived("devices/2/state", new MqttMessage());
+        Assertions.assertThat(received).containsExactly("devices/1/state");
+        Assertions.assertThat(subscriptionManager.getSubscriptions()).isEmpty();
+
+        new Verifications() {
+            {
+                mqttClient.subscribe(new String[]{"devices/+/state"}, new int[]{1});
+                times = 1;
+
+                mqttClient.unsubscribe(new String[]{"devices/+/state"});
+                times = 1;
+            }
+        };
+    }
+
+    @Test
+    public void testSharedSubscriptionsAreRoutedWithoutSharePrefix(
+            @Mocked final ScheduledExecutorService connectionScheduler) throws Exception {
+        MqttClientDefinition clientDefinition = new MqttClientDefinition(createClientConfig()
+                .setReconnectionMode(MqttConfig.ClientConfig.ReconnectionMode.ALWAYS)
+                .setShareGroup("consumers")
+        );
+        MqttListenerDefinition groupedListenerDefinition = new MqttListenerDefinition(listener.getClass(), "grouped",
+                new String[]{"sensors/+/temperature"}, new int[]{1});
+        groupedListenerDefinition.setShareGroup("workers");
+        clientDefinition.addListenerDefinition(groupedListenerDefinition);
+        MqttCallbackAdapter callbackAdapter = new MqttCallbackAdapter(mqttClient, clientDefinition);
+        callbackAdapter.setConnectionScheduler(connectionScheduler);
+        Deencapsulation.setField(callbackAdapter, "injector", injector);
+        callbackAdapter.addListenerKey(groupedListenerDefinition, listenerKey);
+        new Expectations() {
+            {
+                injector.getProvider(listenerKey);
+                result = (Provider<?>) () -> listener;
+            }
+        };
+        callbackAdapter.resolveProviders();
+        List<Runnable> attempts = new ArrayList<>();
+        recordReconnectionAttempts(connectionScheduler, attempts, new ArrayList<>());
+        List<String> received = new ArrayList<>();
+        callbackAdapter.getSubscriptionManager().subscribe("alerts/#", 0, (topic, message) -> received.add(topic));
+        callbackAdapter.getSubscriptionManager().subscribe("$share/ops/events/#", 1,
+                (topic, message) -> received.add(topic));
+
+        callbackAdapter.connectionLost(new RuntimeException("Fake exception"));
+        attempts.get(0).run();
+        new Verifications() {
+            {
+                mqttClient.subscribe(new String[]{"$share/workers/sensors/+/temperature"}, new int[]{1});
+                times = 1;
+
+                mqttClient.subscribe(new String[]{"$share/consumers/alerts/#", "$share/ops/events/#"},
+                        new int[]{0, 1});
+                times = 1;
+            }
+        };
+
+        callbackAdapter.messageArrived("sensors/1/temperature", new MqttMessage());
+        callbackAdapter.messageArrived("alerts/fire", new MqttMessage());
+        callbackAdapter.messageArrived("events/start", new MqttMessage());
+        Assertions.assertThat(received).containsExactly("alerts/fire", "events/start");
+        new Verifications() {
+            {
+                listener.messageArrived("sensors/1/temperature", (MqttMessage) any);
                 times = 1;
+            }
+        };
+    }
+
+    @Test
+    public void testSubscriptionMadeAtRuntimeSurvivesReconnection(
+            @Mocked final ScheduledExecutorService connectionScheduler) throws Exception {
+        MqttClientDefinition clientDefinition = new MqttClientDefinition(createClientConfig()
+                .setReconnectionMode(MqttConfig.ClientConfig.ReconnectionMode.ALWAYS)
+                .setReconnectionInterval(1)
+        );
+        MqttCallbackAdapter callbackAdapter = new MqttCallbackAdapter(mqttClient, clientDefinition);
+        callbackAdapter.setConnectionScheduler(connectionScheduler);
+        callbackAdapter.resolveProviders();
+        List<Runnable> attempts = new ArrayList<>();
+        recordReconnectionAttempts(connectionScheduler, attempts, new ArrayList<>());
 
-                new Timer().cancel();
+        callbackAdapter.getSubscriptionManager().subscribe("devices/#", 2, (topic, message) -> {
+        });
+        new Verifications() {
+            {
+                mqttClient.subscribe((String[]) any, (int[]) any);
+                times = 0;
+            }
+        };
+
+        callbackAdapter.connectionLost(new RuntimeException("Fake exception"));
+        attempts.get(0).run();
+        new Verifications() {
+            {
+                mqttClient.subscribe(new String[]{"devices/#"}, new int[]{2});
                 times = 1;
             }
         };
@@ -191,13 +433,16 @@ public class MqttCallbackAdapterTest {
 
     @SuppressWarnings("static-access")
     @Test
-    public void testConnectionLostWithReconnectionWithoutListener(@Mocked final MqttClientUtils mqttClientUtils)
+    public void testConnectionLostWithReconnectionWithoutListener(@Mocked final MqttClientUtils mqttClientUtils,
+                                                                  @Mocked final ScheduledExecutorService
+                                                                          connectionScheduler)
             throws Exception {
         final MqttClientDefinition clientDefinition = new MqttClientDefinition(createClientConfig()
                 .setReconnectionMode(MqttConfig.ClientConfig.ReconnectionMode.ALWAYS)
                 .setReconnectionInterval(1)
         );
         MqttCallbackAdapter callbackAdapter = new MqttCallbackAdapter(mqttClient, clientDefinition);
+        callbackAdapter.setConnectionScheduler(connectionScheduler);
 
         new Expectations() {
             {
@@ -206,39 +451,34 @@ public class MqttCallbackAdapterTest {
 
             }
         };
+        List<Runnable> attempts = new ArrayList<>();
+        recordReconnectionAttempts(connectionScheduler, attempts, new ArrayList<>());
 
-        final MockUp<Timer> timerMock = new MockUp<Timer>() {
-
-            @Mock
-            public void scheduleAtFixedRate(Invocation inv, TimerTask task, long delay, long period) {
-                inv.proceed(task, 0, 10000);
-            }
-        };
         callbackAdapter.connectionLost(new RuntimeException("Fake exception"));
-
-        // Just wait for timer execution
-        Thread.sleep(100);
+        attempts.get(0).run();
 
         new Verifications() {
             {
                 mqttClientUtils.connect(mqttClient, clientDefinition);
                 times = 1;
-
-                new Timer().cancel();
-                times = 1;
             }
         };
+        Assertions.assertThat(attempts).hasSize(1);
     }
 
     @SuppressWarnings("static-access")
     @Test
-    public void testConnectionLostWithReconnectionNotPossible(@Mocked final MqttClientUtils mqttClientUtils)
+    public void testConnectionLostWithReconnectionNotPossible(@Mocked final MqttClientUtils mqttClientUtils,
+                                                              @Mocked final ScheduledExecutorService
+                                                                      connectionScheduler)
             throws Exception {
         final MqttClientDefinition clientDefinition = new MqttClientDefinition(createClientConfig()
                 .setReconnectionMode(MqttConfig.ClientConfig.ReconnectionMode.ALWAYS)
                 .setReconnectionInterval(1)
+                .setMaxReconnectionInterval(3)
         );
         MqttCallbackAdapter callbackAdapter = new MqttCallbackAdapter(mqttClient, clientDefinition);
+        callbackAdapter.setConnectionScheduler(connectionScheduler);
 
         new Expectations() {
             {
@@ -248,24 +488,109 @@ public class MqttCallbackAdapterTest {
                 mqttClientUtils.connect(mqttClient, clientDefinition);
                 result = new MqttException(2);
                 result = new MqttSecurityException(3);
+                result = new MqttException(2);
             }
         };
+        List<Runnable> attempts = new ArrayList<>();
+        List<Long> delays = new ArrayList<>();
+        recordReconnectionAttempts(connectionScheduler, attempts, delays);
 
-        final MockUp<Timer> timerMock = new MockUp<Timer>() {
+        callbackAdapter.connectionLost(new RuntimeException("Fake exception"));
+        for (int i = 0; i < 3; i++) {
+            attempts.get(i).run();
+        }
+
+        // each failed attempt schedules the next one with a growing, capped, backoff
+        Assertions.assertThat(attempts).hasSize(4);
+        Assertions.assertThat(delays.get(0)).isBetween(0L, 1000L);
+        Assertions.assertThat(delays.get(1)).isBetween(0L, 2000L);
+        Assertions.assertThat(delays.get(2)).isBetween(0L, 3000L);
+        Assertions.assertThat(delays.get(3)).isBetween(0L, 3000L);
+        Assertions.assertThat(callbackAdapter.getReconnectionAttempts()).isEqualTo(3);
+        Assertions.assertThat(callbackAdapter.getLastReconnectionTimeMs()).isEqualTo(-1);
+    }
+
+    @SuppressWarnings("static-access")
+    @Test
+    public void testStartConnectsOnConnectionScheduler(@Mocked final MqttClientUtils mqttClientUtils,
+                                                       @Mocked final ScheduledExecutorService connectionScheduler)
+            throws Exception {
+        MqttClientDefinition clientDefinition = new MqttClientDefinition(createClientConfig());
+        MqttCallbackAdapter callbackAdapter = new MqttCallbackAdapter(mqttClient, clientDefinition);
+        callbackAdapter.setConnectionScheduler(connectionScheduler);
 
-            @Mock
-            public void scheduleAtFixedRate(Invocation inv, TimerTask task, long delay, long period) {
-                inv.proceed(task, 0, 60);
+        CompletableFuture<Void> startup = callbackAdapter.start();
+        Assertions.assertThat(startup).isNotDone();
+        List<Runnable> tasks = new ArrayList<>();
+        new Verifications() {
+            {
+                connectionScheduler.execute(withCapture(tasks));
             }
         };
-        callbackAdapter.connectionLost(new RuntimeException("Fake exception"));
+        tasks.get(0).run();
 
-        // Just wait for timer execution
-        Thread.sleep(100);
+        Assertions.assertThat(startup).isCompleted();
+        new Verifications() {
+            {
+                mqttClientUtils.connect(mqttClient, clientDefinition);
+                times = 1;
+            }
+        };
+    }
 
+    @SuppressWarnings("static-access")
+    @Test
+    public void testClientGivenUpAtStartupStopsConnecting(@Mocked final MqttClientUtils mqttClientUtils,
+                                                          @Mocked final ScheduledExecutorService connectionScheduler)
+            throws Exception {
+        MqttClientDefinition clientDefinition = new MqttClientDefinition(createClientConfig());
+        MqttCallbackAdapter callbackAdapter = new MqttCallbackAdapter(mqttClient, clientDefinition);
+        callbackAdapter.setConnectionScheduler(connectionScheduler);
+        new Expectations() {
+            {
+                mqttClientUtils.connect(mqttClient, clientDefinition);
+                result = new MqttException(MqttException.REASON_CODE_BROKER_UNAVAILABLE);
+            }
+        };
+        List<Runnable> attempts = new ArrayList<>();
+        recordReconnectionAttempts(connectionScheduler, attempts, new ArrayList<>());
+
+        CompletableFuture<Void> startup = callbackAdapter.start();
+        List<Runnable> tasks = new ArrayList<>();
+        new Verifications() {
+            {
+                connectionScheduler.execute(withCapture(tasks));
+            }
+        };
+        tasks.get(0).run();
+        Assertions.assertThat(startup).isCompletedExceptionally();
+        Assertions.assertThat(attempts).hasSize(1);
+
+        callbackAdapter.stopConnecting();
+        attempts.get(0).run();
         new Verifications() {
             {
-                new Timer().cancel();
+                mqttClientUtils.connect(mqttClient, clientDefinition);
+                times = 1;
+            }
+        };
+        Assertions.assertThat(callbackAdapter.getReconnectionAttempts()).isEqualTo(0);
+    }
+
+    private void recordReconnectionAttempts(ScheduledExecutorService connectionScheduler, List<Runnable> attempts,
+                                            List<Long> delays) {
+        new Expectations() {
+            {
+                connectionScheduler.schedule((Runnable) any, anyLong, TimeUnit.MILLISECONDS);
+                result = new Delegate<ScheduledFuture<?>>() {
+                    @SuppressWarnings("unused")
+                    ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+                        attempts.add(command);
+                        delays.add(delay);
+                        return null;
+                    }
+                };
+                minTimes = 0;
             }
         };
     }
@@ -276,20 +601,94 @@ public class MqttCallbackAdapterTest {
         MqttCallbackAdapter callbackAdapter = new MqttCallbackAdapter(mqttClient, clientDefinition);
         final MqttMessage mqttMessage = new MqttMessage();
         Deencapsulation.setField(callbackAdapter, "injector", injector);
-        callbackAdapter.setListenerKey(listenerKey);
+        callbackAdapter.addListenerKey(createListenerDefinition(), listenerKey);
+
+        new Expectations() {
+            {
+                injector.getProvider(listenerKey);
+                result = (Provider<?>) () -> listener;
+            }
+        };
+        final String topic = "topic";
+        callbackAdapter.resolveProviders();
+        callbackAdapter.messageArrived(topic, mqttMessage);
+
+        new Verifications() {
+            {
+                listener.messageArrived(topic, mqttMessage);
+            }
+        };
+    }
+
+    @Test
+    public void testMessageArrivedRoutedByTopic() throws Exception {
+        MqttClientDefinition clientDefinition = new MqttClientDefinition(createClientConfig());
+        MqttCallbackAdapter callbackAdapter = new MqttCallbackAdapter(mqttClient, clientDefinition);
+        final MqttMessage mqttMessage = new MqttMessage();
+        Deencapsulation.setField(callbackAdapter, "injector", injector);
+        callbackAdapter.addListenerKey(new MqttListenerDefinition(listener.getClass(), "clazz1",
+                new String[]{"sensors/+"}, new int[]{0}), listenerKey);
+        callbackAdapter.addListenerKey(new MqttListenerDefinition(publisher.getClass(), "clazz2",
+                new String[]{"actuators/#"}, new int[]{0}), publisherKey);
+
+        new Expectations() {
+            {
+                injector.getProvider(listenerKey);
+                result = (Provider<?>) () -> listener;
+
+                injector.getProvider(publisherKey);
+                result = (Provider<?>) () -> publisher;
+            }
+        };
+        callbackAdapter.resolveProviders();
+        callbackAdapter.messageArrived("sensors/1", mqttMessage);
+        callbackAdapter.messageArrived("actuators/1/state", mqttMessage);
+        callbackAdapter.messageArrived("other", mqttMessage);
+
+        new Verifications() {
+            {
+                listener.messageArrived("sensors/1", mqttMessage);
+                times = 1;
+
+                publisher.messageArrived("actuators/1/state", mqttMessage);
+                times = 1;
+
+                listener.messageArrived("other", mqttMessage);
+                times = 0;
+
+                publisher.messageArrived("other", mqttMessage);
+                times = 0;
+            }
+        };
+    }
+
+    @Test
+    public void testMessageArrivedWithThreadSafeListener() throws Exception {
+        MqttClientDefinition clientDefinition = new MqttClientDefinition(createClientConfig());
+        MqttListenerDefinition listenerDefinition = new MqttListenerDefinition(listener.getClass(), "clazz",
+                new String[]{"topic"}, new int[]{0}, true);
+        clientDefinition.addListenerDefinition(listenerDefinition);
+        MqttCallbackAdapter callbackAdapter = new MqttCallbackAdapter(mqttClient, clientDefinition);
+        final MqttMessage mqttMessage = new MqttMessage();
+        Deencapsulation.setField(callbackAdapter, "injector", injector);
+        callbackAdapter.addListenerKey(listenerDefinition, listenerKey);
 
         new Expectations() {
             {
                 injector.getInstance(listenerKey);
                 result = listener;
+                times = 1;
             }
         };
         final String topic = "topic";
+        callbackAdapter.resolveProviders();
+        callbackAdapter.messageArrived(topic, mqttMessage);
         callbackAdapter.messageArrived(topic, mqttMessage);
 
         new Verifications() {
             {
                 listener.messageArrived(topic, mqttMessage);
+                times = 2;
             }
         };
     }
@@ -300,17 +699,18 @@ public class MqttCallbackAdapterTest {
         MqttCallbackAdapter callbackAdapter = new MqttCallbackAdapter(mqttClient, clientDefinition);
         final MqttMessage mqttMessage = new MqttMessage();
         Deencapsulation.setField(callbackAdapter, "injector", injector);
-        callbackAdapter.setListenerKey(listenerKey);
+        callbackAdapter.addListenerKey(createListenerDefinition(), listenerKey);
         callbackAdapter.setRejectHandlerKey(rejectKey);
         callbackAdapter.setPool(threadPool);
 
         new Expectations() {
             {
-                injector.getInstance(listenerKey);
-                result = listener;
+                injector.getProvider(listenerKey);
+                result = (Provider<?>) () -> listener;
             }
         };
         final String topic = "topic";
+        callbackAdapter.resolveProviders();
         callbackAdapter.messageArrived(topic, mqttMessage);
 
         new Verifications() {
@@ -326,20 +726,21 @@ public class MqttCallbackAdapterTest {
         MqttCallbackAdapter callbackAdapter = new MqttCallbackAdapter(mqttClient, clientDefinition);
         final MqttMessage mqttMessage = new MqttMessage();
         Deencapsulation.setField(callbackAdapter, "injector", injector);
-        callbackAdapter.setListenerKey(listenerKey);
+        callbackAdapter.addListenerKey(createListenerDefinition(), listenerKey);
         callbackAdapter.setRejectHandlerKey(rejectKey);
         callbackAdapter.setPool(threadPool);
 
         new Expectations() {
             {
-                injector.getInstance(rejectKey);
-                result = rejectHandler;
+                injector.getProvider(rejectKey);
+                result = (Provider<?>) () -> rejectHandler;
 
                 threadPool.submit((MqttListenerTask) any);
                 result = new RejectedExecutionException("Fake exception");
             }
         };
         final String topic = "topic";
+        callbackAdapter.resolveProviders();
         callbackAdapter.messageArrived(topic, mqttMessage);
 
         new Verifications() {
@@ -357,7 +758,7 @@ public class MqttCallbackAdapterTest {
         MqttCallbackAdapter callbackAdapter = new MqttCallbackAdapter(mqttClient, clientDefinition);
         final MqttMessage mqttMessage = new MqttMessage();
         Deencapsulation.setField(callbackAdapter, "injector", injector);
-        callbackAdapter.setListenerKey(listenerKey);
+        callbackAdapter.addListenerKey(createListenerDefinition(), listenerKey);
         callbackAdapter.setPool(threadPool);
 
         new Expectations() {
@@ -367,10 +768,255 @@ public class MqttCallbackAdapterTest {
             }
         };
         final String topic = "topic";
+        callbackAdapter.resolveProviders();
         callbackAdapter.messageArrived(topic, mqttMessage);
 
     }
 
+    @Test
+    public void testDrainHandsOverQueuedAndLateMessages() throws Exception {
+        MqttClientDefinition clientDefinition = new MqttClientDefinition(createClientConfig());
+        MqttCallbackAdapter callbackAdapter = new MqttCallbackAdapter(mqttClient, clientDefinition);
+        final MqttMessage queuedMessage = new MqttMessage();
+        final MqttMessage lateMessage = new MqttMessage();
+        Deencapsulation.setField(callbackAdapter, "injector", injector);
+        MqttListenerDefinition listenerDefinition = createListenerDefinition();
+        clientDefinition.addListenerDefinition(listenerDefinition);
+        callbackAdapter.addListenerKey(listenerDefinition, listenerKey);
+        callbackAdapter.setRejectHandlerKey(rejectKey);
+        callbackAdapter.setPool(threadPool);
+
+        new Expectations() {
+            {
+                mqttClient.isConnected();
+                result = true;
+
+                injector.getProvider(rejectKey);
+                result = (Provider<?>) () -> rejectHandler;
+
+                threadPool.awaitTermination(anyLong, (TimeUnit) any);
+                result = false;
+
+                threadPool.shutdownNow();
+                result = Collections.singletonList(new MqttPoolTask<>(
+                        new MqttListenerTask(listener, "queued", queuedMessage), null));
+            }
+        };
+        callbackAdapter.resolveProviders();
+        callbackAdapter.startDrain();
+        callbackAdapter.messageArrived("topic", lateMessage);
+        callbackAdapter.awaitDrain();
+
+        new Verifications() {
+            {
+                mqttClient.unsubscribe(new String[]{"topic"});
+                threadPool.shutdown();
+                threadPool.submit((MqttListenerTask) any);
+                times = 0;
+                rejectHandler.reject("topic", lateMessage);
+                rejectHandler.reject("queued", queuedMessage);
+            }
+        };
+    }
+
+    @Test
+    public void testFailedListenerIsRetriedOnRetryExecutor(@Mocked ScheduledExecutorService scheduler,
+                                                           @Mocked ExecutorService retryExecutor) throws Exception {
+        MqttClientDefinition clientDefinition = new MqttClientDefinition(createClientConfig());
+        MqttCallbackAdapter callbackAdapter = new MqttCallbackAdapter(mqttClient, clientDefinition);
+        Deencapsulation.setField(callbackAdapter, "injector", injector);
+        callbackAdapter.setScheduler(scheduler);
+        callbackAdapter.setRetryExecutor(retryExecutor);
+        final FlakyListener flakyListener = new FlakyListener(1);
+        MqttListenerDefinition listenerDefinition = new MqttListenerDefinition(FlakyListener.class, "flaky",
+                new String[]{"topic"}, new int[]{1});
+        listenerDefinition.setRetryPolicy(new MqttRetryPolicy(3, 100, 1000, 2, 0, null));
+        callbackAdapter.addListenerKey(listenerDefinition, listenerKey);
+
+        new Expectations() {
+            {
+                injector.getProvider(listenerKey);
+                result = (Provider<?>) () -> flakyListener;
+            }
+        };
+        callbackAdapter.resolveProviders();
+        callbackAdapter.messageArrived("topic", new MqttMessage());
+        Assertions.assertThat(flakyListener.attempts).isEqualTo(1);
+
+        final List<Runnable> retries = new ArrayList<>();
+        new Verifications() {
+            {
+                scheduler.schedule(withCapture(retries), 100L, TimeUnit.MILLISECONDS);
+            }
+        };
+        Assertions.assertThat(retries).hasSize(1);
+        retries.get(0).run();
+        // the scheduler only hands the attempt to the retry executor
+        Assertions.assertThat(flakyListener.attempts).isEqualTo(1);
+
+        final List<Runnable> attempts = new ArrayList<>();
+        new Verifications() {
+            {
+                retryExecutor.execute(withCapture(attempts));
+            }
+        };
+        Assertions.assertThat(attempts).hasSize(1);
+        attempts.get(0).run();
+        Assertions.assertThat(flakyListener.attempts).isEqualTo(2);
+    }
+
+    @Test
+    public void testRetryRejectedByFullPoolIsAbandoned(@Mocked ScheduledExecutorService scheduler,
+                                                       @Mocked ExecutorService retryExecutor) throws Exception {
+        MqttClientDefinition clientDefinition = new MqttClientDefinition(createClientConfig());
+        MqttCallbackAdapter callbackAdapter = new MqttCallbackAdapter(mqttClient, clientDefinition);
+        final MqttMessage mqttMessage = new MqttMessage();
+        Deencapsulation.setField(callbackAdapter, "injector", injector);
+        callbackAdapter.setScheduler(scheduler);
+        callbackAdapter.setRetryExecutor(retryExecutor);
+        callbackAdapter.setRejectHandlerKey(rejectKey);
+        callbackAdapter.setPool(threadPool);
+        final FlakyListener flakyListener = new FlakyListener(1);
+        MqttListenerDefinition listenerDefinition = new MqttListenerDefinition(FlakyListener.class, "flaky",
+                new String[]{"topic"}, new int[]{1});
+        listenerDefinition.setRetryPolicy(new MqttRetryPolicy(3, 100, 1000, 2, 0, null));
+        callbackAdapter.addListenerKey(listenerDefinition, listenerKey);
+
+        new Expectations() {
+            {
+                injector.getProvider(listenerKey);
+                result = (Provider<?>) () -> flakyListener;
+
+                injector.getProvider(rejectKey);
+                result = (Provider<?>) () -> rejectHandler;
+            }
+        };
+        callbackAdapter.resolveProviders();
+        callbackAdapter.messageArrived("topic", mqttMessage);
+
+        final List<MqttListenerTask> tasks = new ArrayList<>();
+        new Verifications() {
+            {
+                threadPool.submit(withCapture(tasks));
+            }
+        };
+        Assertions.assertThat(tasks).hasSize(1);
+        tasks.get(0).run();
+        Assertions.assertThat(flakyListener.attempts).isEqualTo(1);
+
+        final List<Runnable> retries = new ArrayList<>();
+        new Verifications() {
+            {
+                scheduler.schedule(withCapture(retries), 100L, TimeUnit.MILLISECONDS);
+            }
+        };
+        Assertions.assertThat(retries).hasSize(1);
+        retries.get(0).run();
+
+        final List<Runnable> attempts = new ArrayList<>();
+        new Verifications() {
+            {
+                // the scheduler never submits to the pool itself
+                retryExecutor.execute(withCapture(attempts));
+            }
+        };
+        Assertions.assertThat(attempts).hasSize(1);
+        new Expectations() {
+            {
+                threadPool.submit((MqttListenerTask) any);
+                result = new RejectedExecutionException("Fake exception");
+            }
+        };
+        attempts.get(0).run();
+
+        new Verifications() {
+            {
+                rejectHandler.reject("topic", mqttMessage);
+            }
+        };
+        Assertions.assertThat(flakyListener.attempts).isEqualTo(1);
+    }
+
+    @Test
+    public void testExhaustedRetriesArePublishedToDeadLetterTopic(@Mocked ExecutorService retryExecutor,
+                                                                 @Mocked MqttAsyncPublisher asyncPublisher)
+            throws Exception {
+        MqttClientDefinition clientDefinition = new MqttClientDefinition(createClientConfig());
+        MqttCallbackAdapter callbackAdapter = new MqttCallbackAdapter(mqttClient, clientDefinition);
+        Deencapsulation.setField(callbackAdapter, "injector", injector);
+        callbackAdapter.setRetryExecutor(retryExecutor);
+        callbackAdapter.setAsyncPublisher(asyncPublisher);
+        final FlakyListener flakyListener = new FlakyListener(Integer.MAX_VALUE);
+        MqttListenerDefinition listenerDefinition = new MqttListenerDefinition(FlakyListener.class, "flaky",
+                new String[]{"topic"}, new int[]{1});
+        listenerDefinition.setRetryPolicy(new MqttRetryPolicy(1, 100, 1000, 2, 0, "dead"));
+        callbackAdapter.addListenerKey(listenerDefinition, listenerKey);
+
+        new Expectations() {
+            {
+                injector.getProvider(listenerKey);
+                result = (Provider<?>) () -> flakyListener;
+
+                asyncPublisher.publishAsync("dead", (MqttMessage) any);
+                result = CompletableFuture.completedFuture(null);
+            }
+        };
+        callbackAdapter.resolveProviders();
+        callbackAdapter.messageArrived("topic", new MqttMessage("payload".getBytes()));
+
+        final List<Runnable> publications = new ArrayList<>();
+        new Verifications() {
+            {
+                // the delivery thread never publishes the dead letter itself
+                asyncPublisher.publishAsync(anyString, (MqttMessage) any);
+                times = 0;
+                retryExecutor.execute(withCapture(publications));
+            }
+        };
+        Assertions.assertThat(publications).hasSize(1);
+        publications.get(0).run();
+
+        new Verifications() {
+            {
+                MqttMessage deadLetter;
+                asyncPublisher.publishAsync("dead", deadLetter = withCapture());
+                Assertions.assertThat(deadLetter.getPayload()).isEqualTo("payload".getBytes());
+            }
+        };
+    }
+
+    @Test
+    public void testExhaustedRetriesAreRejected() throws Exception {
+        MqttClientDefinition clientDefinition = new MqttClientDefinition(createClientConfig());
+        MqttCallbackAdapter callbackAdapter = new MqttCallbackAdapter(mqttClient, clientDefinition);
+        final MqttMessage mqttMessage = new MqttMessage();
+        Deencapsulation.setField(callbackAdapter, "injector", injector);
+        final FlakyListener flakyListener = new FlakyListener(Integer.MAX_VALUE);
+        MqttListenerDefinition listenerDefinition = new MqttListenerDefinition(FlakyListener.class, "flaky",
+                new String[]{"topic"}, new int[]{1});
+        listenerDefinition.setRetryPolicy(new MqttRetryPolicy(1, 100, 1000, 2, 0, null));
+        callbackAdapter.addListenerKey(listenerDefinition, listenerKey);
+        callbackAdapter.setRejectHandlerKey(rejectKey);
+
+        new Expectations() {
+            {
+                injector.getProvider(listenerKey);
+                result = (Provider<?>) () -> flakyListener;
+
+                injector.getProvider(rejectKey);
+                result = (Provider<?>) () -> rejectHandler;
+            }
+        };
+        callbackAdapter.resolveProviders();
+        callbackAdapter.messageArrived("topic", mqttMessage);
+
+        new Verifications() {
+            {
+                rejectHandler.reject("topic", mqttMessage);
+            }
+        };
+    }
+
     @Test
     public void testDeliveryComplete() throws Exception {
         MqttClientDefinition clientDefinition = new MqttClientDefinition(createClientConfig());
@@ -380,11 +1026,12 @@ public class MqttCallbackAdapterTest {
 
         new Expectations() {
             {
-                injector.getInstance(publisherKey);
-                result = publisher;
+                injector.getProvider(publisherKey);
+                result = (Provider<?>) () -> publisher;
             }
         };
         final IMqttDeliveryToken token = null;
+        callbackAdapter.resolveProviders();
         callbackAdapter.deliveryComplete(token);
 
         new Verifications() {
@@ -402,6 +1049,7 @@ public class MqttCallbackAdapterTest {
         Deencapsulation.setField(callbackAdapter, "injector", injector);
 
         final IMqttDeliveryToken token = null;
+        callbackAdapter.resolveProviders();
         callbackAdapter.deliveryComplete(token);
 
         new Verifications() {
@@ -413,7 +1061,146 @@ public class MqttCallbackAdapterTest {
 
     }
 
+    @Test
+    public void testMessageArrivedWithAsyncListener() throws Exception {
+        MqttClientDefinition clientDefinition = new MqttClientDefinition(createClientConfig().setMaxAsyncInFlight(2));
+        MqttCallbackAdapter callbackAdapter = new MqttCallbackAdapter(mqttClient, clientDefinition);
+        Deencapsulation.setField(callbackAdapter, "injector", injector);
+        final TestAsyncListener asyncListener = new TestAsyncListener();
+        callbackAdapter.addListenerKey(new MqttListenerDefinition(TestAsyncListener.class, "async",
+                new String[]{"topic"}, new int[]{1}), listenerKey);
+
+        new Expectations() {
+            {
+                injector.getProvider(listenerKey);
+                result = (Provider<?>) () -> asyncListener;
+            }
+        };
+        callbackAdapter.resolveProviders();
+        callbackAdapter.messageArrived("topic", new MqttMessage());
+        callbackAdapter.messageArrived("topic", new MqttMessage());
+        Assertions.assertThat(asyncListener.stages).hasSize(2);
+        Assertions.assertThat(callbackAdapter.getAsyncInFlight()).isEqualTo(2);
+
+        asyncListener.stages.get(0).complete(null);
+        Assertions.assertThat(callbackAdapter.getAsyncInFlight()).isEqualTo(1);
+
+        asyncListener.stages.get(1).completeExceptionally(new IllegalStateException("downstream failure"));
+        Assertions.assertThat(callbackAdapter.getAsyncInFlight()).isEqualTo(0);
+    }
+
+    @Test
+    public void testAsyncMessagesBeyondLimitAreRejected() throws Exception {
+        MqttClientDefinition clientDefinition = new MqttClientDefinition(createClientConfig().setMaxAsyncInFlight(1));
+        MqttCallbackAdapter callbackAdapter = new MqttCallbackAdapter(mqttClient, clientDefinition);
+        Deencapsulation.setField(callbackAdapter, "injector", injector);
+        final TestAsyncListener asyncListener = new TestAsyncListener();
+        final MqttMessage overflowMessage = new MqttMessage();
+        final MqttMessage drainedMessage = new MqttMessage();
+        callbackAdapter.addListenerKey(new MqttListenerDefinition(TestAsyncListener.class, "async",
+                new String[]{"topic"}, new int[]{1}), listenerKey);
+        callbackAdapter.setRejectHandlerKey(rejectKey);
+
+        new Expectations() {
+            {
+                injector.getProvider(listenerKey);
+                result = (Provider<?>) () -> asyncListener;
+
+                injector.getProvider(rejectKey);
+                result = (Provider<?>) () -> rejectHandler;
+            }
+        };
+        callbackAdapter.resolveProviders();
+        callbackAdapter.messageArrived("topic", new MqttMessage());
+        // the receiving thread does not wait for the message in flight to complete
+        callbackAdapter.messageArrived("topic", overflowMessage);
+        Assertions.assertThat(asyncListener.stages).hasSize(1);
+
+        asyncListener.stages.get(0).complete(null);
+        callbackAdapter.startDrain();
+        callbackAdapter.messageArrived("topic", drainedMessage);
+        Assertions.assertThat(asyncListener.stages).hasSize(1);
+
+        new Verifications() {
+            {
+                rejectHandler.reject("topic", overflowMessage);
+                rejectHandler.reject("topic", drainedMessage);
+            }
+        };
+    }
+
+    @Test
+    public void testMessageArrivedWithTypedListener() throws Exception {
+        MqttClientDefinition clientDefinition = new MqttClientDefinition(createClientConfig());
+        MqttCallbackAdapter callbackAdapter = new MqttCallbackAdapter(mqttClient, clientDefinition);
+        Deencapsulation.setField(callbackAdapter, "injector", injector);
+        final TestTypedListener typedListener = new TestTypedListener();
+        callbackAdapter.addListenerKey(new MqttListenerDefinition(TestTypedListener.class, "typed",
+                new String[]{"topic"}, new int[]{0}), listenerKey);
+
+        new Expectations() {
+            {
+                injector.getProvider(listenerKey);
+                result = (Provider<?>) () -> typedListener;
+            }
+        };
+        callbackAdapter.resolveProviders();
+        callbackAdapter.messageArrived("topic", new MqttMessage("hello".getBytes(StandardCharsets.UTF_8)));
+
+        Assertions.assertThat(typedListener.payloads).containsExactly("hello");
+        Assertions.assertThat(callbackAdapter.getListenerMetrics().get("typed").toListenerInfo()
+                .getExecution().getCount()).isEqualTo(1);
+    }
+
     private MqttConfig.ClientConfig createClientConfig() {
         return new MqttConfig.ClientConfig().setServerUri("uri").setClientId("id");
     }
+
+    private MqttListenerDefinition createListenerDefinition() {
+        return new MqttListenerDefinition(listener.getClass(), "clazz", new String[]{"topic"}, new int[]{0});
+    }
+
+    static class TestAsyncListener implements AsyncMqttListener {
+        private final List<CompletableFuture<Void>> stages = new ArrayList<>();
+
+        @Override
+        public CompletionStage<Void> onMessage(String topic, MqttMessage message) {
+            CompletableFuture<Void> stage = new CompletableFuture<>();
+            stages.add(stage);
+            return stage;
+        }
+    }
+
+    static class FlakyListener implements MqttCallback {
+        private final int failures;
+        private int attempts;
+
+        FlakyListener(int failures) {
+            this.failures = failures;
+        }
+
+        @Override
+        public void messageArrived(String topic, MqttMessage message) {
+            if (attempts++ < failures) {
+                throw new IllegalStateException("Fake failure");
+            }
+        }
+
+        @Override
+        public void connectionLost(Throwable cause) {
+        }
+
+        @Override
+        public void deliveryComplete(IMqttDeliveryToken token) {
+        }
+    }
+
+    static class TestTypedListener implements MqttTypedListener<String> {
+        private final List<String> payloads = new ArrayList<>();
+
+        @Override
+        public void onMessage(String topic, String payload, MqttMessage message) {
+            payloads.add(payload);
+        }
+    }
 }
@@ -7,10 +7,16 @@
  */
 package org.seedstack.mqtt.internal;
 
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import mockit.Delegate;
 import mockit.Expectations;
 import mockit.Mocked;
 import mockit.Verifications;
 import org.eclipse.paho.client.mqttv3.IMqttClient;
+import org.eclipse.paho.client.mqttv3.IMqttToken;
 import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
 import org.junit.Test;
 import org.seedstack.mqtt.MqttConfig;
@@ -22,28 +28,31 @@ public class MqttClientUtilsTest {
     IMqttClient mqttClient;
 
     @Test
-    public void testConnect() throws Exception {
+    public void testConnect(@Mocked final IMqttToken connectToken) throws Exception {
         final String uri = "uri";
         final String clientId = "id";
         MqttClientDefinition clientDefinition = new MqttClientDefinition(new MqttConfig.ClientConfig()
                 .setServerUri(uri)
                 .setClientId(clientId)
         );
-
-        MqttClientUtils.connect(mqttClient, clientDefinition);
-
-        new Verifications() {
+        new Expectations() {
             {
-                mqttClient.connect();
+                mqttClient.connectWithResult((MqttConnectOptions) any);
+                result = connectToken;
+
+                connectToken.getSessionPresent();
+                result = true;
             }
         };
+
+        assertThat(MqttClientUtils.connect(mqttClient, clientDefinition)).isTrue();
     }
 
     @Test
     public void testConnectWithOptions() throws Exception {
         final String uri = "uri";
         final String clientId = "id";
-        MqttClientDefinition clientDefinition = new MqttClientDefinition(new MqttConfig.ClientConfig()
+        final MqttClientDefinition clientDefinition = new MqttClientDefinition(new MqttConfig.ClientConfig()
                 .setServerUri(uri)
                 .setClientId(clientId)
                 .setConnectOptions(new MqttConnectOptions())
@@ -51,7 +60,7 @@ public class MqttClientUtilsTest {
         MqttClientUtils.connect(mqttClient, clientDefinition);
         new Verifications() {
             {
-                mqttClient.connect((MqttConnectOptions) any);
+                mqttClient.connectWithResult(clientDefinition.getConfig().getConnectOptions());
             }
         };
     }
@@ -75,7 +84,7 @@ public class MqttClientUtilsTest {
                 result = qos;
             }
         };
-        clientDefinition.setListenerDefinition(listenerDefinition);
+        clientDefinition.addListenerDefinition(listenerDefinition);
         MqttClientUtils.subscribe(mqttClient, listenerDefinition);
         new Verifications() {
             {
@@ -106,7 +115,90 @@ public class MqttClientUtilsTest {
             }
         };
 
-        clientDefinition.setListenerDefinition(listenerDefinition);
+        clientDefinition.addListenerDefinition(listenerDefinition);
         MqttClientUtils.subscribe(mqttClient, listenerDefinition);
     }
+
+    @Test
+    public void testSubscribeInChunks() throws Exception {
+        final String[] topics = new String[]{"topic1", "topic2", "topic3", "topic4", "topic5"};
+        final int[] qos = new int[]{0, 1, 2, 1, 0};
+        MqttClientUtils.subscribe(mqttClient, topics, qos, 2);
+        List<String[]> chunks = new ArrayList<>();
+        List<int[]> chunkQos = new ArrayList<>();
+        new Verifications() {
+            {
+                mqttClient.subscribe(withCapture(chunks), withCapture(chunkQos));
+                times = 3;
+            }
+        };
+        assertThat(chunks.get(0)).containsExactly("topic1", "topic2");
+        assertThat(chunks.get(1)).containsExactly("topic3", "topic4");
+        assertThat(chunks.get(2)).containsExactly("topic5");
+        assertThat(chunkQos.get(1)).containsExactly(2, 1);
+    }
+
+    @Test(expected = SeedException.class)
+    public void testSubscribeInChunksWithError() throws Exception {
+        final String[] topics = new String[]{"topic1", "topic2", "topic3"};
+        final int[] qos = new int[]{0, 0, 0};
+        new Expectations() {
+            {
+                mqttClient.subscribe((String[]) any, (int[]) any);
+                result = new Delegate<Void>() {
+                    @SuppressWarnings("unused")
+                    void subscribe(String[] topicFilters, int[] grantedQos) {
+                        if ("topic3".equals(topicFilters[0])) {
+                            grantedQos[0] = 0x80;
+                        }
+                    }
+                };
+            }
+        };
+        MqttClientUtils.subscribe(mqttClient, topics, qos, 2);
+    }
+
+    @Test
+    public void testShare() {
+        String[] topics = new String[]{"sensors/#", "alerts"};
+        assertThat(MqttClientUtils.share(topics, "group1")).containsExactly("$share/group1/sensors/#",
+                "$share/group1/alerts");
+        assertThat(MqttClientUtils.share(topics, null)).isSameAs(topics);
+        assertThat(MqttClientUtils.share(new String[]{"$share/group2/alerts"}, "group1"))
+                .containsExactly("$share/group2/alerts");
+    }
+
+    @Test
+    public void testUnshare() {
+        assertThat(MqttClientUtils.unshare("$share/group1/sensors/#")).isEqualTo("sensors/#");
+        assertThat(MqttClientUtils.unshare("$share/group1/alerts")).isEqualTo("alerts");
+        assertThat(MqttClientUtils.unshare("sensors/#")).isEqualTo("sensors/#");
+        assertThat(MqttClientUtils.unshare("$SYS/broker/uptime")).isEqualTo("$SYS/broker/uptime");
+    }
+
+    @Test(expected = SeedException.class)
+    public void testInvalidShareGroup() {
+        MqttClientUtils.validateShareGroup("group/1", "listener");
+    }
+
+    @Test
+    public void testUnsubscribeWithListenerShareGroup() throws Exception {
+        MqttClientDefinition clientDefinition = new MqttClientDefinition(new MqttConfig.ClientConfig()
+                .setServerUri("uri")
+                .setClientId("id")
+        );
+        MqttListenerDefinition groupedListenerDefinition = new MqttListenerDefinition(null, "grouped",
+                new String[]{"sensors/#"}, new int[]{1});
+        groupedListenerDefinition.setShareGroup("workers");
+        clientDefinition.addListenerDefinition(groupedListenerDefinition);
+        clientDefinition.addListenerDefinition(new MqttListenerDefinition(null, "plain", new String[]{"alerts"},
+                new int[]{1}));
+
+        MqttClientUtils.unsubscribe(mqttClient, clientDefinition, null);
+        new Verifications() {
+            {
+                mqttClient.unsubscribe(new String[]{"$share/workers/sensors/#", "alerts"});
+            }
+        };
+    }
 }
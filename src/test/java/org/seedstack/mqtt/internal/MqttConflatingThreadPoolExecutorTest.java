@@ -0,0 +1,131 @@
+/*
+ * Copyright © 2013-2020, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.mqtt.internal;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import org.eclipse.paho.client.mqttv3.IMqttDeliveryToken;
+import org.eclipse.paho.client.mqttv3.MqttCallback;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MqttConflatingThreadPoolExecutorTest {
+    private final List<String> received = new CopyOnWriteArrayList<>();
+    private final CountDownLatch blocker = new CountDownLatch(1);
+    private MqttConflatingThreadPoolExecutor executor;
+
+    @Before
+    public void setUp() {
+        executor = new MqttConflatingThreadPoolExecutor(1, 1, 60, 2, new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testLatestMessagePerTopicIsProcessed() throws Exception {
+        executor.submit(() -> {
+            try {
+                blocker.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        Future<?> stale = executor.submit(createTask("sensors/1", "1"));
+        executor.submit(createTask("sensors/2", "2"));
+        executor.submit(createTask("sensors/1", "3"));
+        executor.submit(createTask("sensors/1", "4"));
+
+        assertThat(executor.getQueue()).hasSize(2);
+        assertThat(executor.getConflatedCount()).isEqualTo(2);
+        assertThat(stale.isCancelled()).isTrue();
+
+        blocker.countDown();
+        executor.shutdown();
+        assertThat(executor.awaitTermination(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(received).containsExactly("sensors/1=4", "sensors/2=2");
+    }
+
+    @Test
+    public void testOverlappingSubscriptionsAreNotConflated() throws Exception {
+        executor.submit(() -> {
+            try {
+                blocker.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        RecordingListener listener = new RecordingListener();
+        executor.submit(new MqttListenerTask(listener, "sensors/1", new MqttMessage("1".getBytes()),
+                new MqttListenerMetrics("subscription:sensors/+")));
+        executor.submit(new MqttListenerTask(listener, "sensors/1", new MqttMessage("1".getBytes()),
+                new MqttListenerMetrics("subscription:sensors/#")));
+
+        assertThat(executor.getQueue()).hasSize(2);
+        assertThat(executor.getConflatedCount()).isEqualTo(0);
+
+        blocker.countDown();
+        executor.shutdown();
+        assertThat(executor.awaitTermination(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(received).containsExactly("sensors/1=1", "sensors/1=1");
+    }
+
+    @Test
+    public void testDistinctTopicsAreBounded() {
+        executor.submit(() -> {
+            try {
+                blocker.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        executor.submit(createTask("sensors/1", "1"));
+        executor.submit(createTask("sensors/2", "2"));
+        executor.submit(createTask("sensors/2", "3"));
+
+        try {
+            executor.submit(createTask("sensors/3", "4"));
+            fail("third topic should have been rejected");
+        } catch (RejectedExecutionException e) {
+            assertThat(executor.getQueue()).hasSize(2);
+        } finally {
+            blocker.countDown();
+        }
+    }
+
+    private MqttListenerTask createTask(String topic, String payload) {
+        return new MqttListenerTask(new RecordingListener(), topic, new MqttMessage(payload.getBytes()));
+    }
+
+    private class RecordingListener implements MqttCallback {
+        @Override
+        public void connectionLost(Throwable cause) {
+        }
+
+        @Override
+        public void messageArrived(String topic, MqttMessage message) {
+            received.add(topic + "=" + new String(message.getPayload()));
+        }
+
+        @Override
+        public void deliveryComplete(IMqttDeliveryToken token) {
+        }
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright © 2013-2020, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.mqtt.internal;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import mockit.Deencapsulation;
+import mockit.Mocked;
+import mockit.Verifications;
+import org.eclipse.paho.client.mqttv3.IMqttClient;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MqttFlowControllerTest {
+    @Mocked
+    private IMqttClient mqttClient;
+    private ScheduledExecutorService scheduler;
+    private AtomicInteger queueDepth;
+
+    @Before
+    public void setUp() {
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+        queueDepth = new AtomicInteger();
+    }
+
+    @After
+    public void tearDown() {
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    public void testAcknowledgeBelowHighWatermark() throws Exception {
+        MqttFlowController flowController = new MqttFlowController(mqttClient, queueDepth::get, 10, 2, scheduler);
+        flowController.messageDispatched(createMessage(1, 1));
+        flowController.messageDispatched(createMessage(2, 0));
+
+        assertThat(flowController.isPaused()).isFalse();
+        new Verifications() {
+            {
+                mqttClient.messageArrivedComplete(1, 1);
+                times = 1;
+
+                mqttClient.messageArrivedComplete(2, anyInt);
+                times = 0;
+            }
+        };
+    }
+
+    @Test
+    public void testWithholdAcknowledgementsUntilLowWatermark() throws Exception {
+        MqttFlowController flowController = new MqttFlowController(mqttClient, queueDepth::get, 10, 2, scheduler);
+        queueDepth.set(10);
+        flowController.messageDispatched(createMessage(1, 1));
+        flowController.messageDispatched(createMessage(2, 2));
+
+        assertThat(flowController.isPaused()).isTrue();
+        assertThat(flowController.getPendingAcks()).isEqualTo(2);
+        new Verifications() {
+            {
+                mqttClient.messageArrivedComplete(anyInt, anyInt);
+                times = 0;
+            }
+        };
+
+        queueDepth.set(5);
+        flowController.checkQueueDepth();
+        assertThat(flowController.isPaused()).isTrue();
+
+        queueDepth.set(2);
+        flowController.checkQueueDepth();
+        assertThat(flowController.isPaused()).isFalse();
+        assertThat(flowController.getPendingAcks()).isEqualTo(0);
+        new Verifications() {
+            {
+                mqttClient.messageArrivedComplete(1, 1);
+                times = 1;
+
+                mqttClient.messageArrivedComplete(2, 2);
+                times = 1;
+            }
+        };
+    }
+
+    @Test
+    public void testResumeCancelsQueueDepthPolling() {
+        MqttFlowController flowController = new MqttFlowController(mqttClient, queueDepth::get, 10, 2, scheduler);
+        queueDepth.set(10);
+        flowController.messageDispatched(createMessage(1, 1));
+        ScheduledFuture<?> resumeTask = Deencapsulation.getField(flowController, "resumeTask");
+        assertThat((Object) resumeTask).isNotNull();
+
+        queueDepth.set(0);
+        flowController.checkQueueDepth();
+        assertThat(flowController.isPaused()).isFalse();
+        assertThat(resumeTask.isCancelled()).isTrue();
+    }
+
+    @Test
+    public void testResetForgetsWithheldAcknowledgements() {
+        MqttFlowController flowController = new MqttFlowController(mqttClient, queueDepth::get, 1, 0, scheduler);
+        queueDepth.set(1);
+        flowController.messageDispatched(createMessage(1, 1));
+        assertThat(flowController.getPendingAcks()).isEqualTo(1);
+
+        flowController.reset();
+        assertThat(flowController.getPendingAcks()).isEqualTo(0);
+    }
+
+    private MqttMessage createMessage(int id, int qos) {
+        MqttMessage message = new MqttMessage();
+        message.setId(id);
+        message.setQos(qos);
+        return message;
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright © 2013-2020, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.mqtt.internal;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import org.seedstack.mqtt.spi.MqttLatencyInfo;
+
+public class MqttLatencyHistogramTest {
+
+    @Test
+    public void testBucketsAreContiguous() {
+        long previousHighest = -1;
+        for (int index = 0; index < 200; index++) {
+            long highest = MqttLatencyHistogram.highestValueOf(index);
+            assertThat(MqttLatencyHistogram.indexOf(previousHighest + 1)).isEqualTo(index);
+            assertThat(MqttLatencyHistogram.indexOf(highest)).isEqualTo(index);
+            previousHighest = highest;
+        }
+        assertThat(MqttLatencyHistogram.indexOf(Long.MAX_VALUE)).isLessThan((64 - 4) * 16);
+    }
+
+    @Test
+    public void testPercentiles() {
+        MqttLatencyHistogram histogram = new MqttLatencyHistogram();
+        for (long i = 1; i <= 10000; i++) {
+            histogram.record(i * 1000);
+        }
+        MqttLatencyInfo latencyInfo = histogram.toLatencyInfo();
+        assertThat(latencyInfo.getCount()).isEqualTo(10000);
+        assertThat((double) latencyInfo.getP50()).isCloseTo(5_000_000, within(5_000_000 / 16.0));
+        assertThat((double) latencyInfo.getP99()).isCloseTo(9_900_000, within(9_900_000 / 16.0));
+        assertThat((double) latencyInfo.getP999()).isCloseTo(9_990_000, within(9_990_000 / 16.0));
+        assertThat(latencyInfo.getMax()).isEqualTo(10_000_000);
+    }
+
+    @Test
+    public void testEmptyHistogram() {
+        MqttLatencyInfo latencyInfo = new MqttLatencyHistogram().toLatencyInfo();
+        assertThat(latencyInfo.getCount()).isEqualTo(0);
+        assertThat(latencyInfo.getP99()).isEqualTo(0);
+        assertThat(latencyInfo.getMax()).isEqualTo(0);
+    }
+
+    @Test
+    public void testConcurrentRecording() throws Exception {
+        MqttLatencyHistogram histogram = new MqttLatencyHistogram();
+        ExecutorService executorService = Executors.newFixedThreadPool(4);
+        for (int t = 0; t < 4; t++) {
+            executorService.execute(() -> {
+                for (int i = 0; i < 10000; i++) {
+                    histogram.record(i);
+                }
+            });
+        }
+        executorService.shutdown();
+        assertThat(executorService.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+        assertThat(histogram.toLatencyInfo().getCount()).isEqualTo(40000);
+        assertThat(histogram.toLatencyInfo().getMax()).isEqualTo(9999);
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright © 2013-2020, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.mqtt.internal;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.eclipse.paho.client.mqttv3.MqttPersistable;
+import org.eclipse.paho.client.mqttv3.internal.MqttPersistentData;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class MqttMappedPersistenceTest {
+    private static final String CLIENT_ID = "client";
+    private static final String SERVER_URI = "tcp://localhost:1883";
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+    private Path directory;
+
+    @Before
+    public void setUp() throws Exception {
+        directory = temporaryFolder.newFolder("persistence").toPath();
+    }
+
+    @Test
+    public void testPutGetAndRemove() throws Exception {
+        MqttMappedPersistence persistence = open(1024, true);
+        try {
+            persistence.put("s-1", createData("s-1", "header1", "payload1"));
+            persistence.put("s-2", createData("s-2", "header2", "payload2"));
+            assertThat(persistence.containsKey("s-1")).isTrue();
+            assertThat(Collections.list(persistence.keys())).containsOnly("s-1", "s-2");
+
+            MqttPersistable persistable = persistence.get("s-1");
+            assertThat(new String(persistable.getHeaderBytes(), persistable.getHeaderOffset(),
+                    persistable.getHeaderLength())).isEqualTo("header1");
+            assertThat(new String(persistable.getPayloadBytes(), persistable.getPayloadOffset(),
+                    persistable.getPayloadLength())).isEqualTo("payload1");
+
+            persistence.remove("s-1");
+            assertThat(persistence.containsKey("s-1")).isFalse();
+            assertThat(persistence.get("s-1")).isNull();
+            assertThat(Collections.list(persistence.keys())).containsOnly("s-2");
+
+            persistence.clear();
+            assertThat(Collections.list(persistence.keys())).isEmpty();
+        } finally {
+            persistence.close();
+        }
+    }
+
+    @Test
+    public void testEntriesAreRecoveredOnReopen() throws Exception {
+        MqttMappedPersistence persistence = open(1024, false);
+        persistence.put("s-1", createData("s-1", "header1", "payload1"));
+        persistence.put("s-2", createData("s-2", "header2", "payload2"));
+        persistence.remove("s-1");
+        persistence.close();
+
+        persistence = open(1024, false);
+        try {
+            assertThat(Collections.list(persistence.keys())).containsOnly("s-2");
+            MqttPersistable persistable = persistence.get("s-2");
+            assertThat(new String(persistable.getPayloadBytes(), persistable.getPayloadOffset(),
+                    persistable.getPayloadLength())).isEqualTo("payload2");
+        } finally {
+            persistence.close();
+        }
+    }
+
+    @Test
+    public void testSegmentsAreRolledAndDeleted() throws Exception {
+        MqttMappedPersistence persistence = open(256, false);
+        try {
+            for (int i = 0; i < 50; i++) {
+                persistence.put("s-" + i, createData("s-" + i, "header", "payload" + i));
+                persistence.remove("s-" + i);
+            }
+            assertThat(Collections.list(persistence.keys())).isEmpty();
+            assertThat(listSegments()).hasSize(1);
+        } finally {
+            persistence.close();
+        }
+    }
+
+    @Test
+    public void testLongLivedEntryIsCopiedForward() throws Exception {
+        MqttMappedPersistence persistence = open(256, false);
+        persistence.put("long-lived", createData("long-lived", "header", "kept"));
+        for (int i = 0; i < 50; i++) {
+            persistence.put("s-" + i, createData("s-" + i, "header", "payload" + i));
+            persistence.remove("s-" + i);
+        }
+        assertThat(listSegments().size()).isLessThanOrEqualTo(2);
+        persistence.close();
+
+        persistence = open(256, false);
+        try {
+            assertThat(Collections.list(persistence.keys())).containsOnly("long-lived");
+            MqttPersistable persistable = persistence.get("long-lived");
+            assertThat(new String(persistable.getPayloadBytes(), persistable.getPayloadOffset(),
+                    persistable.getPayloadLength())).isEqualTo("kept");
+        } finally {
+            persistence.close();
+        }
+    }
+
+    @Test
+    public void testSynchronizedEntryCopiedForwardIsRecovered() throws Exception {
+        MqttMappedPersistence persistence = open(256, true);
+        persistence.put("long-lived", createData("long-lived", "header", "kept"));
+        for (int i = 0; i < 20; i++) {
+            persistence.put("s-" + i, createData("s-" + i, "header", "payload" + i));
+            persistence.remove("s-" + i);
+        }
+        assertThat(listSegments().size()).isLessThanOrEqualTo(2);
+        persistence.close();
+
+        persistence = open(256, true);
+        try {
+            assertThat(Collections.list(persistence.keys())).containsOnly("long-lived");
+        } finally {
+            persistence.close();
+        }
+    }
+
+    private MqttMappedPersistence open(int segmentSize, boolean sync) throws Exception {
+        MqttMappedPersistence persistence = new MqttMappedPersistence(directory, segmentSize, sync);
+        persistence.open(CLIENT_ID, SERVER_URI);
+        return persistence;
+    }
+
+    private List<Path> listSegments() throws IOException {
+        try (Stream<Path> clients = Files.list(directory)) {
+            Path clientDirectory = clients.findFirst().orElseThrow(IllegalStateException::new);
+            try (Stream<Path> segments = Files.list(clientDirectory)) {
+                return segments.collect(Collectors.toList());
+            }
+        }
+    }
+
+    private MqttPersistentData createData(String key, String header, String payload) {
+        byte[] headerBytes = header.getBytes();
+        byte[] payloadBytes = payload.getBytes();
+        return new MqttPersistentData(key, headerBytes, 0, headerBytes.length, payloadBytes, 0, payloadBytes.length);
+    }
+}
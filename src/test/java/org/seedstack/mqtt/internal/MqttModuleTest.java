@@ -17,6 +17,7 @@ import org.eclipse.paho.client.mqttv3.MqttCallback;
 import org.junit.Test;
 import org.seedstack.mqtt.MqttConfig;
 import org.seedstack.mqtt.MqttRejectedExecutionHandler;
+import org.seedstack.mqtt.MqttSubscriptionManager;
 import org.seedstack.mqtt.internal.fixtures.Listener1;
 import org.seedstack.mqtt.internal.fixtures.PublishHandler;
 
@@ -37,7 +38,8 @@ public class MqttModuleTest {
                 .setClientId(clientId)
         );
         mqttClientDefinitions.put(clientName, clientDefinition);
-        mqttCallbackAdapters.put(clientName, new MqttCallbackAdapter(mqttClient, clientDefinition));
+        final MqttCallbackAdapter callbackAdapter = new MqttCallbackAdapter(mqttClient, clientDefinition);
+        mqttCallbackAdapters.put(clientName, callbackAdapter);
         mqttClients.put(clientName, mqttClient);
         MqttModule module = new MqttModule(mqttClients, mqttClientDefinitions, mqttCallbackAdapters);
 
@@ -46,6 +48,9 @@ public class MqttModuleTest {
         new Verifications() {
             {
                 binder.bind(IMqttClient.class).annotatedWith(Names.named(clientName)).toInstance(mqttClient);
+
+                binder.bind(MqttSubscriptionManager.class).annotatedWith(Names.named(clientName))
+                        .toInstance(callbackAdapter.getSubscriptionManager());
             }
         };
     }
@@ -65,7 +70,7 @@ public class MqttModuleTest {
         );
         final MqttListenerDefinition listenerDefinition = new MqttListenerDefinition(Listener1.class,
                 Listener1.class.getCanonicalName(), new String[]{"topic"}, new int[]{0});
-        clientDefinition.setListenerDefinition(listenerDefinition);
+        clientDefinition.addListenerDefinition(listenerDefinition);
         final String handlerName = "rejectName";
         clientDefinition.getPoolDefinition().setRejectHandler(handlerName, MqttRejectedExecutionHandler.class);
         mqttClientDefinitions.put(clientName, clientDefinition);
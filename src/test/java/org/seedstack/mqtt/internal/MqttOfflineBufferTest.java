@@ -0,0 +1,122 @@
+/*
+ * Copyright © 2013-2020, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.mqtt.internal;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import mockit.Delegate;
+import mockit.Expectations;
+import mockit.Mocked;
+import org.eclipse.paho.client.mqttv3.MqttException;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.seedstack.mqtt.MqttPublisher;
+
+public class MqttOfflineBufferTest {
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+    @Mocked
+    private MqttPublisher publisher;
+    private final AtomicBoolean connected = new AtomicBoolean();
+    private final List<String> publishedTopics = new ArrayList<>();
+
+    @Test
+    public void messagesOverflowToDiskAndAreFlushedInOrder() throws Exception {
+        recordPublications();
+        MqttSpool spool = new MqttSpool(temporaryFolder.newFolder("offline").toPath(), 1024, 1024 * 1024);
+        try (MqttOfflineBuffer offlineBuffer = new MqttOfflineBuffer("client1", 2, 1024, spool, publisher,
+                connected::get, Runnable::run)) {
+            for (int i = 0; i < 5; i++) {
+                assertThat(offlineBuffer.offer("topic" + i, new MqttMessage(new byte[]{(byte) i}))).isTrue();
+            }
+            assertThat(offlineBuffer.size()).isEqualTo(5);
+            assertThat(spool.size()).isEqualTo(3);
+            assertThat(offlineBuffer.getMemoryBytes()).isEqualTo(2);
+            assertThat(publishedTopics).isEmpty();
+
+            connected.set(true);
+            offlineBuffer.flush();
+            assertThat(publishedTopics).containsExactly("topic0", "topic1", "topic2", "topic3", "topic4");
+            assertThat(offlineBuffer.isEmpty()).isTrue();
+            assertThat(offlineBuffer.getMemoryBytes()).isEqualTo(0);
+            assertThat(offlineBuffer.getFlushedMessages()).isEqualTo(5);
+        }
+    }
+
+    @Test
+    public void messagesAreRefusedWhenTheBufferIsFull() {
+        try (MqttOfflineBuffer offlineBuffer = new MqttOfflineBuffer("client1", 10, 3, null, publisher,
+                connected::get, Runnable::run)) {
+            assertThat(offlineBuffer.offer("topic", new MqttMessage(new byte[]{1, 2}))).isTrue();
+            assertThat(offlineBuffer.offer("topic", new MqttMessage(new byte[]{3, 4}))).isFalse();
+            assertThat(offlineBuffer.size()).isEqualTo(1);
+            assertThat(offlineBuffer.getDroppedMessages()).isEqualTo(1);
+        }
+    }
+
+    @Test
+    public void messageStaysFirstWhenDisconnectedDuringFlush() {
+        new Expectations() {
+            {
+                publisher.publishAsync(anyString, (MqttMessage) any);
+                result = new Delegate<CompletableFuture<Void>>() {
+                    @SuppressWarnings("unused")
+                    CompletableFuture<Void> publishAsync(String topic, MqttMessage message) {
+                        CompletableFuture<Void> future = new CompletableFuture<>();
+                        if (publishedTopics.isEmpty()) {
+                            publishedTopics.add(topic);
+                            future.complete(null);
+                        } else {
+                            connected.set(false);
+                            future.completeExceptionally(
+                                    new MqttException(MqttException.REASON_CODE_CLIENT_NOT_CONNECTED));
+                        }
+                        return future;
+                    }
+                };
+            }
+        };
+        try (MqttOfflineBuffer offlineBuffer = new MqttOfflineBuffer("client1", 10, 1024, null, publisher,
+                connected::get, Runnable::run)) {
+            offlineBuffer.offer("topic0", new MqttMessage());
+            offlineBuffer.offer("topic1", new MqttMessage());
+            offlineBuffer.offer("topic2", new MqttMessage());
+            connected.set(true);
+            offlineBuffer.flush();
+            assertThat(publishedTopics).containsExactly("topic0");
+            assertThat(offlineBuffer.size()).isEqualTo(2);
+
+            // the failed message is published first by the next flush
+            recordPublications();
+            connected.set(true);
+            offlineBuffer.flush();
+            assertThat(publishedTopics).containsExactly("topic0", "topic1", "topic2");
+        }
+    }
+
+    private void recordPublications() {
+        new Expectations() {
+            {
+                publisher.publishAsync(anyString, (MqttMessage) any);
+                result = new Delegate<CompletableFuture<Void>>() {
+                    @SuppressWarnings("unused")
+                    CompletableFuture<Void> publishAsync(String topic, MqttMessage message) {
+                        publishedTopics.add(topic);
+                        return CompletableFuture.completedFuture(null);
+                    }
+                };
+            }
+        };
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright © 2013-2020, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.mqtt.internal;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import org.eclipse.paho.client.mqttv3.IMqttDeliveryToken;
+import org.eclipse.paho.client.mqttv3.MqttCallback;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.junit.Test;
+
+public class MqttOrderedExecutorTest {
+
+    @Test
+    public void testSameTopicIsProcessedInOrder() throws Exception {
+        MqttOrderedExecutor executor = new MqttOrderedExecutor(4, 100, new ThreadPoolExecutor.AbortPolicy());
+        RecordingListener listener = new RecordingListener();
+        for (int i = 0; i < 50; i++) {
+            executor.submit(new MqttListenerTask(listener, "sensor/1", new MqttMessage(new byte[]{(byte) i})));
+        }
+        executor.shutdown();
+        assertThat(executor.awaitTermination(5, TimeUnit.SECONDS)).isTrue();
+
+        assertThat(listener.received).hasSize(50);
+        for (int i = 0; i < 50; i++) {
+            assertThat(listener.received.get(i)).isEqualTo(i);
+        }
+    }
+
+    @Test
+    public void testKeyExtractorSelectsLane() throws Exception {
+        MqttOrderedExecutor executor = new MqttOrderedExecutor(2, 100, new ThreadPoolExecutor.AbortPolicy());
+        executor.setKeyExtractor((topic, message) -> "same");
+        RecordingListener listener = new RecordingListener();
+        for (int i = 0; i < 20; i++) {
+            executor.submit(new MqttListenerTask(listener, "sensor/" + i, new MqttMessage(new byte[]{(byte) i})));
+        }
+        executor.shutdown();
+        assertThat(executor.awaitTermination(5, TimeUnit.SECONDS)).isTrue();
+
+        for (int i = 0; i < 20; i++) {
+            assertThat(listener.received.get(i)).isEqualTo(i);
+        }
+    }
+
+    @Test
+    public void testSaturatedLaneKeepsOrder() throws Exception {
+        MqttOrderedExecutor executor = new MqttOrderedExecutor(1, 5, new ThreadPoolExecutor.AbortPolicy());
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        RecordingListener listener = new RecordingListener() {
+            @Override
+            public void messageArrived(String topic, MqttMessage message) {
+                blocked.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                super.messageArrived(topic, message);
+            }
+        };
+        List<Integer> accepted = new ArrayList<>();
+        List<Integer> rejected = new ArrayList<>();
+        executor.submit(new MqttListenerTask(listener, "sensor/1", new MqttMessage(new byte[]{0})));
+        accepted.add(0);
+        assertThat(blocked.await(5, TimeUnit.SECONDS)).isTrue();
+        for (int i = 1; i < 20; i++) {
+            try {
+                executor.submit(new MqttListenerTask(listener, "sensor/1", new MqttMessage(new byte[]{(byte) i})));
+                accepted.add(i);
+            } catch (RejectedExecutionException e) {
+                rejected.add(i);
+            }
+        }
+        release.countDown();
+        executor.shutdown();
+        assertThat(executor.awaitTermination(5, TimeUnit.SECONDS)).isTrue();
+
+        assertThat(rejected).isNotEmpty();
+        assertThat(listener.received).containsExactlyElementsOf(accepted);
+    }
+
+    @Test
+    public void testNullKeyFallsBackToTopic() throws Exception {
+        MqttOrderedExecutor executor = new MqttOrderedExecutor(4, 100, new ThreadPoolExecutor.AbortPolicy());
+        executor.setKeyExtractor((topic, message) -> null);
+        RecordingListener listener = new RecordingListener();
+        for (int i = 0; i < 20; i++) {
+            executor.submit(new MqttListenerTask(listener, "sensor/1", new MqttMessage(new byte[]{(byte) i})));
+        }
+        executor.shutdown();
+        assertThat(executor.awaitTermination(5, TimeUnit.SECONDS)).isTrue();
+
+        assertThat(listener.received).hasSize(20);
+        for (int i = 0; i < 20; i++) {
+            assertThat(listener.received.get(i)).isEqualTo(i);
+        }
+    }
+
+    @Test
+    public void testQueueDepths() {
+        MqttOrderedExecutor executor = new MqttOrderedExecutor(3, 10, new ThreadPoolExecutor.AbortPolicy());
+        assertThat(executor.getQueueDepths()).containsExactly(0, 0, 0);
+        executor.shutdownNow();
+    }
+
+    private static class RecordingListener implements MqttCallback {
+        private final List<Integer> received = new CopyOnWriteArrayList<>();
+
+        @Override
+        public void connectionLost(Throwable cause) {
+        }
+
+        @Override
+        public void messageArrived(String topic, MqttMessage message) {
+            received.add((int) message.getPayload()[0]);
+        }
+
+        @Override
+        public void deliveryComplete(IMqttDeliveryToken token) {
+        }
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright © 2013-2020, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.mqtt.internal;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.junit.Test;
+import org.seedstack.mqtt.MqttPayloadCodec;
+import org.seedstack.mqtt.MqttTypedListener;
+
+public class MqttPayloadCodecsTest {
+
+    @Test
+    public void testResolvePayloadType() {
+        assertThat(MqttPayloadCodecs.resolvePayloadType(StringListener.class)).isEqualTo(String.class);
+        assertThat(MqttPayloadCodecs.resolvePayloadType(MeasureListener.class)).isEqualTo(Measure.class);
+        assertThat(MqttPayloadCodecs.resolvePayloadType(SubMeasureListener.class)).isEqualTo(Measure.class);
+    }
+
+    @Test
+    public void testBuiltInCodecs() throws Exception {
+        assertThat(MqttPayloadCodecs.forType(byte[].class)).isSameAs(MqttPayloadCodecs.BYTES);
+        assertThat(MqttPayloadCodecs.forType(String.class)).isSameAs(MqttPayloadCodecs.STRING);
+        assertThat(MqttPayloadCodecs.forType(ByteBuffer.class)).isSameAs(MqttPayloadCodecs.BYTE_BUFFER);
+        assertThat(MqttPayloadCodecs.STRING.decode("héllo".getBytes(StandardCharsets.UTF_8))).isEqualTo("héllo");
+
+        byte[] payload = {1, 2, 3};
+        ByteBuffer view = MqttPayloadCodecs.BYTE_BUFFER.decode(payload);
+        assertThat(view.isReadOnly()).isTrue();
+        assertThat(view.remaining()).isEqualTo(3);
+        payload[0] = 42;
+        assertThat(view.get(0)).isEqualTo((byte) 42);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testJsonCodec() throws Exception {
+        MqttPayloadCodec<Measure> codec = (MqttPayloadCodec<Measure>) MqttPayloadCodecs.forType(Measure.class);
+        Measure measure = codec.decode("{\"sensor\":\"s1\",\"value\":21.5}".getBytes(StandardCharsets.UTF_8));
+        assertThat(measure.sensor).isEqualTo("s1");
+        assertThat(measure.value).isEqualTo(21.5);
+        assertThat(codec.decode(codec.encode(measure)).sensor).isEqualTo("s1");
+
+        MqttPayloadCodec<List<Measure>> listCodec = (MqttPayloadCodec<List<Measure>>) MqttPayloadCodecs.forType(
+                MqttPayloadCodecs.resolvePayloadType(MeasuresListener.class));
+        assertThat(listCodec.decode("[{\"sensor\":\"s1\"},{\"sensor\":\"s2\"}]".getBytes(StandardCharsets.UTF_8)))
+                .extracting(m -> m.sensor)
+                .containsExactly("s1", "s2");
+    }
+
+    public static class Measure {
+        public String sensor;
+        public double value;
+    }
+
+    static class StringListener implements MqttTypedListener<String> {
+        @Override
+        public void onMessage(String topic, String payload, MqttMessage message) {
+        }
+    }
+
+    static class MeasureListener implements MqttTypedListener<Measure> {
+        @Override
+        public void onMessage(String topic, Measure payload, MqttMessage message) {
+        }
+    }
+
+    static class SubMeasureListener extends MeasureListener {
+    }
+
+    static class MeasuresListener implements MqttTypedListener<List<Measure>> {
+        @Override
+        public void onMessage(String topic, List<Measure> payload, MqttMessage message) {
+        }
+    }
+}
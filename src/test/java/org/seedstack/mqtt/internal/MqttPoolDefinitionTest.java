@@ -7,10 +7,13 @@
  */
 package org.seedstack.mqtt.internal;
 
+import java.util.concurrent.Future;
 import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import org.assertj.core.api.Assertions;
 import org.junit.Test;
 import org.seedstack.mqtt.MqttConfig;
+import org.seedstack.seed.SeedException;
 
 public class MqttPoolDefinitionTest {
     @Test
@@ -18,7 +21,7 @@ public class MqttPoolDefinitionTest {
         MqttConfig.ClientConfig.PoolConfig poolConfig = new MqttConfig.ClientConfig.PoolConfig()
                 .setEnabled(true)
                 .setRejectedExecutionPolicy(MqttConfig.ClientConfig.PoolConfig.RejectedExecutionPolicy.DISCARD_OLDEST);
-        MqttPoolDefinition poolDefinition = new MqttPoolDefinition(poolConfig);
+        MqttPoolDefinition poolDefinition = new MqttPoolDefinition("client", poolConfig);
         Assertions.assertThat(poolDefinition.getThreadPoolExecutor().getRejectedExecutionHandler())
                 .isInstanceOf(ThreadPoolExecutor.DiscardOldestPolicy.class);
 
@@ -29,7 +32,7 @@ public class MqttPoolDefinitionTest {
         MqttConfig.ClientConfig.PoolConfig poolConfig = new MqttConfig.ClientConfig.PoolConfig()
                 .setEnabled(true)
                 .setRejectedExecutionPolicy(MqttConfig.ClientConfig.PoolConfig.RejectedExecutionPolicy.ABORT);
-        MqttPoolDefinition poolDefinition = new MqttPoolDefinition(poolConfig);
+        MqttPoolDefinition poolDefinition = new MqttPoolDefinition("client", poolConfig);
         Assertions.assertThat(poolDefinition.getThreadPoolExecutor().getRejectedExecutionHandler())
                 .isInstanceOf(ThreadPoolExecutor.AbortPolicy.class);
 
@@ -40,7 +43,7 @@ public class MqttPoolDefinitionTest {
         MqttConfig.ClientConfig.PoolConfig poolConfig = new MqttConfig.ClientConfig.PoolConfig()
                 .setEnabled(true)
                 .setRejectedExecutionPolicy(MqttConfig.ClientConfig.PoolConfig.RejectedExecutionPolicy.DISCARD);
-        MqttPoolDefinition poolDefinition = new MqttPoolDefinition(poolConfig);
+        MqttPoolDefinition poolDefinition = new MqttPoolDefinition("client", poolConfig);
         Assertions.assertThat(poolDefinition.getThreadPoolExecutor().getRejectedExecutionHandler())
                 .isInstanceOf(ThreadPoolExecutor.DiscardPolicy.class);
 
@@ -51,7 +54,7 @@ public class MqttPoolDefinitionTest {
         MqttConfig.ClientConfig.PoolConfig poolConfig = new MqttConfig.ClientConfig.PoolConfig()
                 .setEnabled(true)
                 .setRejectedExecutionPolicy(MqttConfig.ClientConfig.PoolConfig.RejectedExecutionPolicy.CALLER_RUNS);
-        MqttPoolDefinition poolDefinition = new MqttPoolDefinition(poolConfig);
+        MqttPoolDefinition poolDefinition = new MqttPoolDefinition("client", poolConfig);
         Assertions.assertThat(poolDefinition.getThreadPoolExecutor().getRejectedExecutionHandler())
                 .isInstanceOf(ThreadPoolExecutor.CallerRunsPolicy.class);
 
@@ -61,8 +64,91 @@ public class MqttPoolDefinitionTest {
     public void testWithDefaultPolicy() {
         MqttConfig.ClientConfig.PoolConfig poolConfig = new MqttConfig.ClientConfig.PoolConfig()
                 .setEnabled(true);
-        MqttPoolDefinition poolDefinition = new MqttPoolDefinition(poolConfig);
+        MqttPoolDefinition poolDefinition = new MqttPoolDefinition("client", poolConfig);
         Assertions.assertThat(poolDefinition.getThreadPoolExecutor().getRejectedExecutionHandler())
                 .isInstanceOf(ThreadPoolExecutor.CallerRunsPolicy.class);
     }
+
+    @Test
+    public void testWithOrderedMode() {
+        MqttConfig.ClientConfig.PoolConfig poolConfig = new MqttConfig.ClientConfig.PoolConfig()
+                .setEnabled(true)
+                .setMode(MqttConfig.ClientConfig.PoolConfig.PoolMode.ORDERED)
+                .setRejectedExecutionPolicy(MqttConfig.ClientConfig.PoolConfig.RejectedExecutionPolicy.ABORT)
+                .setLanes(4);
+        MqttPoolDefinition poolDefinition = new MqttPoolDefinition("client", poolConfig);
+        Assertions.assertThat(poolDefinition.getExecutorService()).isInstanceOf(MqttOrderedExecutor.class);
+        Assertions.assertThat(poolDefinition.getThreadPoolExecutor()).isNull();
+        Assertions.assertThat(poolDefinition.getLaneQueueDepths()).containsExactly(0, 0, 0, 0);
+        poolDefinition.getExecutorService().shutdown();
+    }
+
+    @Test
+    public void testOrderedModeDefaultsToAbortPolicy() {
+        MqttConfig.ClientConfig.PoolConfig poolConfig = new MqttConfig.ClientConfig.PoolConfig()
+                .setEnabled(true)
+                .setMode(MqttConfig.ClientConfig.PoolConfig.PoolMode.ORDERED);
+        Assertions.assertThat(poolConfig.getRejectedExecutionPolicy())
+                .isEqualTo(MqttConfig.ClientConfig.PoolConfig.RejectedExecutionPolicy.ABORT);
+        MqttPoolDefinition poolDefinition = new MqttPoolDefinition("client", poolConfig);
+        Assertions.assertThat(poolDefinition.getExecutorService()).isInstanceOf(MqttOrderedExecutor.class);
+        poolDefinition.getExecutorService().shutdown();
+    }
+
+    @Test(expected = SeedException.class)
+    public void testOrderedModeRejectsCallerRunsPolicy() {
+        new MqttPoolDefinition("client", new MqttConfig.ClientConfig.PoolConfig()
+                .setEnabled(true)
+                .setMode(MqttConfig.ClientConfig.PoolConfig.PoolMode.ORDERED)
+                .setRejectedExecutionPolicy(MqttConfig.ClientConfig.PoolConfig.RejectedExecutionPolicy.CALLER_RUNS));
+    }
+
+    @Test(expected = SeedException.class)
+    public void testOrderedModeRejectsDiscardOldestPolicy() {
+        new MqttPoolDefinition("client", new MqttConfig.ClientConfig.PoolConfig()
+                .setEnabled(true)
+                .setMode(MqttConfig.ClientConfig.PoolConfig.PoolMode.ORDERED)
+                .setRejectedExecutionPolicy(MqttConfig.ClientConfig.PoolConfig.RejectedExecutionPolicy.DISCARD_OLDEST));
+    }
+
+    @Test
+    public void testWithRingBufferMode() throws Exception {
+        MqttConfig.ClientConfig.PoolConfig poolConfig = new MqttConfig.ClientConfig.PoolConfig()
+                .setEnabled(true)
+                .setMode(MqttConfig.ClientConfig.PoolConfig.PoolMode.RING_BUFFER);
+        MqttPoolDefinition poolDefinition = new MqttPoolDefinition("client", poolConfig);
+        Assertions.assertThat(poolDefinition.getExecutorService()).isInstanceOf(MqttRingBufferExecutor.class);
+        Future<Thread> consumer = poolDefinition.getExecutorService().submit(Thread::currentThread);
+        Assertions.assertThat(consumer.get(5, TimeUnit.SECONDS).getName()).startsWith("mqtt-ring-buffer-client-");
+        Assertions.assertThat(consumer.get().isDaemon()).isTrue();
+        poolDefinition.getExecutorService().shutdown();
+    }
+
+    @Test
+    public void testWithVirtualMode() {
+        MqttConfig.ClientConfig.PoolConfig poolConfig = new MqttConfig.ClientConfig.PoolConfig()
+                .setEnabled(true)
+                .setMode(MqttConfig.ClientConfig.PoolConfig.PoolMode.VIRTUAL);
+        MqttPoolDefinition poolDefinition = new MqttPoolDefinition("client", poolConfig);
+        if (MqttVirtualThreadExecutor.newVirtualThreadPerTaskExecutor() != null) {
+            Assertions.assertThat(poolDefinition.getExecutorService()).isInstanceOf(MqttVirtualThreadExecutor.class);
+        } else {
+            Assertions.assertThat(poolDefinition.getThreadPoolExecutor()).isNotNull();
+        }
+        poolDefinition.getExecutorService().shutdown();
+    }
+
+    @Test
+    public void testWithConflatingQueueMode() {
+        MqttConfig.ClientConfig.PoolConfig poolConfig = new MqttConfig.ClientConfig.PoolConfig()
+                .setEnabled(true)
+                .setQueueMode(MqttConfig.ClientConfig.PoolConfig.QueueMode.CONFLATING);
+        MqttPoolDefinition poolDefinition = new MqttPoolDefinition("client", poolConfig);
+        Assertions.assertThat(poolDefinition.getThreadPoolExecutor())
+                .isInstanceOf(MqttConflatingThreadPoolExecutor.class);
+        Assertions.assertThat(poolDefinition.getThreadPoolExecutor().getQueue())
+                .isInstanceOf(MqttConflatingQueue.class);
+        Assertions.assertThat(poolDefinition.getConflatedCount()).isEqualTo(0);
+        poolDefinition.getExecutorService().shutdown();
+    }
 }
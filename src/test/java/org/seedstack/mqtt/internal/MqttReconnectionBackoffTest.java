@@ -0,0 +1,32 @@
+/*
+ * Copyright © 2013-2020, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.mqtt.internal;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.Test;
+
+public class MqttReconnectionBackoffTest {
+    @Test
+    public void ceilingDoublesUpToTheMaximum() {
+        MqttReconnectionBackoff backoff = new MqttReconnectionBackoff(1000, 30000);
+        assertThat(backoff.ceilingMs(1)).isEqualTo(1000);
+        assertThat(backoff.ceilingMs(2)).isEqualTo(2000);
+        assertThat(backoff.ceilingMs(5)).isEqualTo(16000);
+        assertThat(backoff.ceilingMs(6)).isEqualTo(30000);
+        assertThat(backoff.ceilingMs(1000)).isEqualTo(30000);
+    }
+
+    @Test
+    public void delayIsSpreadBelowTheCeiling() {
+        MqttReconnectionBackoff backoff = new MqttReconnectionBackoff(1000, 30000);
+        for (int i = 0; i < 100; i++) {
+            assertThat(backoff.delayMs(3)).isBetween(0L, 4000L);
+        }
+    }
+}
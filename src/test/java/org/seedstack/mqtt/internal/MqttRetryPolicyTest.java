@@ -0,0 +1,40 @@
+/*
+ * Copyright © 2013-2020, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.mqtt.internal;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.Test;
+
+public class MqttRetryPolicyTest {
+    @Test
+    public void attemptsAreLimited() {
+        MqttRetryPolicy retryPolicy = new MqttRetryPolicy(3, 100, 1000, 2, 0, null);
+        assertThat(retryPolicy.canRetry(1)).isTrue();
+        assertThat(retryPolicy.canRetry(2)).isTrue();
+        assertThat(retryPolicy.canRetry(3)).isFalse();
+    }
+
+    @Test
+    public void delayGrowsExponentiallyUpToTheMaximum() {
+        MqttRetryPolicy retryPolicy = new MqttRetryPolicy(10, 100, 1000, 2, 0, null);
+        assertThat(retryPolicy.delayMs(1)).isEqualTo(100);
+        assertThat(retryPolicy.delayMs(2)).isEqualTo(200);
+        assertThat(retryPolicy.delayMs(4)).isEqualTo(800);
+        assertThat(retryPolicy.delayMs(5)).isEqualTo(1000);
+        assertThat(retryPolicy.delayMs(9)).isEqualTo(1000);
+    }
+
+    @Test
+    public void jitterSpreadsTheDelay() {
+        MqttRetryPolicy retryPolicy = new MqttRetryPolicy(10, 1000, 1000, 2, 0.5, null);
+        for (int i = 0; i < 100; i++) {
+            assertThat(retryPolicy.delayMs(1)).isBetween(500L, 1500L);
+        }
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright © 2013-2020, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.mqtt.internal;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.eclipse.paho.client.mqttv3.IMqttDeliveryToken;
+import org.eclipse.paho.client.mqttv3.MqttCallback;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.junit.Test;
+import org.seedstack.mqtt.MqttConfig.ClientConfig.PoolConfig.RejectedExecutionPolicy;
+import org.seedstack.mqtt.MqttConfig.ClientConfig.PoolConfig.WaitStrategy;
+
+public class MqttRingBufferExecutorTest {
+
+    @Test
+    public void testDispatch() throws Exception {
+        MqttRingBufferExecutor executor = new MqttRingBufferExecutor("test", 16, 3, WaitStrategy.PARK,
+                RejectedExecutionPolicy.CALLER_RUNS);
+        CountingListener listener = new CountingListener(null, null);
+        for (int i = 0; i < 10000; i++) {
+            executor.dispatch(listener, "topic", new MqttMessage());
+        }
+        AtomicInteger tasks = new AtomicInteger();
+        executor.execute(tasks::incrementAndGet);
+        executor.shutdown();
+        assertThat(executor.awaitTermination(5, TimeUnit.SECONDS)).isTrue();
+
+        assertThat(listener.count.get()).isEqualTo(10000);
+        assertThat(tasks.get()).isEqualTo(1);
+        assertThat(executor.getQueueDepth()).isEqualTo(0);
+    }
+
+    @Test
+    public void testAbortWhenFull() throws Exception {
+        MqttRingBufferExecutor executor = new MqttRingBufferExecutor("test", 2, 1, WaitStrategy.YIELD,
+                RejectedExecutionPolicy.ABORT);
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CountingListener listener = new CountingListener(entered, release);
+        try {
+            executor.dispatch(listener, "topic", new MqttMessage());
+            assertThat(entered.await(5, TimeUnit.SECONDS)).isTrue();
+            executor.dispatch(listener, "topic", new MqttMessage());
+            executor.dispatch(listener, "topic", new MqttMessage());
+            assertThat(executor.getQueueDepth()).isEqualTo(2);
+            executor.dispatch(listener, "topic", new MqttMessage());
+            fail("ring buffer should be full");
+        } catch (RejectedExecutionException e) {
+            // expected
+        } finally {
+            release.countDown();
+            executor.shutdown();
+        }
+        assertThat(executor.awaitTermination(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(listener.count.get()).isEqualTo(3);
+    }
+
+    @Test
+    public void testShutdownWithoutMessage() throws Exception {
+        MqttRingBufferExecutor executor = new MqttRingBufferExecutor("test", 8, 2, WaitStrategy.BUSY_SPIN,
+                RejectedExecutionPolicy.CALLER_RUNS);
+        executor.shutdown();
+        assertThat(executor.isTerminated()).isTrue();
+    }
+
+    private static class CountingListener implements MqttCallback {
+        private final AtomicInteger count = new AtomicInteger();
+        private final CountDownLatch entered;
+        private final CountDownLatch release;
+
+        CountingListener(CountDownLatch entered, CountDownLatch release) {
+            this.entered = entered;
+            this.release = release;
+        }
+
+        @Override
+        public void connectionLost(Throwable cause) {
+        }
+
+        @Override
+        public void messageArrived(String topic, MqttMessage message) throws Exception {
+            count.incrementAndGet();
+            if (entered != null) {
+                entered.countDown();
+                release.await();
+            }
+        }
+
+        @Override
+        public void deliveryComplete(IMqttDeliveryToken token) {
+        }
+    }
+}
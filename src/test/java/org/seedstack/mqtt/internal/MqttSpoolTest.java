@@ -0,0 +1,133 @@
+/*
+ * Copyright © 2013-2020, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.mqtt.internal;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.nio.file.Path;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class MqttSpoolTest {
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+    private Path directory;
+
+    @Before
+    public void setUp() throws Exception {
+        directory = temporaryFolder.newFolder("spool").toPath();
+    }
+
+    @Test
+    public void testAppendAndPollInOrder() throws Exception {
+        try (MqttSpool spool = new MqttSpool(directory, 1024, 1024 * 1024)) {
+            assertThat(spool.append("listener1", "sensors/1", createMessage("1", 1, true))).isTrue();
+            assertThat(spool.append("listener2", "sensors/2", createMessage("2", 2, false))).isTrue();
+            assertThat(spool.size()).isEqualTo(2);
+
+            MqttSpool.Record record = spool.poll();
+            assertThat(record.getListenerName()).isEqualTo("listener1");
+            assertThat(record.getTopic()).isEqualTo("sensors/1");
+            assertThat(record.getMessage().getPayload()).isEqualTo("1".getBytes());
+            assertThat(record.getMessage().getQos()).isEqualTo(1);
+            assertThat(record.getMessage().isRetained()).isTrue();
+
+            record = spool.poll();
+            assertThat(record.getListenerName()).isEqualTo("listener2");
+            assertThat(record.getMessage().getQos()).isEqualTo(2);
+            assertThat(record.getMessage().isRetained()).isFalse();
+
+            assertThat(spool.poll()).isNull();
+            assertThat(spool.size()).isEqualTo(0);
+        }
+    }
+
+    @Test
+    public void testSegmentsAreRotatedAndDeleted() throws Exception {
+        try (MqttSpool spool = new MqttSpool(directory, 128, 1024 * 1024)) {
+            for (int i = 0; i < 10; i++) {
+                assertThat(spool.append("listener", "sensors/" + i, createMessage("payload" + i, 1, false)))
+                        .isTrue();
+            }
+            assertThat(listSegments()).hasSizeGreaterThan(1);
+            for (int i = 0; i < 10; i++) {
+                assertThat(spool.poll().getTopic()).isEqualTo("sensors/" + i);
+            }
+            assertThat(spool.poll()).isNull();
+            assertThat(listSegments()).isEmpty();
+        }
+    }
+
+    @Test
+    public void testMaxDiskUsage() throws Exception {
+        try (MqttSpool spool = new MqttSpool(directory, 128, 256)) {
+            int appended = 0;
+            while (spool.append("listener", "sensors/1", createMessage("payload", 1, false))) {
+                appended++;
+            }
+            assertThat(appended).isGreaterThan(0);
+            assertThat(listSegments()).hasSize(2);
+            assertThat(spool.append("listener", "sensors/1", createMessage(new String(new byte[200]), 1, false)))
+                    .isFalse();
+        }
+    }
+
+    @Test
+    public void testRecoverAfterRestart() throws Exception {
+        try (MqttSpool spool = new MqttSpool(directory, 128, 1024 * 1024)) {
+            for (int i = 0; i < 5; i++) {
+                spool.append("listener", "sensors/" + i, createMessage("payload" + i, 1, false));
+            }
+            spool.poll();
+        }
+        try (MqttSpool spool = new MqttSpool(directory, 128, 1024 * 1024)) {
+            assertThat(spool.size()).isGreaterThanOrEqualTo(4);
+            MqttSpool.Record record;
+            String lastTopic = null;
+            while ((record = spool.poll()) != null) {
+                lastTopic = record.getTopic();
+            }
+            assertThat(lastTopic).isEqualTo("sensors/4");
+            spool.append("listener", "sensors/5", createMessage("payload5", 1, false));
+            assertThat(spool.poll().getTopic()).isEqualTo("sensors/5");
+        }
+    }
+
+    @Test
+    public void testReadRecordsAreNotReplayedAfterRestart() throws Exception {
+        try (MqttSpool spool = new MqttSpool(directory, 1024, 1024 * 1024)) {
+            for (int i = 0; i < 5; i++) {
+                spool.append("listener", "sensors/" + i, createMessage("payload" + i, 1, false));
+            }
+            for (int i = 0; i < 3; i++) {
+                assertThat(spool.poll().getTopic()).isEqualTo("sensors/" + i);
+            }
+        }
+        try (MqttSpool spool = new MqttSpool(directory, 1024, 1024 * 1024)) {
+            assertThat(spool.size()).isEqualTo(2);
+            assertThat(spool.poll().getTopic()).isEqualTo("sensors/3");
+            assertThat(spool.poll().getTopic()).isEqualTo("sensors/4");
+            assertThat(spool.poll()).isNull();
+        }
+    }
+
+    private File[] listSegments() {
+        return directory.toFile().listFiles();
+    }
+
+    private MqttMessage createMessage(String payload, int qos, boolean retained) {
+        MqttMessage message = new MqttMessage(payload.getBytes());
+        message.setQos(qos);
+        message.setRetained(retained);
+        return message;
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright © 2013-2020, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.mqtt.internal;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.Test;
+
+public class MqttTopicTrieTest {
+
+    @Test
+    public void testExactMatch() {
+        MqttTopicTrie<String> trie = new MqttTopicTrie<>();
+        trie.add("sensors/1/temperature", "l1");
+        trie.add("sensors/2/temperature", "l2");
+
+        assertThat(trie.match("sensors/1/temperature")).containsExactly("l1");
+        assertThat(trie.match("sensors/1")).isEmpty();
+        assertThat(trie.match("sensors/1/temperature/raw")).isEmpty();
+    }
+
+    @Test
+    public void testSingleLevelWildcard() {
+        MqttTopicTrie<String> trie = new MqttTopicTrie<>();
+        trie.add("sensors/+/temperature", "l1");
+        trie.add("+", "l2");
+
+        assertThat(trie.match("sensors/1/temperature")).containsExactly("l1");
+        assertThat(trie.match("sensors//temperature")).containsExactly("l1");
+        assertThat(trie.match("sensors/1/humidity")).isEmpty();
+        assertThat(trie.match("sensors")).containsExactly("l2");
+        assertThat(trie.match("sensors/1")).isEmpty();
+    }
+
+    @Test
+    public void testMultiLevelWildcard() {
+        MqttTopicTrie<String> trie = new MqttTopicTrie<>();
+        trie.add("sensors/#", "l1");
+        trie.add("#", "l2");
+
+        assertThat(trie.match("sensors")).containsExactlyInAnyOrder("l1", "l2");
+        assertThat(trie.match("sensors/1/temperature")).containsExactlyInAnyOrder("l1", "l2");
+        assertThat(trie.match("actuators/1")).containsExactly("l2");
+    }
+
+    @Test
+    public void testSeveralListenersAndNoDuplicates() {
+        MqttTopicTrie<String> trie = new MqttTopicTrie<>();
+        trie.add("sensors/+", "l1");
+        trie.add("sensors/#", "l1");
+        trie.add("sensors/1", "l2");
+
+        assertThat(trie.match("sensors/1")).containsExactlyInAnyOrder("l1", "l2");
+    }
+
+    @Test
+    public void testSystemTopicsAreNotMatchedByLeadingWildcards() {
+        MqttTopicTrie<String> trie = new MqttTopicTrie<>();
+        trie.add("#", "l1");
+        trie.add("+/broker", "l2");
+        trie.add("$SYS/#", "l3");
+
+        assertThat(trie.match("$SYS/broker")).containsExactly("l3");
+    }
+}
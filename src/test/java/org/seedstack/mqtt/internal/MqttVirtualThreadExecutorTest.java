@@ -0,0 +1,75 @@
+/*
+ * Copyright © 2013-2020, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.mqtt.internal;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.Test;
+import org.seedstack.mqtt.MqttConfig.ClientConfig.PoolConfig.RejectedExecutionPolicy;
+
+public class MqttVirtualThreadExecutorTest {
+
+    @Test(expected = RejectedExecutionException.class)
+    public void testAbortWhenSaturated() throws Exception {
+        MqttVirtualThreadExecutor executor = new MqttVirtualThreadExecutor(Executors.newCachedThreadPool(), 1,
+                RejectedExecutionPolicy.ABORT);
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            executor.submit(() -> awaitQuietly(release));
+            executor.submit(() -> {
+            });
+        } finally {
+            release.countDown();
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testCallerRunsWhenSaturated() throws Exception {
+        MqttVirtualThreadExecutor executor = new MqttVirtualThreadExecutor(Executors.newCachedThreadPool(), 1,
+                RejectedExecutionPolicy.CALLER_RUNS);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicReference<Thread> runner = new AtomicReference<>();
+        executor.submit(() -> awaitQuietly(release));
+        executor.submit(() -> runner.set(Thread.currentThread()));
+        assertThat(runner.get()).isSameAs(Thread.currentThread());
+
+        release.countDown();
+        executor.shutdown();
+        assertThat(executor.awaitTermination(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(executor.getAvailablePermits()).isEqualTo(1);
+    }
+
+    @Test
+    public void testDiscardWhenSaturated() throws Exception {
+        MqttVirtualThreadExecutor executor = new MqttVirtualThreadExecutor(Executors.newCachedThreadPool(), 1,
+                RejectedExecutionPolicy.DISCARD);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicReference<Thread> runner = new AtomicReference<>();
+        executor.submit(() -> awaitQuietly(release));
+        executor.submit(() -> runner.set(Thread.currentThread()));
+
+        release.countDown();
+        executor.shutdown();
+        assertThat(executor.awaitTermination(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(runner.get()).isNull();
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}